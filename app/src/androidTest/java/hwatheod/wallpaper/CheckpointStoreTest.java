@@ -0,0 +1,51 @@
+package hwatheod.wallpaper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import hwatheod.wallpaper.geometry.IndexedCanvas;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class CheckpointStoreTest {
+    private static final int INTERVAL = 16;
+
+    /*
+      Over the budget, the checkpoints kept thin out with the distance from the latest one, rather than
+      all the old ones being dropped: a stroke far back is still a bounded fraction of the drawing from one.
+     */
+    @Test
+    public void checkpointsSpreadOut() {
+        IndexedCanvas canvas = new IndexedCanvas(40, 25, 0xffffffff);
+        Random random = new Random(1);
+        CheckpointStore store = new CheckpointStore(12 * 1000);  // about 12 checkpoints, as random bytes do not compress
+
+        int latest = 64 * INTERVAL;
+        for (int k = INTERVAL; k <= latest; k += INTERVAL) {
+            random.nextBytes(canvas.getData());
+            store.put(k, canvas);
+        }
+        assertTrue(store.size() <= 12 * 1000);
+
+        int[] counts = store.getStrokeCounts();
+        assertEquals(latest, counts[counts.length - 1]);
+        assertTrue("oldest kept " + counts[0], counts[0] <= latest / 2);
+        int previous = 0;
+        for (int count : counts) {
+            /* no stroke is further from the checkpoint before it than about its distance from the latest */
+            assertTrue("gap before " + count, count - previous <= Math.max(2 * INTERVAL, latest - previous));
+            previous = count;
+        }
+        for (int i = 1; i + 1 < counts.length; i++) {
+            assertTrue("gaps shrink towards the latest: " + Arrays.toString(counts),
+                    counts[i + 1] - counts[i] <= counts[i] - counts[i - 1]);
+        }
+        assertEquals(INTERVAL, latest - counts[counts.length - 2]);
+    }
+}
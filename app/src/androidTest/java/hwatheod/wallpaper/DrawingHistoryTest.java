@@ -0,0 +1,137 @@
+package hwatheod.wallpaper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import hwatheod.wallpaper.geometry.PointArray;
+import hwatheod.wallpaper.geometry.StrokeTracker;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class DrawingHistoryTest {
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 400;
+    private static final int[] COLORS = {Color.BLUE, Color.RED, Color.GREEN, Color.YELLOW};
+    private static final float SCALE = 1.3f;  // pixels per unit, not whole so that the points are quantized
+
+    private DrawingHistory history;
+    private SymmetryRenderer renderer;
+    private Bitmap bitmap;
+    private Canvas canvas;
+    private DrawingTarget target;  // bitmap through canvas
+    private Paint paint;
+    private RectF changed = new RectF();
+    private StrokeTracker tracker;  // of the stroke being drawn
+
+    @Before
+    public void setUp() {
+        SymmetryGroup.init();
+        File directory = new File(InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir(), "DrawingHistoryTest");
+        directory.mkdirs();
+        new File(directory, "strokes.log").delete();
+
+        history = new DrawingHistory(directory, "*632", 1);
+        history.startDrawing("*632");
+        history.getLog().setOrigin(WIDTH/2, HEIGHT/2);
+        history.getLog().setScale(SCALE);
+        renderer = new SymmetryRenderer();
+        renderer.setSymmetryGroup(new SymmetryGroup(R.id.group_s632, WIDTH, HEIGHT, SCALE), WIDTH, HEIGHT);
+
+        paint = new Paint();
+        paint.setStrokeWidth(SymmetryGroup.BRUSH_WIDTH * SCALE);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeJoin(Paint.Join.ROUND);
+        paint.setStrokeCap(Paint.Cap.ROUND);
+
+        bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.WHITE);
+        canvas = new Canvas(bitmap);
+        target = new DrawingTarget.OnBitmap(bitmap, canvas);
+    }
+
+    private void drawStroke(int i) {
+        /* draws a short stroke as the views do, segment by segment through a StrokeTracker snapping its
+           points to those the log records, and records it */
+
+        paint.setColor(COLORS[i % COLORS.length]);
+        StrokeTracker strokes = new StrokeTracker(new StrokeTracker.Listener() {
+            @Override
+            public void onStrokeEnd(int color, float width, float[] points, int pointCount) {
+                drawSegments();
+                history.addStroke(color, width, points, pointCount, target);
+            }
+        });
+        tracker = strokes;
+        strokes.setQuantization(history.getLog());
+        strokes.setStyle(paint.getColor(), paint.getStrokeWidth());
+        float x = WIDTH/2 + (i * 37.3f) % 200 - 100, y = HEIGHT/2 + (i * 23.7f) % 100 - 50;
+        strokes.add(0, x, y);
+        for (int j = 1; j < 4; j++) {
+            strokes.add(0, x + 6.1f * j, y + ((j % 2 == 0) ? 5.2f : -5.2f));
+            drawSegments();
+        }
+        strokes.up(0, x + 6.1f * 4, y + 5.2f);
+    }
+
+    private void drawSegments() {
+        PointArray segments = tracker.getSegments();
+        target.drawSegments(renderer, segments.array(), segments.size(), paint, changed);
+        segments.clear();
+    }
+
+    /*
+      Undoing strokes must give exactly the drawing as it was before them, whether it is rebuilt from
+      a checkpoint or from the blank canvas, and redoing them must give the drawing after them.
+     */
+    @Test
+    public void undoRestoresEarlierDrawing() {
+        Bitmap[] drawings = new Bitmap[41];
+        drawings[0] = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+        for (int i = 1; i <= 40; i++) {
+            drawStroke(i);
+            drawings[i] = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+        }
+
+        for (int i = 39; i >= 0; i--) {
+            assertTrue(history.undo(target, renderer, paint, changed));
+            assertTrue("Undo to " + i + " strokes", bitmap.sameAs(drawings[i]));
+        }
+        assertFalse(history.undo(target, renderer, paint, changed));
+
+        for (int i = 1; i <= 40; i++) {
+            assertTrue(history.redo(target, renderer, paint, changed));
+            assertTrue("Redo to " + i + " strokes", bitmap.sameAs(drawings[i]));
+        }
+        assertFalse(history.redo(target, renderer, paint, changed));
+    }
+
+    /*
+      Undoing a long way back after a redraw, which keeps few checkpoints that far back, stores checkpoints
+      on the way, so that each later undo starts at most CHECKPOINT_INTERVAL strokes back.
+     */
+    @Test
+    public void undoStoresCheckpoints() {
+        for (int i = 1; i <= 100; i++) {
+            drawStroke(i);
+        }
+        history.redraw(target, renderer, paint, changed);
+        assertArrayEquals(new int[] {32, 64, 80, 96}, history.getCheckpoints().getStrokeCounts());
+
+        for (int i = 99; i >= 20; i--) {
+            assertTrue(history.undo(target, renderer, paint, changed));
+        }
+        assertArrayEquals(new int[] {16, 32, 48, 64, 80, 96}, history.getCheckpoints().getStrokeCounts());
+    }
+}
@@ -0,0 +1,97 @@
+package hwatheod.wallpaper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import hwatheod.wallpaper.geometry.StrokeLog;
+import hwatheod.wallpaper.geometry.Viewport;
+
+import static org.junit.Assert.*;
+import static org.junit.runners.Parameterized.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(Parameterized.class)
+public class PatternPictureTest {
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 400;
+    private static final int MARGIN = 40;  // more than a segment and half the stroke width
+
+    @Parameters(name = "{1}")
+    public static Iterable<Object[]> data() {
+        List<Object[]> result = new ArrayList<>();
+        SymmetryGroup.init();
+        Map<Integer, String> symmetryGroups = SymmetryGroup.getConwayGroupSymbolMap();
+        for (Map.Entry<Integer, String> entry : symmetryGroups.entrySet()) {
+            result.add(new Object[] { entry.getKey(), entry.getValue()});
+        }
+        return result;
+    }
+
+    private int symmetryGroupId;
+    private String symmetryGroupString;
+
+    public PatternPictureTest(int symmetryGroupId, String symmetryGroupString) {
+        this.symmetryGroupId = symmetryGroupId;
+        this.symmetryGroupString = symmetryGroupString;
+    }
+
+    /*
+      Away from the edges of the window, where the renderer leaves out translates of segments whose centers
+      lie outside, the motif at every translate must draw the same pattern as the renderer.
+     */
+    @Test
+    public void pictureMatchesRenderer() {
+        SymmetryGroup gp = new SymmetryGroup(symmetryGroupId, WIDTH, HEIGHT);
+        StrokeLog log = new StrokeLog(symmetryGroupString);
+        log.setOrigin(WIDTH/2, HEIGHT/2);
+        int[] colors = {Color.BLUE, Color.RED, Color.GREEN};
+        for (int i = 0; i < 3; i++) {
+            float x = WIDTH/2 - 100 + 70*i, y = HEIGHT/2;
+            float[] points = new float[2 * 10];
+            for (int j = 0; j < 10; j++) {
+                points[2*j] = x + 7*j;
+                points[2*j + 1] = y + ((j % 2 == 0) ? 40 : -40);
+            }
+            assertTrue(log.addStroke(colors[i], 20, points, 10));
+        }
+
+        Paint paint = new Paint();
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeJoin(Paint.Join.ROUND);
+        paint.setStrokeCap(Paint.Cap.ROUND);
+
+        Bitmap expected = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        expected.eraseColor(Color.WHITE);
+        SymmetryRenderer renderer = new SymmetryRenderer();
+        renderer.setSymmetryGroup(gp, WIDTH, HEIGHT);
+        renderer.drawLog(new DrawingTarget.OnBitmap(expected, new Canvas(expected)), log, 0, log.getStrokeCount(), paint, new RectF());
+
+        Bitmap actual = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        actual.eraseColor(Color.WHITE);
+        PatternPicture picture = new PatternPicture(gp);
+        picture.record(log, paint);
+        picture.draw(new Canvas(actual), new Viewport(), WIDTH, HEIGHT);
+
+        /* translating the canvas may round a coordinate the other way along the edge of a stroke */
+        int differences = 0, total = 0;
+        for (int y = MARGIN; y < HEIGHT - MARGIN; y++) {
+            for (int x = MARGIN; x < WIDTH - MARGIN; x++) {
+                if (expected.getPixel(x, y) != actual.getPixel(x, y))
+                    differences++;
+                total++;
+            }
+        }
+        assertTrue("Picture differs in " + differences + " pixels for group " + symmetryGroupString,
+                differences < total / 100);
+    }
+}
@@ -0,0 +1,94 @@
+package hwatheod.wallpaper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import hwatheod.wallpaper.geometry.StrokeLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class StrokeLogFileTest {
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = new File(InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir(), "StrokeLogFileTest");
+        directory.mkdirs();
+        new File(directory, "strokes.log").delete();
+    }
+
+    private static void addStroke(StrokeLog log, float x) {
+        log.addStroke(0xff0000ff, 20, new float[] {x, 0, x, 40, x + 30, 40}, 3);
+    }
+
+    /*
+      A file cut off in the middle of a record, e.g. by the app being killed while saving, loses that record
+      only: strokes saved after loading it must still be read back.
+     */
+    @Test
+    public void saveAfterPartialRecord() throws IOException {
+        StrokeLogFile file = new StrokeLogFile(directory);
+        StrokeLog log = new StrokeLog("*632");
+        file.rewrite(log);
+        addStroke(log, 10);
+        file.save(log);
+        addStroke(log, 20);
+        file.save(log);
+
+        File saved = new File(directory, "strokes.log");
+        try (RandomAccessFile raf = new RandomAccessFile(saved, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        file = new StrokeLogFile(directory);
+        log = file.load(1);
+        assertEquals(1, log.getStrokeCount());
+        addStroke(log, 30);
+        file.save(log);
+        assertEquals(log.length(), saved.length());
+
+        StrokeLog reloaded = new StrokeLogFile(directory).load(1);
+        assertEquals(2, reloaded.getStrokeCount());
+        assertEquals(log.length(), reloaded.length());
+    }
+
+    /*
+      A log saved in pixels is converted to units when loaded, and the file rewritten in the current format
+      by the next save, so that strokes appended to it are read back at the same scale.
+     */
+    @Test
+    public void loadPixelLog() throws IOException {
+        StrokeLogFile file = new StrokeLogFile(directory);
+        StrokeLog log = new StrokeLog("*632");
+        addStroke(log, 10);
+        file.rewrite(log);
+
+        File saved = new File(directory, "strokes.log");
+        try (RandomAccessFile raf = new RandomAccessFile(saved, "rw")) {
+            raf.seek(3);
+            raf.write('1');  // "WPL1", the pixel format
+        }
+
+        file = new StrokeLogFile(directory);
+        log = file.load(2);
+        assertTrue(log.wasConverted());
+        log.setScale(2);
+        addStroke(log, 20);
+        file.save(log);
+        assertEquals(log.length(), saved.length());
+
+        StrokeLog reloaded = new StrokeLogFile(directory).load(2);
+        assertFalse(reloaded.wasConverted());
+        assertEquals(2, reloaded.getStrokeCount());
+        assertEquals(log.length(), reloaded.length());
+    }
+}
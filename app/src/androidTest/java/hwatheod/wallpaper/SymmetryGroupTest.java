@@ -4,6 +4,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
+import android.graphics.Matrix;
+
 import static org.junit.Assert.*;
 import static org.junit.runners.Parameterized.*;
 
@@ -52,4 +54,26 @@ public class SymmetryGroupTest {
         float relativeError = Math.abs((expectedArea - copiesOfFundamentalRegionArea) / expectedArea);
         assertTrue("Discrepancy for group " + symmetryGroupString, relativeError < 0.001);
     }
+
+    /*
+      get() hands out one instance per group, size and scale, and the inverse of each coset rep undoes it.
+     */
+    @Test
+    public void cachedGroup() {
+        SymmetryGroup g = SymmetryGroup.get(symmetryGroupId, 600, 400, 1.5f);
+        assertSame(g, SymmetryGroup.get(symmetryGroupId, 600, 400, 1.5f));
+        assertNotSame(g, SymmetryGroup.get(symmetryGroupId, 400, 600, 1.5f));
+        assertEquals(symmetryGroupId, g.getId());
+
+        float[] point = new float[2];
+        for (int i = 0; i < g.getCosetReps().length; i++) {
+            Matrix m = new Matrix(g.getCosetReps()[i]);
+            m.postConcat(g.getInverseCosetReps()[i]);
+            point[0] = 123.5f;
+            point[1] = -45.25f;
+            m.mapPoints(point);
+            assertEquals("Inverse for group " + symmetryGroupString, 123.5f, point[0], 0.01f);
+            assertEquals("Inverse for group " + symmetryGroupString, -45.25f, point[1], 0.01f);
+        }
+    }
 }
@@ -0,0 +1,86 @@
+package hwatheod.wallpaper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import static org.junit.Assert.*;
+import static org.junit.runners.Parameterized.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(Parameterized.class)
+public class SymmetryRendererTest {
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 400;
+
+    @Parameters(name = "{1}")
+    public static Iterable<Object[]> data() {
+        List<Object[]> result = new ArrayList<>();
+        SymmetryGroup.init();
+        Map<Integer, String> symmetryGroups = SymmetryGroup.getConwayGroupSymbolMap();
+        for (Map.Entry<Integer, String> entry : symmetryGroups.entrySet()) {
+            result.add(new Object[] { entry.getKey(), entry.getValue()});
+        }
+        return result;
+    }
+
+    private int symmetryGroupId;
+    private String symmetryGroupString;
+
+    public SymmetryRendererTest(int symmetryGroupId, String symmetryGroupString) {
+        this.symmetryGroupId = symmetryGroupId;
+        this.symmetryGroupString = symmetryGroupString;
+    }
+
+    private Bitmap drawStroke(boolean parallel) {
+        SymmetryRenderer renderer = new SymmetryRenderer();
+        renderer.setParallel(parallel);
+        renderer.setSymmetryGroup(new SymmetryGroup(symmetryGroupId, WIDTH, HEIGHT), WIDTH, HEIGHT);
+
+        Paint paint = new Paint();
+        paint.setStrokeWidth(20);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeJoin(Paint.Join.ROUND);
+        paint.setStrokeCap(Paint.Cap.ROUND);
+
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.WHITE);
+        Canvas canvas = new Canvas(bitmap);
+        RectF changed = new RectF();
+        float[] segment = new float[4];
+
+        /* a zigzag crossing the middle of the view, segment by segment in several colors */
+        int[] colors = {Color.BLUE, Color.RED, Color.GREEN};
+        float x = WIDTH/2 - 100, y = HEIGHT/2;
+        for (int i=0; i<30; i++) {
+            float nextX = x + 7, nextY = HEIGHT/2 + ((i % 2 == 0) ? 40 : -40);
+            segment[0] = x; segment[1] = y;
+            segment[2] = nextX; segment[3] = nextY;
+            paint.setColor(colors[(i/10) % colors.length]);
+            renderer.drawSegments(canvas, segment, 2, paint, changed);
+            x = nextX;
+            y = nextY;
+        }
+        return bitmap;
+    }
+
+    /*
+      The parallel renderer draws each band of the window into its own layer on a worker thread.
+      Merging the layers must give exactly the pixels of the serial renderer.
+     */
+    @Test
+    public void parallelMatchesSerial() {
+        Bitmap serial = drawStroke(false);
+        Bitmap parallel = drawStroke(true);
+        assertTrue("Parallel rendering differs for group " + symmetryGroupString, serial.sameAs(parallel));
+    }
+}
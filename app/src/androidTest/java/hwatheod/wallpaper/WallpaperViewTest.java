@@ -0,0 +1,129 @@
+package hwatheod.wallpaper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import hwatheod.wallpaper.geometry.RenderMetrics;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class WallpaperViewTest {
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 400;
+
+    private WallpaperView view;
+    private Canvas canvas;
+
+    @Before
+    public void setUp() {
+        SymmetryGroup.init();
+
+        /* the view saves its drawing in the files directory, so it is given one of its own, not the app's */
+        final File directory = new File(InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir(), "WallpaperViewTest");
+        directory.mkdirs();
+        Context context = new ContextWrapper(InstrumentationRegistry.getInstrumentation().getTargetContext()) {
+            @Override
+            public File getFilesDir() {
+                return directory;
+            }
+        };
+        view = new WallpaperView(context, null);
+        view.layout(0, 0, WIDTH, HEIGHT);
+        view.setSymmetryGroupId(R.id.group_s632);
+        canvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+    }
+
+    private static MotionEvent touch(int action, float x, float y) {
+        long now = SystemClock.uptimeMillis();
+        return MotionEvent.obtain(now, now, action, x, y, 0);
+    }
+
+    private static MotionEvent touch(int action, float[] xs, float[] ys) {
+        /* an event of fingers 0 to xs.length - 1, at the given points */
+        long now = SystemClock.uptimeMillis();
+        MotionEvent.PointerProperties[] properties = new MotionEvent.PointerProperties[xs.length];
+        MotionEvent.PointerCoords[] coords = new MotionEvent.PointerCoords[xs.length];
+        for (int i = 0; i < xs.length; i++) {
+            properties[i] = new MotionEvent.PointerProperties();
+            properties[i].id = i;
+            coords[i] = new MotionEvent.PointerCoords();
+            coords[i].x = xs[i];
+            coords[i].y = ys[i];
+        }
+        return MotionEvent.obtain(now, now, action, xs.length, properties, coords, 0, 0, 1, 1, 0, 0, 0, 0);
+    }
+
+    /*
+      Two fingers drawing at once each draw their own stroke, and both are recorded.
+     */
+    @Test
+    public void twoFingersDrawTwoStrokes() {
+        int strokes = view.getHistory().getLog().getStrokeCount();
+        int secondDown = MotionEvent.ACTION_POINTER_DOWN | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT);
+        int secondUp = MotionEvent.ACTION_POINTER_UP | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT);
+
+        view.onTouchEvent(touch(MotionEvent.ACTION_DOWN, 100, 100));
+        view.onTouchEvent(touch(secondDown, new float[] {100, 400}, new float[] {100, 300}));
+        for (int i = 1; i <= 20; i++) {
+            view.onTouchEvent(touch(MotionEvent.ACTION_MOVE, new float[] {100 + 5*i, 400 - 5*i}, new float[] {100, 300}));
+        }
+        view.onTouchEvent(touch(secondUp, new float[] {200, 300}, new float[] {100, 300}));
+        view.onTouchEvent(touch(MotionEvent.ACTION_UP, 200, 100));
+
+        assertEquals(strokes + 2, view.getHistory().getLog().getStrokeCount());
+    }
+
+    /*
+      Once the first frames have been drawn, handling a move and drawing the frame should not allocate
+       anything, however many symmetry images and lattice translates the stroke has.  The stroke zigzags, so
+       that the filter keeps a point at every move and every frame replicates segments.
+     */
+    @Test
+    public void drawDoesNotAllocate() {
+        int frames = 50;
+        MotionEvent[] moves = new MotionEvent[frames];
+        for (int i=0; i<frames; i++) {
+            moves[i] = touch(MotionEvent.ACTION_MOVE, WIDTH/2 + 3*i, HEIGHT/2 + ((i % 2 == 0) ? 8 : -8));
+        }
+
+        view.onTouchEvent(touch(MotionEvent.ACTION_DOWN, WIDTH/2, HEIGHT/2));
+        view.onTouchEvent(touch(MotionEvent.ACTION_MOVE, WIDTH/2 - 5, HEIGHT/2 - 5));
+        view.onDraw(canvas);  // warm up
+
+        RenderMetrics metrics = RenderMetrics.get();
+        long[] segments = new long[frames + 1];
+        segments[0] = metrics.getCount(RenderMetrics.Counter.SEGMENTS);
+        int allocations = 0;
+        Debug.startAllocCounting();
+        try {
+            for (int i=0; i<frames; i++) {
+                Debug.resetThreadAllocCount();
+                view.onTouchEvent(moves[i]);
+                view.onDraw(canvas);
+                allocations += Debug.getThreadAllocCount();
+                segments[i + 1] = metrics.getCount(RenderMetrics.Counter.SEGMENTS);
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+
+        assertEquals("Allocations while drawing", 0, allocations);
+        for (int i=1; i<frames; i++) {
+            assertTrue("Segments replicated in frame " + i, segments[i + 1] > segments[i]);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package hwatheod.wallpaper;
+
+import android.graphics.Bitmap;
+
+import hwatheod.wallpaper.geometry.IndexedCanvas;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+  Compressed copies of the drawing bitmap, or of an IndexedCanvas, each keyed by the number of strokes drawn on it.  Undo restores
+  the latest checkpoint before the stroke undone and replays the few strokes after it, so its cost does
+  not grow with the length of the session.
+
+  The pixels are deflated at the fastest level: drawings are mostly flat color, which compresses well
+  even so.  Memory is bounded by a budget of compressed bytes.  When it is exceeded, checkpoints are dropped
+  so that those kept thin out with the distance from the latest one, about logarithmically: recent strokes,
+  the ones most likely undone, stay close to a checkpoint, and older ones are still within a bounded
+  fraction of the drawing's length of one.
+ */
+public class CheckpointStore {
+    private final int budget;  // bytes of compressed pixels kept
+    private int size;  // bytes of compressed pixels held
+
+    // by number of strokes
+    private TreeMap<Integer, byte[]> checkpoints = new TreeMap<>();
+
+    // scratch objects, kept between checkpoints
+    private ByteBuffer pixels;
+    private byte[] chunk = new byte[64 * 1024];
+    private ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    private Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private Inflater inflater = new Inflater();
+
+    public CheckpointStore(int budget) {
+        this.budget = budget;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int[] getStrokeCounts() {
+        /* The numbers of strokes of the checkpoints held, in increasing order. */
+
+        int[] counts = new int[checkpoints.size()];
+        int i = 0;
+        for (int key : checkpoints.keySet()) {
+            counts[i++] = key;
+        }
+        return counts;
+    }
+
+    public void put(int strokeCount, Bitmap bitmap) {
+        /* Stores a checkpoint of bitmap after strokeCount strokes, replacing any held for that count. */
+
+        readPixels(bitmap);
+        store(strokeCount, pixels.array(), pixels.limit());
+    }
+
+    public void put(int strokeCount, IndexedCanvas canvas) {
+        /* Stores a checkpoint of the planes of canvas after strokeCount strokes, a quarter of the bytes of a
+           bitmap to deflate. */
+        store(strokeCount, canvas.getData(), canvas.getData().length);
+    }
+
+    private void store(int strokeCount, byte[] data, int length) {
+        remove(strokeCount);
+
+        deflater.reset();
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        compressed.reset();
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            compressed.write(chunk, 0, n);
+        }
+        if (compressed.size() > budget)
+            return;
+
+        byte[] checkpoint = compressed.toByteArray();
+        checkpoints.put(strokeCount, checkpoint);
+        size += checkpoint.length;
+
+        evict();
+    }
+
+    private void evict() {
+        /* Drops checkpoints until they are within the budget.  Each time the one dropped is the one whose loss
+           costs least: the gap it leaves to replay, between its neighbours, relative to its distance from the
+           latest checkpoint, which is dropped last. */
+
+        while (size > budget) {
+            int latest = checkpoints.lastKey();
+            int victim = latest;
+            float leastCost = Float.MAX_VALUE;
+            int previous = 0;  // strokes before the first checkpoint are replayed from the blank drawing
+            for (int key : checkpoints.keySet()) {
+                if (key == latest)
+                    break;
+                float cost = (float)(checkpoints.higherKey(key) - previous) / (latest - key);
+                if (cost < leastCost) {
+                    leastCost = cost;
+                    victim = key;
+                }
+                previous = key;
+            }
+            remove(victim);
+        }
+    }
+
+    public int restore(int strokeCount, Bitmap bitmap) {
+        /* Copies the latest checkpoint taken after at most strokeCount strokes onto bitmap.
+           Returns the number of strokes of that checkpoint, or -1 if there is none and bitmap is unchanged. */
+
+        int byteCount = bitmap.getRowBytes() * bitmap.getHeight();
+        if (pixels == null || pixels.capacity() < byteCount)
+            pixels = ByteBuffer.allocate(byteCount);
+        int best = load(strokeCount, pixels.array(), byteCount);
+        if (best < 0)
+            return -1;
+
+        pixels.position(0);
+        pixels.limit(byteCount);
+        bitmap.copyPixelsFromBuffer(pixels);
+        return best;
+    }
+
+    public int restore(int strokeCount, IndexedCanvas canvas) {
+        /* As restore() onto a bitmap, for the planes of canvas.  canvas is unchanged if there is no checkpoint,
+           but may be partly overwritten by one taken from a canvas of another size. */
+        return load(strokeCount, canvas.getData(), canvas.getData().length);
+    }
+
+    private int load(int strokeCount, byte[] data, int byteCount) {
+        /* Inflates the latest checkpoint taken after at most strokeCount strokes into data, which must hold
+           exactly byteCount bytes of it.  Returns its number of strokes, or -1. */
+
+        Integer floor = checkpoints.floorKey(strokeCount);
+        if (floor == null)
+            return -1;
+
+        int best = floor;
+        byte[] checkpoint = checkpoints.get(best);
+        inflater.reset();
+        inflater.setInput(checkpoint);
+        try {
+            int n = 0;
+            while (n < byteCount && !inflater.finished()) {
+                n += inflater.inflate(data, n, byteCount - n);
+            }
+            if (n != byteCount || !inflater.finished())
+                return -1;  // taken from a bitmap of another size
+        } catch (DataFormatException e) {
+            return -1;
+        }
+        return best;
+    }
+
+    public void discardFrom(int strokeCount) {
+        /* Drops the checkpoints taken after strokeCount strokes or more, which no longer match the drawing
+           once other strokes have been drawn in their place. */
+
+        Iterator<Map.Entry<Integer, byte[]>> entries = checkpoints.tailMap(strokeCount).entrySet().iterator();
+        while (entries.hasNext()) {
+            size -= entries.next().getValue().length;
+            entries.remove();
+        }
+    }
+
+    public void clear() {
+        checkpoints.clear();
+        size = 0;
+    }
+
+    private void remove(int strokeCount) {
+        byte[] old = checkpoints.remove(strokeCount);
+        if (old != null)
+            size -= old.length;
+    }
+
+    private void readPixels(Bitmap bitmap) {
+        int byteCount = bitmap.getRowBytes() * bitmap.getHeight();
+        if (pixels == null || pixels.capacity() < byteCount)
+            pixels = ByteBuffer.allocate(byteCount);
+        pixels.clear();
+        bitmap.copyPixelsToBuffer(pixels);
+        pixels.flip();
+    }
+}
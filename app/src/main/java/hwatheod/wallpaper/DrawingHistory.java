@@ -0,0 +1,220 @@
+package hwatheod.wallpaper;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.Build;
+
+import hwatheod.wallpaper.geometry.CellTiling;
+import hwatheod.wallpaper.geometry.IndexedCanvas;
+import hwatheod.wallpaper.geometry.StrokeLog;
+
+import java.io.File;
+import java.util.Arrays;
+
+/*
+  The strokes of the drawing, saved after every stroke, from which the drawing is redrawn at a new size
+  and strokes are undone and redone.
+
+  Redrawing the whole log after hundreds of strokes takes too long for undo, so every CHECKPOINT_INTERVAL
+  strokes the drawing is stored in a CheckpointStore.  Undo restores the latest checkpoint and replays the
+  strokes after it, storing checkpoints along the way, so that undoing further replays at most
+  CHECKPOINT_INTERVAL strokes each time.  Redo only draws the stroke redone.
+
+  The drawing is either a bitmap drawn on through a Canvas, or an IndexedCanvas, reached through a
+  DrawingTarget, except when it is resized.
+
+  When only the size of the window changes, the drawing is not redrawn but re-tiled from one lattice cell of
+  it, as planned by a CellTiling, which takes a few copies instead of a replay of every stroke.
+ */
+public class DrawingHistory {
+    private static final int CHECKPOINT_INTERVAL = 16;  // strokes between checkpoints
+    private static final int CHECKPOINT_BUDGET = 8 * 1024 * 1024;  // bytes of compressed checkpoints
+
+    private StrokeLog log;
+    private StrokeLogFile file;
+    private CheckpointStore checkpoints = new CheckpointStore(CHECKPOINT_BUDGET);
+    private int generation;  // changed whenever strokes are taken off the drawing, so that copies of it are rebuilt
+
+    public DrawingHistory(File directory, String defaultConwaySymbol, float pixelsPerUnit) {
+        /* Carries on with the drawing saved in directory, or starts one in the default group.  A drawing saved
+           in pixels by an earlier version is taken to be drawn at pixelsPerUnit. */
+
+        file = new StrokeLogFile(directory);
+        log = file.load(pixelsPerUnit);
+        if (log == null || SymmetryGroup.getIdForConwaySymbol(log.getConwaySymbol()) == 0)
+            log = new StrokeLog(defaultConwaySymbol);
+    }
+
+    public StrokeLog getLog() {
+        return log;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    CheckpointStore getCheckpoints() {
+        return checkpoints;
+    }
+
+    public void startDrawing(String conwaySymbol) {
+        generation++;
+        log.startDrawing(conwaySymbol);
+        file.rewrite(log);
+        checkpoints.clear();
+    }
+
+    public void addStroke(int color, float width, float[] points, int pointCount, DrawingTarget target) {
+        /* Records a whole stroke, which has already been drawn onto target, as StrokeTracker ends it.  target is
+           null while other strokes are still being drawn onto it, as it then cannot be a checkpoint. */
+
+        if (log.addStroke(color, width, points, pointCount) && strokeAdded() && target != null)
+            target.putCheckpoint(checkpoints, log.getStrokeCount());
+    }
+
+    private boolean strokeAdded() {
+        /* Saves the log once a stroke has been added to it.  Returns whether a checkpoint is due. */
+
+        file.save(log);
+        int count = log.getStrokeCount();
+        checkpoints.discardFrom(count);
+        return count % CHECKPOINT_INTERVAL == 0;
+    }
+
+    static int[] getRedrawCheckpoints(int strokeCount) {
+        /* The numbers of strokes at which redraw() stores checkpoints, in increasing order: the multiples of
+           CHECKPOINT_INTERVAL at 0, 1, 2, 4, 8, ... intervals before the last one, as far back as there are
+           strokes.  Fewer checkpoints far back cost less to take, and undo fills in the rest as it goes. */
+
+        int last = strokeCount - strokeCount % CHECKPOINT_INTERVAL;
+        int n = 0;
+        for (int distance = 0; last - distance * CHECKPOINT_INTERVAL > 0; distance = Math.max(1, 2 * distance)) {
+            n++;
+        }
+        int[] counts = new int[n];
+        int i = n;
+        for (int distance = 0; last - distance * CHECKPOINT_INTERVAL > 0; distance = Math.max(1, 2 * distance)) {
+            counts[--i] = last - distance * CHECKPOINT_INTERVAL;
+        }
+        return counts;
+    }
+
+    private static int nextCheckpoint(int strokeCount) {
+        /* The first multiple of CHECKPOINT_INTERVAL after strokeCount. */
+        return strokeCount - strokeCount % CHECKPOINT_INTERVAL + CHECKPOINT_INTERVAL;
+    }
+
+    public void redraw(DrawingTarget target, SymmetryRenderer renderer, Paint paint, RectF changed) {
+        /* Draws every stroke onto target, at the size and origin it now has, taking the checkpoints of
+           getRedrawCheckpoints() on the way. */
+
+        checkpoints.clear();
+        target.erase();
+
+        int count = log.getStrokeCount();
+        int from = 0;
+        for (int k : getRedrawCheckpoints(count)) {
+            renderer.drawLog(target, log, from, k, paint, changed);
+            target.putCheckpoint(checkpoints, k);
+            from = k;
+        }
+        renderer.drawLog(target, log, from, count, paint, changed);
+    }
+
+    public boolean undo(DrawingTarget target, SymmetryRenderer renderer, Paint paint, RectF changed) {
+        /* Takes the last stroke off target, storing checkpoints at the multiples of CHECKPOINT_INTERVAL it
+           replays through, so that the next undo starts close by.  Returns false if there is none. */
+
+        if (!log.undoStroke())
+            return false;
+        generation++;
+        file.save(log);
+
+        int count = log.getStrokeCount();
+        renderer.discardTiles();
+        int from = target.restoreCheckpoint(checkpoints, count);
+        if (from < 0) {
+            target.erase();
+            from = 0;
+        }
+        for (int k = nextCheckpoint(from); k <= count; k += CHECKPOINT_INTERVAL) {
+            renderer.drawLog(target, log, from, k, paint, changed);
+            target.putCheckpoint(checkpoints, k);
+            from = k;
+        }
+        renderer.drawLog(target, log, from, count, paint, changed);
+        changed.set(0, 0, target.getWidth(), target.getHeight());
+        return true;
+    }
+
+    public boolean redo(DrawingTarget target, SymmetryRenderer renderer, Paint paint, RectF changed) {
+        /* Draws the last stroke undone back onto target.  Returns false if there is none. */
+
+        if (!log.redoStroke())
+            return false;
+        file.save(log);
+
+        int count = log.getStrokeCount();
+        renderer.drawLog(target, log, count - 1, count, paint, changed);
+        if (count % CHECKPOINT_INTERVAL == 0)
+            target.putCheckpoint(checkpoints, count);
+        return true;
+    }
+
+    public CellTiling planResize(SymmetryGroup oldGp, int oldWidth, int oldHeight, SymmetryGroup gp, int width, int height) {
+        /* How to carry the drawing over from a window of the old size laid out with oldGp to one of the new size
+           laid out with gp, by re-tiling it.  Returns null if it has to be redrawn instead: if it is of another
+           group, if the scale changed, or if no whole cell fits in the old window. */
+
+        if (oldGp == null || oldGp.getId() != gp.getId()
+                || !log.getConwaySymbol().equals(SymmetryGroup.getConwaySymbol(gp.getId()))
+                || !Arrays.equals(oldGp.getTranslationX(), gp.getTranslationX())
+                || !Arrays.equals(oldGp.getTranslationY(), gp.getTranslationY()))
+            return null;
+        return CellTiling.plan(gp.getWallpaperGroup().getLattice(), oldWidth, oldHeight, width, height);
+    }
+
+    public Bitmap resize(Bitmap bitmap, CellTiling tiling) {
+        /* Returns the drawing on bitmap at the new size of tiling, copied from one cell of it.  bitmap itself is
+           reused where it can be reconfigured to the new size within its allocation; otherwise a new bitmap is
+           returned and bitmap is left as it was.  The checkpoints, being of the old size, are dropped.
+
+           The copies lie up to half a pixel from where a replay would draw the strokes, so the next undo, which
+           replays them, may move the whole drawing by that much. */
+
+        checkpoints.clear();
+        Bitmap cell = Bitmap.createBitmap(bitmap, tiling.getSourceX(), tiling.getSourceY(),
+                tiling.getSourceWidth(), tiling.getSourceHeight());
+
+        int width = tiling.getWidth(), height = tiling.getHeight();
+        Bitmap resized;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && bitmap.isMutable()
+                && bitmap.getAllocationByteCount() >= 4 * width * height) {
+            bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+            resized = bitmap;
+        } else {
+            resized = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+
+        resized.eraseColor(Color.WHITE);  // the copies cover the window, but a gap should not show old pixels
+        Canvas canvas = new Canvas(resized);
+        for (int i = 0; i < tiling.getCopyCount(); i++) {
+            canvas.drawBitmap(cell, tiling.getCopyX(i), tiling.getCopyY(i), null);
+        }
+        cell.recycle();
+        return resized;
+    }
+
+    public IndexedCanvas resize(IndexedCanvas canvas, CellTiling tiling) {
+        /* As resize() of a bitmap, with the same shift of up to half a pixel on the next undo.  The planes of an
+           IndexedCanvas have a fixed size, so a new one is returned. */
+
+        checkpoints.clear();
+        IndexedCanvas resized = new IndexedCanvas(tiling.getWidth(), tiling.getHeight(), canvas.getBackground());
+        resized.copyTiles(canvas, tiling);
+        return resized;
+    }
+}
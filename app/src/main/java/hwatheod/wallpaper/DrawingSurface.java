@@ -0,0 +1,49 @@
+package hwatheod.wallpaper;
+
+/*
+  The drawing view controlled by WallpaperActivity: either WallpaperView, which draws on the UI thread,
+  or WallpaperSurfaceView, which draws on its own render thread.
+ */
+public interface DrawingSurface {
+    float STROKE_SMOOTHING = 0.5f;  // for StrokeFilter.setSmoothing(), when smoothing strokes
+
+    int getSymmetryGroupId();
+
+    void setSymmetryGroupId(int newSymmetryGroupId);
+
+    float getPatternScale();
+
+    void setPatternScale(float patternScale);
+
+    int getColor();
+
+    void setColor(int color);
+
+    boolean isTileRendering();
+
+    void setTileRendering(boolean enabled);
+
+    boolean isParallelRendering();
+
+    void setParallelRendering(boolean enabled);
+
+    boolean isNavigating();
+
+    void setNavigating(boolean enabled);
+
+    boolean isShowingMetrics();
+
+    void setShowingMetrics(boolean enabled);  // the MetricsOverlay
+
+    boolean isSmoothingStrokes();
+
+    void setSmoothingStrokes(boolean enabled);  // the touch samples of new strokes, to take out jitter
+
+    boolean isIndexedStorage();
+
+    void setIndexedStorage(boolean enabled);  // an IndexedCanvas instead of a bitmap, if supported
+
+    void undo();
+
+    void redo();
+}
@@ -0,0 +1,101 @@
+package hwatheod.wallpaper;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import hwatheod.wallpaper.geometry.IndexedCanvas;
+
+/*
+  What a drawing is kept on: a bitmap drawn on through a Canvas, or an IndexedCanvas.  DrawingHistory and
+  SymmetryRenderer.drawLog() replay strokes and take checkpoints through this, so that they do it the same
+  way for either.
+ */
+public interface DrawingTarget {
+    int getWidth();
+
+    int getHeight();
+
+    void erase();  // fills the drawing with the background
+
+    void drawSegments(SymmetryRenderer renderer, float[] segments, int pointCount, Paint paint, RectF changed);
+
+    void putCheckpoint(CheckpointStore checkpoints, int strokeCount);
+
+    int restoreCheckpoint(CheckpointStore checkpoints, int strokeCount);  // as CheckpointStore.restore()
+
+    /*
+      A bitmap, on a white background.
+     */
+    class OnBitmap implements DrawingTarget {
+        private final Bitmap bitmap;
+        private final Canvas canvas;
+
+        public OnBitmap(Bitmap bitmap, Canvas canvas) {
+            /* canvas draws onto bitmap */
+            this.bitmap = bitmap;
+            this.canvas = canvas;
+        }
+
+        public int getWidth() {
+            return bitmap.getWidth();
+        }
+
+        public int getHeight() {
+            return bitmap.getHeight();
+        }
+
+        public void erase() {
+            bitmap.eraseColor(Color.WHITE);
+        }
+
+        public void drawSegments(SymmetryRenderer renderer, float[] segments, int pointCount, Paint paint, RectF changed) {
+            renderer.drawSegments(canvas, segments, pointCount, paint, changed);
+        }
+
+        public void putCheckpoint(CheckpointStore checkpoints, int strokeCount) {
+            checkpoints.put(strokeCount, bitmap);
+        }
+
+        public int restoreCheckpoint(CheckpointStore checkpoints, int strokeCount) {
+            return checkpoints.restore(strokeCount, bitmap);
+        }
+    }
+
+    /*
+      An IndexedCanvas, on its own background.
+     */
+    class OnIndexedCanvas implements DrawingTarget {
+        private final IndexedCanvas canvas;
+
+        public OnIndexedCanvas(IndexedCanvas canvas) {
+            this.canvas = canvas;
+        }
+
+        public int getWidth() {
+            return canvas.getWidth();
+        }
+
+        public int getHeight() {
+            return canvas.getHeight();
+        }
+
+        public void erase() {
+            canvas.clear();
+        }
+
+        public void drawSegments(SymmetryRenderer renderer, float[] segments, int pointCount, Paint paint, RectF changed) {
+            renderer.drawSegments(canvas, segments, pointCount, paint, changed);
+        }
+
+        public void putCheckpoint(CheckpointStore checkpoints, int strokeCount) {
+            checkpoints.put(strokeCount, canvas);
+        }
+
+        public int restoreCheckpoint(CheckpointStore checkpoints, int strokeCount) {
+            return checkpoints.restore(strokeCount, canvas);
+        }
+    }
+}
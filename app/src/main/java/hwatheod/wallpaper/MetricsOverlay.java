@@ -0,0 +1,94 @@
+package hwatheod.wallpaper;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+import hwatheod.wallpaper.geometry.LatencyHistogram;
+import hwatheod.wallpaper.geometry.RenderMetrics;
+
+import java.util.Locale;
+
+/*
+  Debug overlay in the top left corner of a drawing view, showing RenderMetrics: the frame and
+  input-to-pixel latencies, and the work done per frame since the overlay was last drawn.  Formatting the
+  text allocates, which is fine for a debug aid; the metrics themselves are recorded without allocating.
+
+  Also feeds the view's frames and inputs into RenderMetrics, on the clock of MotionEvent time stamps.
+ */
+public class MetricsOverlay {
+    private static final int LINES = 3;
+    private static final long NANOS_PER_MILLI = 1000000;
+    private static final double MILLIS_PER_NANO = 1e-6;
+
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint backgroundPaint = new Paint();
+    private final float padding, lineHeight;
+    private final Rect bounds;  // area of the view drawn on
+
+    // counts at the last draw, for the work per frame since
+    private long lastFrames, lastSegments, lastImages, lastTranslates, lastDrawCalls;
+
+    public MetricsOverlay(float density) {
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextSize(12 * density);
+        backgroundPaint.setColor(0xA0000000);
+        padding = 4 * density;
+        lineHeight = textPaint.getFontSpacing();
+        bounds = new Rect(0, 0, (int)(300 * density), (int)Math.ceil(LINES * lineHeight + 2 * padding));
+    }
+
+    public Rect getBounds() {
+        return bounds;
+    }
+
+    public static void inputReceived(MotionEvent event) {
+        /* Notes the oldest sample of event as an input waiting to be shown. */
+
+        long time = (event.getHistorySize() > 0) ? event.getHistoricalEventTime(0) : event.getEventTime();
+        RenderMetrics.get().inputReceived(time * NANOS_PER_MILLI);
+    }
+
+    public static void frameDrawn(long startNanos) {
+        /* Records a frame begun at startNanos, by System.nanoTime(), which shows the inputs received so far. */
+
+        RenderMetrics metrics = RenderMetrics.get();
+        metrics.record(RenderMetrics.Timer.FRAME, System.nanoTime() - startNanos);
+        metrics.framePresented(SystemClock.uptimeMillis() * NANOS_PER_MILLI);
+    }
+
+    public void draw(Canvas canvas) {
+        RenderMetrics metrics = RenderMetrics.get();
+        LatencyHistogram frame = metrics.getHistogram(RenderMetrics.Timer.FRAME);
+        LatencyHistogram input = metrics.getHistogram(RenderMetrics.Timer.INPUT_TO_PIXEL);
+        long frames = frame.getCount();
+        long segments = metrics.getCount(RenderMetrics.Counter.SEGMENTS);
+        long images = metrics.getCount(RenderMetrics.Counter.COSET_IMAGES);
+        long translates = metrics.getCount(RenderMetrics.Counter.TRANSLATES);
+        long drawCalls = metrics.getCount(RenderMetrics.Counter.DRAW_CALLS);
+        long newFrames = Math.max(1, frames - lastFrames);
+
+        String[] lines = {
+                String.format(Locale.US, "frame p50 %.1f p99 %.1f ms, %d frames",
+                        frame.getPercentile(50) * MILLIS_PER_NANO, frame.getPercentile(99) * MILLIS_PER_NANO, frames),
+                String.format(Locale.US, "input to pixel p50 %.1f p99 %.1f ms",
+                        input.getPercentile(50) * MILLIS_PER_NANO, input.getPercentile(99) * MILLIS_PER_NANO),
+                String.format(Locale.US, "per frame %d segments, %d images, %d translates, %d calls",
+                        (segments - lastSegments) / newFrames, (images - lastImages) / newFrames,
+                        (translates - lastTranslates) / newFrames, (drawCalls - lastDrawCalls) / newFrames)
+        };
+        lastFrames = frames;
+        lastSegments = segments;
+        lastImages = images;
+        lastTranslates = translates;
+        lastDrawCalls = drawCalls;
+
+        canvas.drawRect(bounds, backgroundPaint);
+        for (int i = 0; i < LINES; i++) {
+            canvas.drawText(lines[i], padding, padding + (i + 1) * lineHeight - textPaint.descent(), textPaint);
+        }
+    }
+}
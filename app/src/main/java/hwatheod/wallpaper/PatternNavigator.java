@@ -0,0 +1,157 @@
+package hwatheod.wallpaper;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.os.Build;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+
+import hwatheod.wallpaper.geometry.PointArray;
+import hwatheod.wallpaper.geometry.StrokeLog;
+import hwatheod.wallpaper.geometry.Viewport;
+
+/*
+  Navigate mode: pinch to zoom and drag to pan over the infinite wallpaper, instead of drawing.
+
+  Each frame is put together from a cache of one translation cell, so the cost of a frame depends on the
+  number of cells on the screen and not on the number of strokes.  Where pictures can be drawn, the cache is
+  a PatternPicture, which stays sharp when zoomed in; strokes are recorded into it as they land.  Otherwise it
+  is a raster of the cell, a TileRenderer, into which only the strokes landed since the last frame are drawn.
+  Either is rebuilt when strokes are taken off the drawing, or the group changes.
+
+  Gestures arrive on the UI thread, while draw() may run on a render thread, so the viewport is copied under
+  its lock for each frame.
+ */
+public class PatternNavigator {
+    private final Runnable onViewportChanged;  // called on the UI thread after each pan or zoom
+    private final ScaleGestureDetector scaleDetector;
+    private final Viewport viewport = new Viewport();  // guarded by itself
+    private float lastFocusX, lastFocusY;
+
+    // Owned by the thread calling draw().
+    private Viewport frameViewport = new Viewport();
+    private PatternPicture picture;  // the cached cell, where pictures can be drawn
+    private TileRenderer tiles;  // the cached cell otherwise
+    private SymmetryGroup cacheGroup;  // group the cache was built for
+    private int cacheGeneration;  // DrawingHistory generation the cache was built for
+    private int cacheStrokeCount;  // strokes of the log in the cache
+    private Paint strokePaint = new Paint();
+    private Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private float[] viewValues = new float[9];
+    private Matrix viewMatrix = new Matrix();
+    private PointArray segments = new PointArray(256);
+
+    public PatternNavigator(Context context, Runnable onViewportChanged) {
+        this.onViewportChanged = onViewportChanged;
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                synchronized (viewport) {
+                    viewport.zoom(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                }
+                PatternNavigator.this.onViewportChanged.run();
+                return true;
+            }
+        });
+    }
+
+    public boolean onTouchEvent(MotionEvent event) {
+        /* Zooms with the pinch, and pans by the movement of the focus, the mean of the pointers.  The focus
+           is taken afresh when a finger is added or lifted, so that the pattern does not jump. */
+
+        scaleDetector.onTouchEvent(event);
+
+        int action = event.getActionMasked();
+        int lifted = (action == MotionEvent.ACTION_POINTER_UP) ? event.getActionIndex() : -1;
+        float sumX = 0, sumY = 0;
+        int count = 0;
+        for (int i = 0; i < event.getPointerCount(); i++) {
+            if (i != lifted) {
+                sumX += event.getX(i);
+                sumY += event.getY(i);
+                count++;
+            }
+        }
+        if (count == 0)
+            return true;
+        float focusX = sumX / count, focusY = sumY / count;
+
+        switch (action) {
+            case MotionEvent.ACTION_MOVE:
+                synchronized (viewport) {
+                    viewport.pan(focusX - lastFocusX, focusY - lastFocusY);
+                }
+                onViewportChanged.run();
+                break;
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN:
+            case MotionEvent.ACTION_POINTER_UP:
+                break;
+            default:
+                return true;
+        }
+        lastFocusX = focusX;
+        lastFocusY = focusY;
+        return true;
+    }
+
+    public void draw(Canvas canvas, SymmetryGroup gp, DrawingHistory history, Paint paint, Paint regionPaint,
+                     int width, int height) {
+        /* Draws the drawing of history as seen through the viewport, with the fundamental region in regionPaint.
+           paint gives the style of the strokes, as for SymmetryRenderer.drawLog(). */
+
+        synchronized (viewport) {
+            frameViewport.set(viewport);
+        }
+
+        /* Hardware accelerated canvases cannot draw pictures before API 23. */
+        boolean usePicture = !canvas.isHardwareAccelerated() || Build.VERSION.SDK_INT >= 23;
+        StrokeLog log = history.getLog();
+        if (cacheGroup != gp || cacheGeneration != history.getGeneration() || (usePicture ? picture == null : tiles == null)) {
+            picture = null;
+            tiles = null;
+            cacheGroup = gp;
+            cacheGeneration = history.getGeneration();
+            cacheStrokeCount = 0;
+        }
+
+        canvas.drawColor(Color.WHITE);
+        if (usePicture) {
+            if (picture == null || cacheStrokeCount != log.getStrokeCount()) {
+                if (picture == null)
+                    picture = new PatternPicture(gp);
+                picture.record(log, paint);
+                cacheStrokeCount = log.getStrokeCount();
+            }
+            picture.draw(canvas, frameViewport, width, height);
+        } else {
+            if (tiles == null)
+                tiles = new TileRenderer(gp);
+            if (cacheStrokeCount < log.getStrokeCount()) {
+                strokePaint.set(paint);
+                log.replay(new StrokeLog.Listener() {
+                    @Override
+                    public void onStroke(int color, float width, float[] points, int pointCount) {
+                        segments.clear();
+                        segments.addSegments(points, pointCount);
+                        strokePaint.setColor(color);
+                        strokePaint.setStrokeWidth(width);
+                        tiles.drawSegments(segments.array(), segments.size(), strokePaint);
+                    }
+                }, cacheStrokeCount, log.getStrokeCount());
+                cacheStrokeCount = log.getStrokeCount();
+            }
+            tiles.drawPattern(canvas, frameViewport, width, height, bitmapPaint);
+        }
+
+        frameViewport.getValues(viewValues);
+        viewMatrix.setValues(viewValues);
+        canvas.save();
+        canvas.concat(viewMatrix);
+        gp.getFundamentalRegion().draw(canvas, regionPaint);
+        canvas.restore();
+    }
+}
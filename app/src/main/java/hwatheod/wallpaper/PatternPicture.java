@@ -0,0 +1,171 @@
+package hwatheod.wallpaper;
+
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Picture;
+
+import hwatheod.wallpaper.geometry.Affine;
+import hwatheod.wallpaper.geometry.PointArray;
+import hwatheod.wallpaper.geometry.StrokeLog;
+import hwatheod.wallpaper.geometry.Viewport;
+
+/*
+  The motif of a drawing, every stroke together with its images under the coset reps, recorded once into
+  Pictures.  The whole pattern is the motif at every lattice translate, so a frame is drawn with one
+  drawPicture() per layer and visible cell instead of one drawLines() per stroke, image and translate.  Unlike
+  a raster of the cell, the motif stays sharp at any zoom.
+
+  Strokes which land after the motif was recorded go into a layer of their own, a Picture holding only them,
+  so recording does not replay the whole drawing.  A layer with at most twice the strokes of the new one is
+  merged into it, by recording its strokes again.  Each layer then has more than twice the strokes of the
+  next, so there are at most log2 of the number of strokes, and as a stroke is only recorded again into a
+  layer at least 1.5 times the size of its old one, it is recorded at most log1.5 of that number of times.
+
+  Recording and playing back a Picture needs no GPU, so this works on software canvases, e.g. those of a
+  SurfaceView or a Bitmap.  Hardware accelerated canvases only draw pictures from API 23.
+ */
+public class PatternPicture {
+    private final SymmetryGroup gp;
+    private Picture[] layers = new Picture[16];
+    private int[] layerStarts = new int[16];  // first stroke of each layer, the next layer starting where it ends
+    private float[] layerBounds = new float[4 * 16];  // {left, top, right, bottom} of each layer
+    private int layerCount;
+    private int recordedStrokes;  // strokes of the log in the layers
+    private float[] motifBounds = new float[4];  // {left, top, right, bottom} of all layers, in drawing coordinates
+
+    // scratch objects, kept so that drawing does not allocate once the buffers have grown
+    private float[] translates = new float[32];
+    private float[] viewValues = new float[9];
+    private Matrix viewMatrix = new Matrix();
+
+    public PatternPicture(SymmetryGroup gp) {
+        this.gp = gp;
+    }
+
+    public void record(StrokeLog log, Paint paint) {
+        /* Brings the motif up to date with the strokes of log, recording only those added since the last call
+           if the log has only grown since.  paint gives the style of the strokes, as for
+           SymmetryRenderer.drawLog(). */
+
+        int strokeCount = log.getStrokeCount();
+        if (strokeCount < recordedStrokes) {
+            layerCount = 0;
+            recordedStrokes = 0;
+        }
+        if (strokeCount > recordedStrokes) {
+            int from = recordedStrokes;
+            while (layerCount > 0 && from - layerStarts[layerCount - 1] <= 2 * (strokeCount - from)) {
+                layerCount--;
+                layers[layerCount] = null;
+                from = layerStarts[layerCount];
+            }
+            recordLayer(log, from, strokeCount, paint);
+            recordedStrokes = strokeCount;
+        }
+
+        motifBounds[0] = motifBounds[1] = Float.MAX_VALUE;
+        motifBounds[2] = motifBounds[3] = -Float.MAX_VALUE;
+        for (int i = 0; i < layerCount; i++) {
+            motifBounds[0] = Math.min(motifBounds[0], layerBounds[4*i]);
+            motifBounds[1] = Math.min(motifBounds[1], layerBounds[4*i + 1]);
+            motifBounds[2] = Math.max(motifBounds[2], layerBounds[4*i + 2]);
+            motifBounds[3] = Math.max(motifBounds[3], layerBounds[4*i + 3]);
+        }
+    }
+
+    private void recordLayer(StrokeLog log, int fromStroke, int toStroke, Paint paint) {
+        /* Records the strokes from fromStroke up to, but not including, toStroke into a new layer. */
+
+        final float[] bounds = {Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        final Affine[] reps = gp.getWallpaperGroup().getCosetReps();
+        log.replay(new StrokeLog.Listener() {
+            @Override
+            public void onStroke(int color, float width, float[] points, int pointCount) {
+                float reach = width / 2 + 1;
+                for (int i = 0; i < pointCount; i++) {
+                    float x = points[2*i], y = points[2*i + 1];
+                    addToBounds(bounds, x, y, reach);
+                    for (Affine m : reps) {
+                        addToBounds(bounds, m.mapX(x, y), m.mapY(x, y), reach);
+                    }
+                }
+            }
+        }, fromStroke, toStroke);
+        /* Recorded relative to the top left corner, so that everything lies within the bounds of the picture. */
+        Picture layer = new Picture();
+        final Canvas canvas = layer.beginRecording((int)Math.ceil(bounds[2] - bounds[0]), (int)Math.ceil(bounds[3] - bounds[1]));
+        canvas.translate(-bounds[0], -bounds[1]);
+        final Paint strokePaint = new Paint(paint);
+        final Matrix[] cosetReps = gp.getCosetReps();
+        log.replay(new StrokeLog.Listener() {
+            private PointArray segments = new PointArray(256);
+
+            @Override
+            public void onStroke(int color, float width, float[] points, int pointCount) {
+                segments.clear();
+                segments.addSegments(points, pointCount);
+                strokePaint.setColor(color);
+                strokePaint.setStrokeWidth(width);
+                canvas.drawLines(segments.array(), 0, 2*segments.size(), strokePaint);
+                for (Matrix m : cosetReps) {
+                    canvas.save();
+                    canvas.concat(m);
+                    canvas.drawLines(segments.array(), 0, 2*segments.size(), strokePaint);
+                    canvas.restore();
+                }
+            }
+        }, fromStroke, toStroke);
+        layer.endRecording();
+
+        if (layerCount == layers.length) {
+            Picture[] grownLayers = new Picture[2 * layerCount];
+            System.arraycopy(layers, 0, grownLayers, 0, layerCount);
+            layers = grownLayers;
+            int[] grownStarts = new int[2 * layerCount];
+            System.arraycopy(layerStarts, 0, grownStarts, 0, layerCount);
+            layerStarts = grownStarts;
+            float[] grownBounds = new float[8 * layerCount];
+            System.arraycopy(layerBounds, 0, grownBounds, 0, 4 * layerCount);
+            layerBounds = grownBounds;
+        }
+        layers[layerCount] = layer;
+        layerStarts[layerCount] = fromStroke;
+        System.arraycopy(bounds, 0, layerBounds, 4*layerCount, 4);
+        layerCount++;
+    }
+
+    private static void addToBounds(float[] bounds, float x, float y, float reach) {
+        bounds[0] = Math.min(bounds[0], x - reach);
+        bounds[1] = Math.min(bounds[1], y - reach);
+        bounds[2] = Math.max(bounds[2], x + reach);
+        bounds[3] = Math.max(bounds[3], y + reach);
+    }
+
+    public void draw(Canvas canvas, Viewport viewport, int width, int height) {
+        /* Draws the pattern as seen through viewport onto the window [0, width] x [0, height]. */
+
+        if (layerCount == 0)
+            return;
+
+        int count = viewport.getVisibleTranslates(gp.getWallpaperGroup().getLattice(), motifBounds, width, height, translates);
+        if (2*count > translates.length) {
+            translates = new float[2*count];
+            viewport.getVisibleTranslates(gp.getWallpaperGroup().getLattice(), motifBounds, width, height, translates);
+        }
+
+        viewport.getValues(viewValues);
+        viewMatrix.setValues(viewValues);
+        canvas.save();
+        canvas.concat(viewMatrix);
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < layerCount; j++) {
+                canvas.save();
+                canvas.translate(translates[2*i] + layerBounds[4*j], translates[2*i + 1] + layerBounds[4*j + 1]);
+                canvas.drawPicture(layers[j]);
+                canvas.restore();
+            }
+        }
+        canvas.restore();
+    }
+}
@@ -2,7 +2,6 @@ package hwatheod.wallpaper;
 
 import android.graphics.Canvas;
 import android.graphics.Paint;
-import android.graphics.Path;
 
 public class Polygon
 {
@@ -12,6 +11,10 @@ public class Polygon
     // Number of sides in the polygon.
     private int polySides;
 
+    // Edges for draw(), packed as for Canvas.drawLines().  Built by the constructor rather than on first use,
+    // so that a polygon shared by the UI and render threads is never written to after it is published.
+    private final float[] outline;
+
     /**
      * @param points {{0,0}, {10,0}, {10,10}, {0,10}} Coordinates of points in order (clockwise or counterclockwise).
      * @param offsetX X offset to be applied to each point.
@@ -27,6 +30,14 @@ public class Polygon
             polyX[i] = points[i][0] + offsetX;
             polyY[i] = points[i][1] + offsetY;
         }
+
+        outline = new float[4 * polySides];
+        for (int i=0; i<polySides; i++) {
+            outline[4*i] = polyX[i];
+            outline[4*i + 1] = polyY[i];
+            outline[4*i + 2] = polyX[(i+1) % polySides];
+            outline[4*i + 3] = polyY[(i+1) % polySides];
+        }
     }
 
     public float[] getPoint(int i) {
@@ -48,13 +59,6 @@ public class Polygon
         if (polySides == 0)
             return;
 
-        Path path = new Path();
-
-        path.moveTo(polyX[0], polyY[0]);
-        for (int i=1; i < polySides; i++)
-            path.lineTo(polyX[i], polyY[i]);
-        path.close();
-
-        c.drawPath(path, paint);
+        c.drawLines(outline, paint);
     }
 }
@@ -0,0 +1,74 @@
+package hwatheod.wallpaper;
+
+import android.util.Log;
+
+import hwatheod.wallpaper.geometry.StrokeLog;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/*
+  Keeps a StrokeLog in a file in app storage.  After a stroke only the new record is appended, so saving
+  costs the same however long the drawing is.  Failing to save only loses the drawing on the next start,
+  so errors are logged and otherwise ignored.
+ */
+public class StrokeLogFile {
+    private static final String TAG = "StrokeLogFile";
+    private static final String FILE_NAME = "strokes.log";
+
+    private final File file;
+    private int savedLength;  // bytes of the log already in the file
+
+    public StrokeLogFile(File directory) {
+        file = new File(directory, FILE_NAME);
+    }
+
+    public StrokeLog load(float pixelsPerUnit) {
+        /* Returns the saved log, or null if there is none.  A log saved in pixels, before the groups were laid
+           out in units, is converted to units at pixelsPerUnit. */
+
+        if (!file.exists())
+            return null;
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            StrokeLog log = StrokeLog.read(in, pixelsPerUnit);
+
+            /* after a partial record, which read() drops, or once the log is converted, the next save()
+               rewrites the file, as records appended to it would never be read */
+            savedLength = (!log.wasConverted() && file.length() == log.length()) ? log.length() : 0;
+            return log;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read " + file, e);
+            return null;
+        }
+    }
+
+    public void save(StrokeLog log) {
+        /* Brings the file up to date with log by appending the records added since the last call.  If strokes
+           were undone, so that log is shorter than the file, the file is rewritten.
+           Use rewrite() once log has been started again. */
+
+        boolean append = savedLength > 0 && savedLength <= log.length();
+        int from = append ? savedLength : 0;
+        if (from == log.length())
+            return;
+
+        try (OutputStream out = new FileOutputStream(file, append)) {
+            log.writeTo(out, from);
+            savedLength = log.length();
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write " + file, e);
+            savedLength = 0;
+        }
+    }
+
+    public void rewrite(StrokeLog log) {
+        savedLength = 0;
+        save(log);
+    }
+}
@@ -2,352 +2,194 @@ package hwatheod.wallpaper;
 
 import android.graphics.Matrix;
 
+import hwatheod.wallpaper.geometry.Affine;
+import hwatheod.wallpaper.geometry.Lattice;
+import hwatheod.wallpaper.geometry.PointArray;
+import hwatheod.wallpaper.geometry.WallpaperGroup;
+
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
+/*
+  Android side of a wallpaper group: maps the menu ids to group symbols, and adapts the geometry of
+  WallpaperGroup to the android.graphics classes used for drawing.
+
+  The symbol tables are immutable and loaded on first use.  Instances are immutable too, so get() keeps the
+  most recently used ones by group, size and scale, and switching back to a group or rotating the device
+  reuses them instead of building the geometry again.  Being shared by the UI and render threads, they hand
+  out copies of their matrices and arrays.  The WallpaperGroup from getWallpaperGroup() is shared as it is,
+  for the drawing path, so its arrays must not be modified.
+ */
 public class SymmetryGroup {
-    private static HashMap<Integer, String> conwayGroupSymbolMap = new HashMap<Integer, String>();
-    private static HashMap<Integer, String> crystallographicGroupSymbolMap = new HashMap<Integer, String>();
+    public static final float REFERENCE_DENSITY = 2;  // display density at which a unit of WallpaperGroup is a pixel
+    public static final float BRUSH_WIDTH = 20;  // width of the drawing brush, in units
+    private static final int CACHE_SIZE = 8;  // instances kept by get()
+
+    // Instances by key(), least recently used first.
+    private static final LinkedHashMap<String, SymmetryGroup> cache = new LinkedHashMap<String, SymmetryGroup>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SymmetryGroup> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
 
+    private WallpaperGroup group;
+    private Lattice lattice;
+    private float[] cellBounds;  // lattice cell bounds, computed once
     private Polygon fundamentalRegion; // fundamental region for the symmetry group
-    private float centerX, centerY;  // center of fundamental tile for the translation subgroup
-    private float[] translationX;
-    private float[] translationY;  // the 2 translation vectors for the translation subgroup
     private Matrix[] cosetReps; // coset representatives of the translation subgroup in the symmetry group,
                         // which can be applied to the fundamental region to get the fundamental tile
                         // Identity matrix is NOT included.
+    private Matrix[] inverseCosetReps;  // the inverse of each of cosetReps
     private int id;
-    
-    static private void setReflectionMatrix(Matrix m, float[] p1, float[] p2) {
-        /* Sets m to be the matrix for reflection about the line through p1 and p2. */
-
-        float dx = p2[0] - p1[0];
-        float dy = p2[1] - p1[1];
-        /* orthogonal direction is (dy, -dx) */
-        float unitNormal[] = {dy / (float)Math.sqrt(dy*dy + dx*dx), -dx / (float)Math.sqrt(dy*dy + dx*dx)};
-
-        /* The reflection matrix fixes the 2 points while taking the unit normal to its negative. */
-        m.setPolyToPoly(new float[] {p1[0], p1[1], p2[0], p2[1], p1[0] + unitNormal[0], p1[1] + unitNormal[1]}, 0,
-                new float[] {p1[0], p1[1], p2[0], p2[1], p1[0] - unitNormal[0], p1[1] - unitNormal[1]}, 0, 3
-                );
+
+    /*
+      The symbol tables, built when the class is first used: the JVM initializes a class once, on first use,
+      and safely for all threads.
+     */
+    private static class Symbols {
+        static final Map<Integer, String> conway;
+        static final Map<Integer, String> crystallographic;
+
+        static {
+            HashMap<Integer, String> conwayGroupSymbolMap = new HashMap<Integer, String>();
+            conwayGroupSymbolMap.put(R.id.group_o, "o");
+            conwayGroupSymbolMap.put(R.id.group_xx, "xx");
+            conwayGroupSymbolMap.put(R.id.group_sx, "*x");
+            conwayGroupSymbolMap.put(R.id.group_ss, "**");
+            conwayGroupSymbolMap.put(R.id.group_632, "632");
+            conwayGroupSymbolMap.put(R.id.group_s632, "*632");
+            conwayGroupSymbolMap.put(R.id.group_333, "333");
+            conwayGroupSymbolMap.put(R.id.group_s333, "*333");
+            conwayGroupSymbolMap.put(R.id.group_3s3, "3*3");
+            conwayGroupSymbolMap.put(R.id.group_442, "442");
+            conwayGroupSymbolMap.put(R.id.group_s442, "*442");
+            conwayGroupSymbolMap.put(R.id.group_4s2, "4*2");
+            conwayGroupSymbolMap.put(R.id.group_2222, "2222");
+            conwayGroupSymbolMap.put(R.id.group_22x, "22x");
+            conwayGroupSymbolMap.put(R.id.group_22s, "22*");
+            conwayGroupSymbolMap.put(R.id.group_s2222, "*2222");
+            conwayGroupSymbolMap.put(R.id.group_2s22, "2*22");
+            conway = Collections.unmodifiableMap(conwayGroupSymbolMap);
+
+            HashMap<Integer, String> crystallographicGroupSymbolMap = new HashMap<Integer, String>();
+            crystallographicGroupSymbolMap.put(R.id.group_o, "p1");
+            crystallographicGroupSymbolMap.put(R.id.group_xx, "pg");
+            crystallographicGroupSymbolMap.put(R.id.group_sx, "cm");
+            crystallographicGroupSymbolMap.put(R.id.group_ss, "pm");
+            crystallographicGroupSymbolMap.put(R.id.group_632, "p6");
+            crystallographicGroupSymbolMap.put(R.id.group_s632, "p6mm");
+            crystallographicGroupSymbolMap.put(R.id.group_333, "p3");
+            crystallographicGroupSymbolMap.put(R.id.group_s333, "p3m1");
+            crystallographicGroupSymbolMap.put(R.id.group_3s3, "p31m");
+            crystallographicGroupSymbolMap.put(R.id.group_442, "p4");
+            crystallographicGroupSymbolMap.put(R.id.group_s442, "p4mm");
+            crystallographicGroupSymbolMap.put(R.id.group_4s2, "p4mg");
+            crystallographicGroupSymbolMap.put(R.id.group_2222, "p2");
+            crystallographicGroupSymbolMap.put(R.id.group_22x, "p2gg");
+            crystallographicGroupSymbolMap.put(R.id.group_22s, "p2mg");
+            crystallographicGroupSymbolMap.put(R.id.group_s2222, "p2mm");
+            crystallographicGroupSymbolMap.put(R.id.group_2s22, "c2mm");
+            crystallographic = Collections.unmodifiableMap(crystallographicGroupSymbolMap);
+        }
     }
 
     static public void init() {
-        conwayGroupSymbolMap.put(R.id.group_o, "o");
-        conwayGroupSymbolMap.put(R.id.group_xx, "xx");
-        conwayGroupSymbolMap.put(R.id.group_sx, "*x");
-        conwayGroupSymbolMap.put(R.id.group_ss, "**");
-        conwayGroupSymbolMap.put(R.id.group_632, "632");
-        conwayGroupSymbolMap.put(R.id.group_s632, "*632");
-        conwayGroupSymbolMap.put(R.id.group_333, "333");
-        conwayGroupSymbolMap.put(R.id.group_s333, "*333");
-        conwayGroupSymbolMap.put(R.id.group_3s3, "3*3");
-        conwayGroupSymbolMap.put(R.id.group_442, "442");
-        conwayGroupSymbolMap.put(R.id.group_s442, "*442");
-        conwayGroupSymbolMap.put(R.id.group_4s2, "4*2");
-        conwayGroupSymbolMap.put(R.id.group_2222, "2222");
-        conwayGroupSymbolMap.put(R.id.group_22x, "22x");
-        conwayGroupSymbolMap.put(R.id.group_22s, "22*");
-        conwayGroupSymbolMap.put(R.id.group_s2222, "*2222");
-        conwayGroupSymbolMap.put(R.id.group_2s22, "2*22");
-
-        crystallographicGroupSymbolMap.put(R.id.group_o, "p1");
-        crystallographicGroupSymbolMap.put(R.id.group_xx, "pg");
-        crystallographicGroupSymbolMap.put(R.id.group_sx, "cm");
-        crystallographicGroupSymbolMap.put(R.id.group_ss, "pm");
-        crystallographicGroupSymbolMap.put(R.id.group_632, "p6");
-        crystallographicGroupSymbolMap.put(R.id.group_s632, "p6mm");
-        crystallographicGroupSymbolMap.put(R.id.group_333, "p3");
-        crystallographicGroupSymbolMap.put(R.id.group_s333, "p3m1");
-        crystallographicGroupSymbolMap.put(R.id.group_3s3, "p31m");
-        crystallographicGroupSymbolMap.put(R.id.group_442, "p4");
-        crystallographicGroupSymbolMap.put(R.id.group_s442, "p4mm");
-        crystallographicGroupSymbolMap.put(R.id.group_4s2, "p4mg");
-        crystallographicGroupSymbolMap.put(R.id.group_2222, "p2");
-        crystallographicGroupSymbolMap.put(R.id.group_22x, "p2gg");
-        crystallographicGroupSymbolMap.put(R.id.group_22s, "p2mg");
-        crystallographicGroupSymbolMap.put(R.id.group_s2222, "p2mm");
-        crystallographicGroupSymbolMap.put(R.id.group_2s22, "c2mm");
+        /* Loads the symbol tables now instead of on first use.  Calling this is optional. */
+        Symbols.conway.size();
     }
 
     static protected Map<Integer, String> getConwayGroupSymbolMap() {
-        return conwayGroupSymbolMap;
+        return Symbols.conway;
     }
 
     static public String getConwaySymbol(int symmetryGroupId) {
-        return conwayGroupSymbolMap.get(symmetryGroupId);
+        return Symbols.conway.get(symmetryGroupId);
+    }
+
+    static public int getIdForConwaySymbol(String conwaySymbol) {
+        /* Returns the menu id of the group with the given Conway symbol, or 0 if there is none. */
+        for (Map.Entry<Integer, String> entry : Symbols.conway.entrySet()) {
+            if (entry.getValue().equals(conwaySymbol))
+                return entry.getKey();
+        }
+        return 0;
     }
 
     static public String getCrystallographicSymbol(int symmetryGroupId) {
-        return crystallographicGroupSymbolMap.get(symmetryGroupId);
+        return Symbols.crystallographic.get(symmetryGroupId);
+    }
+
+    static public float getPixelsPerUnit(float density, float patternScale) {
+        /* The scale of the groups on a display of the given density, so that the pattern has the same
+           physical size on every device, times the pattern size chosen by the user.  This also bounds the
+           number of translates of each stroke on high resolution displays. */
+        return density / REFERENCE_DENSITY * patternScale;
+    }
+
+    static public SymmetryGroup get(int symmetryGroupId, int width, int height, float pixelsPerUnit) {
+        /* Returns the group for a window of the given size, built on first use and then kept. */
+
+        String key = symmetryGroupId + ":" + width + "x" + height + "@" + pixelsPerUnit;
+        synchronized (cache) {
+            SymmetryGroup gp = cache.get(key);
+            if (gp == null) {
+                gp = new SymmetryGroup(symmetryGroupId, width, height, pixelsPerUnit);
+                cache.put(key, gp);
+            }
+            return gp;
+        }
     }
 
     SymmetryGroup(int symmetryGroupId, int width, int height) {
+        this(symmetryGroupId, width, height, 1);
+    }
+
+    SymmetryGroup(int symmetryGroupId, int width, int height, float pixelsPerUnit) {
         id = symmetryGroupId;
-        
-        float d1x, d1y, d2x, d2y, offsetX, offsetY;
-        switch(symmetryGroupId) {
-            case R.id.group_o:                
-                d1x = 200; d1y = 0; d2x = 80; d2y = 200;
-                offsetX = width/2 - (d1x + d2x) / 2;
-                offsetY = height/2 - (d1y + d2y)/2;
-                fundamentalRegion = new Polygon(new float[][] {{0,0}, {d1x, d1y}, {d1x+d2x, d1y+d2y}, {d2x, d2y}}, offsetX, offsetY);
-                centerX = (d1x + d2x) / 2 + offsetX;
-                centerY = (d1y + d2y) / 2 + offsetY;
-                translationX = new float[] {d1x, d2x};
-                translationY = new float[] {d1y, d2y};
-                cosetReps = new Matrix[] {};
-                break;
-            case R.id.group_2222:
-                d1x = 200; d1y = 0; d2x = 80; d2y = 200;
-                offsetX = width/2 - (d1x + d2x)/2;
-                offsetY = height/2 - (d1y + d2y)/2;
-                fundamentalRegion = new Polygon(new float[][] {{0,0}, {d1x, d1y}, {d1x+d2x, d1y+d2y}, {d2x, d2y}}, offsetX, offsetY);
-                centerX = d1x / 2 + offsetX;
-                centerY = d1y / 2 + offsetY;
-                translationX = new float[] {d1x, d2x*2};
-                translationY = new float[] {d1y, d2y*2};
-                cosetReps = new Matrix[1];
-                cosetReps[0] = new Matrix(); cosetReps[0].setRotate(180, centerX, centerY);
-                break;
-            case R.id.group_333:
-                float hexSize = 300;
-                d1x = 3*hexSize/4; d1y = hexSize * ((float)Math.sqrt(3)/4); d2x = d1x; d2y = -d1y;
-                offsetX = width/2;
-                offsetY = height/2;
-                fundamentalRegion = new Polygon(new float[][] {{0,0}, {hexSize/2 * 1/2, hexSize/2 * (float)(Math.sqrt(3)/2) },
-                                                   {hexSize/2,0},{hexSize/2 * 1/2, -hexSize/2 * (float)Math.sqrt(3)/2}}, offsetX, offsetY);
-                centerX = width/2;
-                centerY = height/2;
-                translationX = new float[] {d1x, d2x};
-                translationY = new float[] {d1y, d2y};
-                cosetReps = new Matrix[2];
-                cosetReps[0] = new Matrix(); cosetReps[0].setRotate(120, centerX, centerY);
-                cosetReps[1] = new Matrix(); cosetReps[1].setRotate(240, centerX, centerY);
-                break;
-            case R.id.group_442:                
-                float squareSize = 300;
-                d1x = squareSize; d1y = 0; d2x = 0; d2y = squareSize;
-                offsetX = width/2;
-                offsetY = height/2;
-                fundamentalRegion = new Polygon(new float[][] {{0,0}, {d2x/2, d2y/2}, {(d1x+d2x)/2,(d1y+d2y)/2},{d1x/2, d1y/2}}, offsetX, offsetY);
-                centerX = width/2;
-                centerY = height/2;
-                translationX = new float[] {d1x, d2x};
-                translationY = new float[] {d1y, d2y};
-                cosetReps = new Matrix[3];
-                cosetReps[0] = new Matrix(); cosetReps[0].setRotate(90, centerX, centerY);
-                cosetReps[1] = new Matrix(); cosetReps[1].setRotate(180, centerX, centerY);
-                cosetReps[2] = new Matrix(); cosetReps[2].setRotate(270, centerX, centerY);
-                break;
-            case R.id.group_632:
-                hexSize = 400;
-                d1x = 3*hexSize/4; d1y = hexSize * ((float)Math.sqrt(3)/4); d2x = d1x; d2y = -d1y;
-                offsetX = width/2;
-                offsetY = height/2;
-                fundamentalRegion = new Polygon(new float[][] {{0,0}, {0, hexSize/2 * (float)Math.sqrt(3)/2},
-                                        {hexSize/4,hexSize/2 * (float)Math.sqrt(3)/2},{3*hexSize/8, hexSize*(float)Math.sqrt(3)/8}}, offsetX, offsetY);
-                centerX = width/2;
-                centerY = height/2;
-                translationX = new float[] {d1x, d2x};
-                translationY = new float[] {d1y, d2y};
-                cosetReps = new Matrix[5];
-                for (int i=0; i<5; i++ ) {
-                    cosetReps[i] = new Matrix();
-                    cosetReps[i].setRotate(60 * (i+1), centerX, centerY);
-                }
-                break;
-            case R.id.group_s2222:
-                float dx = 400, dy = 200;
-                offsetX = width/2 - dx/4;
-                offsetY = height/2 - dy/4;
-                fundamentalRegion = new Polygon(new float[][] {{0,0}, {dx/2, 0}, {dx/2, dy/2}, {0, dy/2}}, offsetX, offsetY);
-                centerX = width/2;
-                centerY = height/2;
-                translationX = new float[] {dx, 0};
-                translationY = new float[] {0, dy};
-                cosetReps = new Matrix[3];
-                cosetReps[0] = new Matrix(); setReflectionMatrix(cosetReps[0], fundamentalRegion.getPoint(0), fundamentalRegion.getPoint(1));
-                cosetReps[1] = new Matrix(); setReflectionMatrix(cosetReps[1], fundamentalRegion.getPoint(0), fundamentalRegion.getPoint(3));
-                cosetReps[2] = new Matrix(); cosetReps[2].setRotate(180, offsetX, offsetY);
-                break;
-            case R.id.group_s333:
-                hexSize = 500;
-                d1x = 3*hexSize/4; d1y = hexSize * ((float)Math.sqrt(3)/4); d2x = d1x; d2y = -d1y;
-                offsetX = width/2;
-                offsetY = height/2;
-                fundamentalRegion = new Polygon(new float[][] {{0,0}, {hexSize/2 * 1/2, hexSize/2 * (float)(Math.sqrt(3)/2) },
-                        {hexSize/2,0}}, offsetX, offsetY);
-                centerX = width/2;
-                centerY = height/2;
-                translationX = new float[] {d1x, d2x};
-                translationY = new float[] {d1y, d2y};
-                cosetReps = new Matrix[5];
-                cosetReps[0] = new Matrix(); cosetReps[0].setRotate(120, centerX, centerY);
-                cosetReps[1] = new Matrix(); cosetReps[1].setRotate(240, centerX, centerY);
-                cosetReps[2] = new Matrix(); setReflectionMatrix(cosetReps[2], fundamentalRegion.getPoint(2), fundamentalRegion.getPoint(0));
-                cosetReps[3] = new Matrix(cosetReps[2]); cosetReps[3].postConcat(cosetReps[0]);
-                cosetReps[4] = new Matrix(cosetReps[2]); cosetReps[4].postConcat(cosetReps[1]);
-                break;
-            case R.id.group_s442:
-                squareSize = 400;
-                d1x = squareSize; d1y = 0; d2x = 0; d2y = squareSize;
-                offsetX = width/2;
-                offsetY = height/2;
-                fundamentalRegion = new Polygon(new float[][] {{0,0}, {d2x/2, d2y/2}, {(d1x+d2x)/2,(d1y+d2y)/2}}, offsetX, offsetY);
-                centerX = width/2;
-                centerY = height/2;
-                translationX = new float[] {d1x, d2x};
-                translationY = new float[] {d1y, d2y};
-                cosetReps = new Matrix[7];
-                cosetReps[0] = new Matrix(); cosetReps[0].setRotate(90, centerX, centerY);
-                cosetReps[1] = new Matrix(); cosetReps[1].setRotate(180, centerX, centerY);
-                cosetReps[2] = new Matrix(); cosetReps[2].setRotate(270, centerX, centerY);
-                cosetReps[3] = new Matrix(); setReflectionMatrix(cosetReps[3], fundamentalRegion.getPoint(1), fundamentalRegion.getPoint(2));
-                for (int i=4; i<7; i++) {
-                    cosetReps[i] = new Matrix(cosetReps[3]); cosetReps[i].postConcat(cosetReps[i-4]);
-                }
-                break;
-            case R.id.group_s632:
-                hexSize = 500;
-                d1x = 3*hexSize/4; d1y = hexSize * ((float)Math.sqrt(3)/4); d2x = d1x; d2y = -d1y;
-                offsetX = width/2;
-                offsetY = height/2;
-                fundamentalRegion = new Polygon(new float[][] {{0,0}, {0, hexSize/2 * (float)Math.sqrt(3)/2},
-                        {hexSize/4,hexSize/2 * (float)Math.sqrt(3)/2}}, offsetX, offsetY);
-                centerX = width/2;
-                centerY = height/2;
-                translationX = new float[] {d1x, d2x};
-                translationY = new float[] {d1y, d2y};
-                cosetReps = new Matrix[11];
-                for (int i=0; i<5; i++ ) {
-                    cosetReps[i] = new Matrix();
-                    cosetReps[i].setRotate(60 * (i+1), centerX, centerY);
-                }
-                cosetReps[5] = new Matrix(); setReflectionMatrix(cosetReps[5], fundamentalRegion.getPoint(0), fundamentalRegion.getPoint(2));
-                for (int i=6; i<11; i++) {
-                    cosetReps[i] = new Matrix(cosetReps[5]); cosetReps[i].postConcat(cosetReps[i-6]);
-                }
-                break;
-            case R.id.group_ss:
-                dx = 300; dy = 120;
-                offsetX = width / 2 - dx / 4;
-                offsetY = height / 2 - dy / 2;
-                fundamentalRegion = new Polygon(new float[][]{{0,0}, {dx/2, 0}, {dx/2, dy}, {0, dy}}, offsetX, offsetY);
-                centerX = width/2;
-                centerY = height/2;
-                translationX = new float[] {dx, 0};
-                translationY = new float[] {0, dy};
-                cosetReps = new Matrix[1];
-                cosetReps[0] = new Matrix(); setReflectionMatrix(cosetReps[0], fundamentalRegion.getPoint(0), fundamentalRegion.getPoint(3));
-                break;
-            case R.id.group_sx:
-                dx = 150; dy = 120;
-                offsetX = width / 2 - dx / 2;
-                offsetY = height / 2 - dy / 2;
-                fundamentalRegion = new Polygon(new float[][]{{0,0}, {dx, 0}, {dx, dy}, {0, dy}}, offsetX, offsetY);
-                centerX = width/2;
-                centerY = height/2;
-                translationX = new float[] {dx, dx};
-                translationY = new float[] {dy, -dy};
-                cosetReps = new Matrix[1];
-                cosetReps[0] = new Matrix(); setReflectionMatrix(cosetReps[0], fundamentalRegion.getPoint(0), fundamentalRegion.getPoint(3));
-                break;
-            case R.id.group_xx:
-                dx = 150; dy = 120;
-                offsetX = width / 2 - dx / 2;
-                offsetY = height / 2 - dy / 2;
-                fundamentalRegion = new Polygon(new float[][]{{0,0}, {dx, 0}, {dx, dy}, {0, dy}}, offsetX, offsetY);
-                centerX = width/2;
-                centerY = height/2;
-                translationX = new float[] {dx, 0};
-                translationY = new float[] {0, 2*dy};
-                cosetReps = new Matrix[1];
-                cosetReps[0] = new Matrix();
-                setReflectionMatrix(cosetReps[0], new float[] {dx/2 + offsetX, 0 + offsetY}, new float[] { dx/2 + offsetX, dy + offsetY});
-                cosetReps[0].postTranslate(0, dy);
-                break;
-            case R.id.group_22s:
-                dx = 150; dy = 120;
-                offsetX = width / 2 - dx / 2;
-                offsetY = height / 2 - dy / 2;
-                fundamentalRegion = new Polygon(new float[][]{{0,0}, {dx, 0}, {dx, dy}, {0, dy}}, offsetX, offsetY);
-                centerX = width/2;
-                centerY = height/2;
-                translationX = new float[] {2*dx, 0};
-                translationY = new float[] {0, 2*dy};
-                cosetReps = new Matrix[3];
-                cosetReps[0] = new Matrix(); setReflectionMatrix(cosetReps[0], fundamentalRegion.getPoint(1), fundamentalRegion.getPoint(2));
-                cosetReps[1] = new Matrix(); cosetReps[1].setRotate(180, dx/2 + offsetX, 0 + offsetY);
-                cosetReps[2] = new Matrix(cosetReps[1]); cosetReps[2].postConcat(cosetReps[0]);
-                break;
-            case R.id.group_22x:
-                dx = 150; dy = 120;
-                offsetX = width / 2 - dx / 2;
-                offsetY = height / 2 - dy / 2;
-                fundamentalRegion = new Polygon(new float[][]{{0,0}, {dx, 0}, {dx, dy}, {0, dy}}, offsetX, offsetY);
-                centerX = width/2;
-                centerY = height/2;
-                translationX = new float[] {2*dx, 0};
-                translationY = new float[] {0, 2*dy};
-                cosetReps = new Matrix[3];
-                cosetReps[0] = new Matrix();
-                setReflectionMatrix(cosetReps[0], fundamentalRegion.getPoint(1), fundamentalRegion.getPoint(2));
-                cosetReps[0].postTranslate(0, dy);
-                cosetReps[1] = new Matrix(); cosetReps[1].setRotate(180, dx/2 + offsetX, 0 + offsetY);
-                cosetReps[2] = new Matrix(cosetReps[1]); cosetReps[2].postConcat(cosetReps[0]);
-                break;
-            case R.id.group_2s22:
-                dx = 150; dy = 120;
-                offsetX = width / 2 - dx / 2;
-                offsetY = height / 2 - dy / 2;
-                fundamentalRegion = new Polygon(new float[][]{{0,0}, {dx, 0}, {dx, dy}, {0, dy}}, offsetX, offsetY);
-                centerX = width/2;
-                centerY = height/2;
-                translationX = new float[] {dx, dx};
-                translationY = new float[] {2*dy, -2*dy};
-                cosetReps = new Matrix[3];
-                cosetReps[0] = new Matrix(); setReflectionMatrix(cosetReps[0], fundamentalRegion.getPoint(1), fundamentalRegion.getPoint(2));
-                cosetReps[1] = new Matrix(); cosetReps[1].setRotate(180, dx / 2 + offsetX, 0 + offsetY);
-                cosetReps[2] = new Matrix(cosetReps[0]); cosetReps[2].postConcat(cosetReps[1]);
-                break;
-            case R.id.group_3s3:
-                float baseSize = 300;
-                offsetX = width / 2 - baseSize / 2;
-                offsetY = height / 2;
-                fundamentalRegion = new Polygon(new float[][]{{0,0}, {baseSize, 0}, {baseSize/2, (baseSize / 2) * (float)Math.sqrt(3)/3}}, offsetX, offsetY);
-                centerX = 3*baseSize / 4 + offsetX;
-                centerY = baseSize * (float)Math.sqrt(3)/4 + offsetY;
-                translationX = new float[] {baseSize, baseSize/2};
-                translationY = new float[] {0, baseSize * (float)Math.sqrt(3)/2};
-                cosetReps = new Matrix[5];
-                cosetReps[0] = new Matrix(); cosetReps[0].setRotate(120, fundamentalRegion.getPoint(2)[0], fundamentalRegion.getPoint(2)[1]);
-                cosetReps[1] = new Matrix(); cosetReps[1].setRotate(240, fundamentalRegion.getPoint(2)[0], fundamentalRegion.getPoint(2)[1]);
-                cosetReps[2] = new Matrix(); setReflectionMatrix(cosetReps[2], fundamentalRegion.getPoint(1), new float[] {centerX, centerY});
-                cosetReps[3] = new Matrix(cosetReps[0]); cosetReps[3].postConcat(cosetReps[2]);
-                cosetReps[4] = new Matrix(cosetReps[1]); cosetReps[4].postConcat(cosetReps[2]);
-                break;
-            case R.id.group_4s2:
-                squareSize = 150;
-                offsetX = width/2 - squareSize / 2;
-                offsetY = height/2 - squareSize / 2;
-                fundamentalRegion = new Polygon(new float[][]{{0,0},{0,squareSize},{squareSize,squareSize}, {squareSize,0}}, offsetX, offsetY);
-                centerX = 0 + offsetX;
-                centerY = 0 + offsetY;
-                translationX = new float[] {2 * squareSize, 2 * squareSize};
-                translationY = new float[] {2 * squareSize, -2 * squareSize};
-                cosetReps = new Matrix[7];
-                for (int i=0; i<3; i++) {
-                    cosetReps[i] = new Matrix();
-                    cosetReps[i].setRotate(90 * (i + 1), centerX, centerY);
-                }
-                cosetReps[3] = new Matrix(); setReflectionMatrix(cosetReps[3], fundamentalRegion.getPoint(2), fundamentalRegion.getPoint(3));
-                for (int i=4; i<7; i++) {
-                    cosetReps[i] = new Matrix(cosetReps[i-4]);
-                    cosetReps[i].postConcat(cosetReps[3]);
-                }
-                break;
+        group = new WallpaperGroup(getConwaySymbol(symmetryGroupId), width, height, pixelsPerUnit);
+        lattice = group.getLattice();
+        cellBounds = lattice.getCellBounds();
+
+        PointArray region = group.getFundamentalRegion();
+        float[][] points = new float[region.size()][];
+        for (int i=0; i<region.size(); i++) {
+            points[i] = region.getPoint(i);
+        }
+        fundamentalRegion = new Polygon(points, 0, 0);
+
+        cosetReps = toMatrices(group.getCosetReps());
+        inverseCosetReps = toMatrices(group.getInverseCosetReps());
+    }
+
+    private static Matrix[] toMatrices(Affine[] affines) {
+        Matrix[] matrices = new Matrix[affines.length];
+        float[] values = new float[9];
+        for (int i=0; i<affines.length; i++) {
+            affines[i].getValues(values);
+            matrices[i] = new Matrix();
+            matrices[i].setValues(values);
         }
+        return matrices;
+    }
+
+    public WallpaperGroup getWallpaperGroup() {
+        return group;
+    }
+
+    public void reduceToLatticeCell(float x, float y, float[] out) {
+        lattice.reduce(x, y, out);
+    }
+
+    public float[] getLatticeCellBounds() {
+        /* Returns {left, top, right, bottom} of the lattice cell. */
+        return cellBounds.clone();
+    }
+
+    public int getLatticePoints(float minX, float minY, float maxX, float maxY, float[] out) {
+        return lattice.getPoints(minX, minY, maxX, maxY, out);
     }
 
     public Polygon getFundamentalRegion() {
@@ -355,15 +197,27 @@ public class SymmetryGroup {
     }
 
     public float[] getTranslationX() {
-        return translationX;
+        return group.getTranslationX().clone();
     }
 
     public float[] getTranslationY() {
-        return translationY;
+        return group.getTranslationY().clone();
     }
 
     public Matrix[] getCosetReps() {
-        return cosetReps;
+        return copyOf(cosetReps);
+    }
+
+    public Matrix[] getInverseCosetReps() {
+        return copyOf(inverseCosetReps);
+    }
+
+    private static Matrix[] copyOf(Matrix[] matrices) {
+        Matrix[] copies = new Matrix[matrices.length];
+        for (int i=0; i<matrices.length; i++) {
+            copies[i] = new Matrix(matrices[i]);
+        }
+        return copies;
     }
 
     public int getId() {
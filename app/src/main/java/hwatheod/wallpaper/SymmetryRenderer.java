@@ -0,0 +1,319 @@
+package hwatheod.wallpaper;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import hwatheod.wallpaper.geometry.IndexedCanvas;
+import hwatheod.wallpaper.geometry.PointArray;
+import hwatheod.wallpaper.geometry.RenderMetrics;
+import hwatheod.wallpaper.geometry.SegmentReplicator;
+import hwatheod.wallpaper.geometry.StrokeLog;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/*
+  Draws stroke segments onto a canvas together with all their images under a symmetry group:
+  the images under the coset reps, and every translate of those which lies in the window.
+  Segments are packed as for Canvas.drawLines(), (x0, y0, x1, y1) each.
+  Shared by WallpaperView, which draws on the UI thread, and WallpaperSurfaceView, which draws
+  on its own render thread.  An instance must only be used from one thread.
+
+  The work done and the time taken are recorded in RenderMetrics.
+
+  Segments can also be drawn onto an IndexedCanvas, which is always done by the replicator on the
+  calling thread, whether tile or parallel rendering is set or not.
+ */
+public class SymmetryRenderer {
+    private static final int MAX_BANDS = 8;
+    private static ExecutorService workers;  // shared by all renderers in parallel mode, created on first use
+
+    private SymmetryGroup gp;
+    private int width, height;  // size of the window
+
+    private boolean tileRendering;
+    private TileRenderer tileRenderer;  // used instead of the replicators when tileRendering is set
+
+    private Replicator replicator;
+
+    private boolean parallel;
+    private Band[] bands;  // horizontal bands of the window, each replicated by a worker in parallel mode
+
+    public void setSymmetryGroup(SymmetryGroup gp, int width, int height) {
+        this.gp = gp;
+        this.width = width;
+        this.height = height;
+        replicator = new Replicator(0, Integer.MAX_VALUE);
+        tileRenderer = tileRendering ? new TileRenderer(gp) : null;
+        bands = parallel ? createBands() : null;
+    }
+
+    public SymmetryGroup getSymmetryGroup() {
+        return gp;
+    }
+
+    public boolean isTileRendering() {
+        return tileRendering;
+    }
+
+    public void setTileRendering(boolean enabled) {
+        tileRendering = enabled;
+        tileRenderer = (enabled && gp != null) ? new TileRenderer(gp) : null;
+    }
+
+    public void discardTiles() {
+        /* Starts the tile renderer on an empty cell, once the drawing has been replaced under it, e.g. by undo.
+           Otherwise strokes taken off the drawing would come back with the next composite. */
+
+        if (tileRenderer != null)
+            tileRenderer = new TileRenderer(gp);
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public void setParallel(boolean enabled) {
+        parallel = enabled;
+        bands = (enabled && gp != null) ? createBands() : null;
+    }
+
+    public void drawSegments(Canvas canvas, float[] segments, int pointCount, Paint paint, RectF changed) {
+        /* Draws the segments made of the first pointCount points of segments, and all their images, onto canvas.
+           The area of canvas written to is added to changed. */
+
+        if (pointCount < 2)
+            return;
+
+        long start = System.nanoTime();
+        if (tileRenderer != null) {
+            tileRenderer.drawSegments(segments, pointCount, paint);
+            tileRenderer.composite(canvas, width, height, changed);
+        } else if (bands != null) {
+            drawSegmentsInBands(canvas, segments, pointCount, paint, changed);
+        } else replicator.applySymmetries(canvas, segments, pointCount, paint, changed);
+        recordBatch(start, pointCount);
+    }
+
+    public void drawSegments(IndexedCanvas canvas, float[] segments, int pointCount, Paint paint, RectF changed) {
+        /* As drawSegments() onto a Canvas, in the color and width of paint. */
+
+        if (pointCount < 2)
+            return;
+
+        long start = System.nanoTime();
+        replicator.applySymmetries(canvas, segments, pointCount, paint, changed);
+        recordBatch(start, pointCount);
+    }
+
+    private void recordBatch(long start, int pointCount) {
+        RenderMetrics metrics = RenderMetrics.get();
+        metrics.record(RenderMetrics.Timer.REPLICATION, System.nanoTime() - start);
+        metrics.add(RenderMetrics.Counter.SEGMENTS, pointCount / 2);
+        metrics.add(RenderMetrics.Counter.COSET_IMAGES, (pointCount / 2) * (1 + gp.getWallpaperGroup().getCosetReps().length));
+    }
+
+    public void drawLog(final DrawingTarget target, StrokeLog log, int fromStroke, int toStroke, Paint paint, final RectF changed) {
+        /* Replays the strokes of log from index fromStroke up to toStroke onto target, drawn with paint in
+           the color and width of each stroke.  Each stroke is drawn as one batch of segments. */
+
+        final Paint strokePaint = new Paint(paint);
+        log.replay(new StrokeLog.Listener() {
+            private PointArray segments = new PointArray(256);
+
+            @Override
+            public void onStroke(int color, float width, float[] points, int pointCount) {
+                segments.clear();
+                segments.addSegments(points, pointCount);
+                strokePaint.setColor(color);
+                strokePaint.setStrokeWidth(width);
+                target.drawSegments(SymmetryRenderer.this, segments.array(), segments.size(), strokePaint, changed);
+            }
+        }, fromStroke, toStroke);
+    }
+
+    private Band[] createBands() {
+        /* Splits the window into one band per core.  Together the layers take as much memory as one
+           bitmap of the window. */
+
+        if (width == 0 || height == 0)
+            return null;
+
+        int count = Math.max(1, Math.min(MAX_BANDS, Math.min(height, Runtime.getRuntime().availableProcessors())));
+        synchronized (SymmetryRenderer.class) {
+            if (workers == null) {
+                workers = Executors.newFixedThreadPool(MAX_BANDS, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "SymmetryRenderer");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+        }
+
+        Band[] result = new Band[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = new Band(height * i / count, height * (i + 1) / count);
+        }
+        return result;
+    }
+
+    private void drawSegmentsInBands(Canvas canvas, float[] segments, int pointCount, Paint paint, RectF changed) {
+        /* Each band is replicated into its own layer by a worker, then the layers are merged onto canvas
+           in order.  The paint is opaque and not antialiased, so the result matches drawing directly. */
+
+        CountDownLatch done = new CountDownLatch(bands.length);
+        for (Band band : bands) {
+            band.start(segments, pointCount, paint, done);
+            workers.execute(band);
+        }
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        for (Band band : bands) {
+            band.merge(canvas, changed);
+        }
+    }
+
+    /*
+      Replicates segments over the window, drawing only the copies which reach into the rows
+      [top, bottom).  All copies are collected into one array and drawn with a single drawLines().
+      Holds its own scratch objects, so that replicators can run on different threads.
+     */
+    private class Replicator {
+        private final SegmentReplicator segmentReplicator;
+        private final int top, bottom;
+
+        // scratch objects, kept so that drawing does not allocate
+        private PointArray lines = new PointArray(256);
+        private float[] linesBounds = new float[4];
+
+        Replicator(int top, int bottom) {
+            this.top = top;
+            this.bottom = bottom;
+            segmentReplicator = new SegmentReplicator(gp.getWallpaperGroup(), width, height);
+        }
+
+        void applySymmetries(Canvas canvas, float[] segments, int pointCount, Paint paint, RectF changed) {
+            if (replicate(segments, pointCount, paint, changed))
+                canvas.drawLines(lines.array(), 0, 2*lines.size(), paint);
+        }
+
+        void applySymmetries(IndexedCanvas canvas, float[] segments, int pointCount, Paint paint, RectF changed) {
+            if (replicate(segments, pointCount, paint, changed))
+                canvas.drawLines(lines.array(), lines.size(), paint.getStrokeWidth(), paint.getColor());
+        }
+
+        private boolean replicate(float[] segments, int pointCount, Paint paint, RectF changed) {
+            /* Collects the copies into lines and adds their area to changed.  Returns false if there are none. */
+
+            segmentReplicator.setBand(top, bottom, paint.getStrokeWidth() / 2 + 1);
+            lines.clear();
+            int copies = segmentReplicator.replicate(segments, pointCount, lines);
+            if (copies == 0)
+                return false;
+
+            RenderMetrics.get().add(RenderMetrics.Counter.TRANSLATES, copies);
+            RenderMetrics.get().add(RenderMetrics.Counter.DRAW_CALLS, 1);
+            lines.computeBounds(linesBounds);
+            changed.union(linesBounds[0], linesBounds[1], linesBounds[2], linesBounds[3]);
+            return true;
+        }
+    }
+
+    /*
+      A horizontal band of the window with its own layer, replicated by a worker thread.
+     */
+    private class Band implements Runnable {
+        private final int top, bottom;
+        private final Bitmap layer;
+        private final Canvas layerCanvas;  // draws in window coordinates
+        private final Replicator bandReplicator;
+
+        private RectF layerChanged = new RectF();  // area of the layer drawn on by the last run, in window coordinates
+        private Rect mergeRect = new Rect();
+
+        // copied by start() before the band is handed to a worker, so that workers share nothing
+        private float[] segments = new float[64];
+        private int pointCount;
+        private Paint paint = new Paint();
+        private CountDownLatch done;
+
+        Band(int top, int bottom) {
+            this.top = top;
+            this.bottom = bottom;
+            layer = Bitmap.createBitmap(width, bottom - top, Bitmap.Config.ARGB_8888);
+            layerCanvas = new Canvas(layer);
+            layerCanvas.translate(0, -top);
+            bandReplicator = new Replicator(top, bottom);
+        }
+
+        void start(float[] segments, int pointCount, Paint paint, CountDownLatch done) {
+            if (this.segments.length < 2*pointCount)
+                this.segments = new float[4*pointCount];
+            System.arraycopy(segments, 0, this.segments, 0, 2*pointCount);
+            this.pointCount = pointCount;
+            this.paint.set(paint);
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!layerChanged.isEmpty()) {
+                    layerCanvas.save();
+                    layerCanvas.clipRect(mergeRect);
+                    layerCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                    layerCanvas.restore();
+                }
+                layerChanged.setEmpty();
+                bandReplicator.applySymmetries(layerCanvas, segments, pointCount, paint, layerChanged);
+            } finally {
+                done.countDown();
+            }
+        }
+
+        void merge(Canvas canvas, RectF changed) {
+            /* Copies what the last run drew onto canvas.  mergeRect is remembered so that the next run
+               can clear it from the layer. */
+
+            if (layerChanged.isEmpty())
+                return;
+
+            float reach = paint.getStrokeWidth() / 2 + 1;
+            layerChanged.inset(-reach, -reach);
+            layerChanged.roundOut(mergeRect);
+            if (!mergeRect.intersect(0, top, width, bottom)) {
+                layerChanged.setEmpty();
+                return;
+            }
+
+            canvas.save();
+            canvas.translate(0, top);
+            mergeRect.offset(0, -top);  // layer coordinates
+            canvas.drawBitmap(layer, mergeRect, mergeRect, null);
+            canvas.restore();
+            mergeRect.offset(0, top);
+            changed.union(mergeRect.left, mergeRect.top, mergeRect.right, mergeRect.bottom);
+        }
+    }
+}
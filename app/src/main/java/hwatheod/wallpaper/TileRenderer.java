@@ -0,0 +1,176 @@
+package hwatheod.wallpaper;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import hwatheod.wallpaper.geometry.Affine;
+import hwatheod.wallpaper.geometry.PointArray;
+import hwatheod.wallpaper.geometry.RenderMetrics;
+import hwatheod.wallpaper.geometry.Viewport;
+
+/*
+  Alternative to drawing every image of a stroke across the whole view.  The stroke is rasterized,
+  once per coset rep, into a small bitmap holding one translation cell of the pattern: the parallelogram
+  spanned by the two translation vectors at the origin.  The changed part of that cell is then blitted to
+  each lattice translate of the parallelogram in the view, clipped to the parallelogram so that
+  non-rectangular lattices fit together.
+ */
+public class TileRenderer {
+    // Pattern kept around the parallelogram in the cell bitmap, so that blits at fractional offsets
+    // still sample real content along the seams.
+    private static final int PADDING = 2;
+
+    private SymmetryGroup gp;
+    private Bitmap cellBitmap;
+    private Canvas cellCanvas;  // draws in view coordinates
+    private float cellLeft, cellTop, cellRight, cellBottom;  // area covered by cellBitmap, in view coordinates
+    private Path cellClip;  // the parallelogram at the origin
+
+    private RectF dirty = new RectF();  // part of the cell changed since the last composite(), in view coordinates
+
+    // scratch objects, kept so that drawing does not allocate
+    private float[] image = new float[64];  // the segments under one coset rep
+    private float[] bounds = new float[4];
+    private RectF imageBounds = new RectF();
+    private float[] translates = new float[32];
+    private Rect srcRect = new Rect();
+    private RectF dstRect = new RectF();
+    private float[] viewValues = new float[9];
+    private Matrix viewMatrix = new Matrix();
+
+    public TileRenderer(SymmetryGroup gp) {
+        this.gp = gp;
+
+        float[] cellBounds = gp.getLatticeCellBounds();
+        cellLeft = (float)Math.floor(cellBounds[0]) - PADDING;
+        cellTop = (float)Math.floor(cellBounds[1]) - PADDING;
+        cellRight = (float)Math.ceil(cellBounds[2]) + PADDING;
+        cellBottom = (float)Math.ceil(cellBounds[3]) + PADDING;
+        cellBitmap = Bitmap.createBitmap((int)(cellRight - cellLeft), (int)(cellBottom - cellTop), Bitmap.Config.ARGB_8888);
+        cellCanvas = new Canvas(cellBitmap);
+        cellCanvas.translate(-cellLeft, -cellTop);
+
+        float[] tx = gp.getTranslationX();
+        float[] ty = gp.getTranslationY();
+        cellClip = new Path();
+        cellClip.moveTo(0, 0);
+        cellClip.lineTo(tx[0], ty[0]);
+        cellClip.lineTo(tx[0] + tx[1], ty[0] + ty[1]);
+        cellClip.lineTo(tx[1], ty[1]);
+        cellClip.close();
+    }
+
+    public void drawSegments(float[] segments, int pointCount, Paint paint) {
+        /* Draws the segments and their images under the coset reps into the cell.  Segments are packed as
+           for Canvas.drawLines(). */
+
+        if (pointCount < 2)
+            return;
+
+        if (image.length < 2*pointCount)
+            image = new float[4*pointCount];
+
+        drawImage(segments, pointCount, paint);
+        float[] cosetReps = gp.getWallpaperGroup().getPackedCosetReps();
+        for (int k = 0; 6*k < cosetReps.length; k++) {
+            Affine.mapPoints(cosetReps, k, image, 0, segments, 0, pointCount);
+            drawImage(image, pointCount, paint);
+        }
+    }
+
+    private void drawImage(float[] segments, int pointCount, Paint paint) {
+        /* Draws the segments at every lattice translate which reaches into the cell bitmap. */
+
+        PointArray.computeBounds(segments, pointCount, bounds);
+        imageBounds.set(bounds[0], bounds[1], bounds[2], bounds[3]);
+        float inset = paint.getStrokeWidth() / 2 + 1;
+        imageBounds.inset(-inset, -inset);
+
+        int count = findTranslates(cellLeft - imageBounds.right, cellTop - imageBounds.bottom,
+                cellRight - imageBounds.left, cellBottom - imageBounds.top);
+        for (int i = 0; i < count; i++) {
+            float x = translates[2*i], y = translates[2*i + 1];
+            cellCanvas.save();
+            cellCanvas.translate(x, y);
+            cellCanvas.drawLines(segments, 0, 2*pointCount, paint);
+            cellCanvas.restore();
+            dirty.union(imageBounds.left + x, imageBounds.top + y, imageBounds.right + x, imageBounds.bottom + y);
+        }
+        RenderMetrics.get().add(RenderMetrics.Counter.TRANSLATES, count * (pointCount / 2));
+        RenderMetrics.get().add(RenderMetrics.Counter.DRAW_CALLS, count);
+    }
+
+    public void composite(Canvas canvas, int width, int height, RectF changed) {
+        /* Copies the part of the cell changed since the last call to every translate of the
+           parallelogram that meets the window [0, width] x [0, height].
+           The area of canvas written to is added to changed. */
+
+        if (dirty.isEmpty())
+            return;
+        if (!dirty.intersect(cellLeft, cellTop, cellRight, cellBottom)) {
+            dirty.setEmpty();
+            return;
+        }
+
+        srcRect.set((int)Math.floor(dirty.left - cellLeft), (int)Math.floor(dirty.top - cellTop),
+                (int)Math.ceil(dirty.right - cellLeft), (int)Math.ceil(dirty.bottom - cellTop));
+        dstRect.set(srcRect);
+        dstRect.offset(cellLeft, cellTop);
+        dirty.setEmpty();
+
+        int count = findTranslates(-dstRect.right, -dstRect.bottom, width - dstRect.left, height - dstRect.top);
+        for (int i = 0; i < count; i++) {
+            canvas.save();
+            canvas.translate(translates[2*i], translates[2*i + 1]);
+            canvas.clipPath(cellClip);
+            canvas.drawBitmap(cellBitmap, srcRect, dstRect, null);
+            canvas.restore();
+            changed.union(dstRect.left + translates[2*i], dstRect.top + translates[2*i + 1],
+                    dstRect.right + translates[2*i], dstRect.bottom + translates[2*i + 1]);
+        }
+    }
+
+    public void drawPattern(Canvas canvas, Viewport viewport, int width, int height, Paint paint) {
+        /* Draws the whole pattern as seen through viewport onto the window [0, width] x [0, height], from copies
+           of the cell.  The cost depends on the size of the window and the zoom, not on the number of strokes. */
+
+        viewport.getValues(viewValues);
+        viewMatrix.setValues(viewValues);
+        bounds[0] = cellLeft;
+        bounds[1] = cellTop;
+        bounds[2] = cellRight;
+        bounds[3] = cellBottom;
+        int count = viewport.getVisibleTranslates(gp.getWallpaperGroup().getLattice(), bounds, width, height, translates);
+        if (2*count > translates.length) {
+            translates = new float[2*count];
+            viewport.getVisibleTranslates(gp.getWallpaperGroup().getLattice(), bounds, width, height, translates);
+        }
+
+        canvas.save();
+        canvas.concat(viewMatrix);
+        for (int i = 0; i < count; i++) {
+            canvas.save();
+            canvas.translate(translates[2*i], translates[2*i + 1]);
+            canvas.clipPath(cellClip);
+            canvas.drawBitmap(cellBitmap, cellLeft, cellTop, paint);
+            canvas.restore();
+        }
+        canvas.restore();
+    }
+
+    private int findTranslates(float minX, float minY, float maxX, float maxY) {
+        /* Stores the lattice translations in the given rectangle in translates, growing it if needed. */
+
+        int count = gp.getLatticePoints(minX, minY, maxX, maxY, translates);
+        if (2*count > translates.length) {
+            translates = new float[2*count];
+            gp.getLatticePoints(minX, minY, maxX, maxY, translates);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,153 @@
+package hwatheod.wallpaper;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+  Lock-free queue of touch samples, written by one thread (the UI thread) and read by one other
+  thread (the render thread).  Samples are kept in preallocated arrays, so neither side allocates.
+
+  Some samples may be dropped when the reader falls behind, e.g. moves, and some must not, e.g. the end of a
+  stroke.  The last few slots are reserved for the latter: offerDroppable() leaves them free, and only
+  offer() and add() fill them.  Should even those be full, add() keeps its samples in an overflow queue
+  instead, which does allocate, so that the writer never has to wait for the reader.  Samples are offered
+  to the arrays again only once the reader has emptied the overflow, so that they are read in the order
+  they were written.
+ */
+public class TouchSampleQueue {
+    private final int mask;
+    private final int reserved;  // slots left free by offerDroppable()
+    private final int[] actions, pointerIds;
+    private final float[] xs, ys;
+
+    private final AtomicLong head = new AtomicLong();  // next sample to read; written only by the reader
+    private final AtomicLong tail = new AtomicLong();  // next slot to write; written only by the writer
+
+    // samples added while the arrays were full, in order after all those in them; guarded by itself
+    private final ArrayDeque<float[]> overflow = new ArrayDeque<float[]>();
+    private final AtomicInteger overflowCount = new AtomicInteger();  // raised only by the writer
+
+    // the sample taken by the last successful poll(); reader side only
+    private int action, pointerId;
+    private float x, y;
+
+    /**
+     * @param capacity Maximum number of samples held. Must be a power of 2.
+     */
+    public TouchSampleQueue(int capacity) {
+        this(capacity, 0);
+    }
+
+    /**
+     * @param capacity Maximum number of samples held. Must be a power of 2.
+     * @param reserved Number of slots which only offer() may fill.  Must be less than capacity.
+     */
+    public TouchSampleQueue(int capacity, int reserved) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("capacity must be a power of 2: " + capacity);
+        if (reserved < 0 || reserved >= capacity)
+            throw new IllegalArgumentException("reserved must be less than capacity: " + reserved);
+        mask = capacity - 1;
+        this.reserved = reserved;
+        actions = new int[capacity];
+        pointerIds = new int[capacity];
+        xs = new float[capacity];
+        ys = new float[capacity];
+    }
+
+    public boolean offer(int action, int pointerId, float x, float y) {
+        /* Appends a sample.  Returns false, dropping the sample, if the queue is full. */
+        return offer(action, pointerId, x, y, actions.length);
+    }
+
+    public boolean offerDroppable(int action, int pointerId, float x, float y) {
+        /* Appends a sample which may be lost, leaving the reserved slots free.  Returns false, dropping the
+           sample, if only those are left. */
+        return offer(action, pointerId, x, y, actions.length - reserved);
+    }
+
+    public void add(int action, int pointerId, float x, float y) {
+        /* Appends a sample which must not be lost, in the overflow queue if the arrays are full. */
+
+        if (offer(action, pointerId, x, y))
+            return;
+        synchronized (overflow) {
+            overflow.addLast(new float[] { action, pointerId, x, y });
+            overflowCount.incrementAndGet();
+        }
+    }
+
+    private boolean offer(int action, int pointerId, float x, float y, int limit) {
+        /* Appends a sample unless limit samples are already queued, or some are waiting in the overflow. */
+
+        if (overflowCount.get() > 0)
+            return false;
+        long t = tail.get();
+        if (t - head.get() >= limit)
+            return false;
+
+        int i = (int)t & mask;
+        actions[i] = action;
+        pointerIds[i] = pointerId;
+        xs[i] = x;
+        ys[i] = y;
+        tail.lazySet(t + 1);  // publishes the sample to the reader
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get() && overflowCount.get() == 0;
+    }
+
+    public boolean poll() {
+        /* Takes the oldest sample, which is then available from getAction(), getPointerId(), getX() and getY().
+           Returns false if the queue is empty. */
+
+        long h = head.get();
+        if (h == tail.get())
+            return pollOverflow();
+
+        int i = (int)h & mask;
+        action = actions[i];
+        pointerId = pointerIds[i];
+        x = xs[i];
+        y = ys[i];
+        head.lazySet(h + 1);  // frees the slot for the writer
+        return true;
+    }
+
+    private boolean pollOverflow() {
+        /* Takes the oldest sample of the overflow, which the writer only adds to while the arrays hold
+           samples not yet read, so once they are empty it comes next. */
+
+        if (overflowCount.get() == 0)
+            return false;
+        float[] sample;
+        synchronized (overflow) {
+            sample = overflow.pollFirst();
+            overflowCount.decrementAndGet();
+        }
+        action = (int)sample[0];
+        pointerId = (int)sample[1];
+        x = sample[2];
+        y = sample[3];
+        return true;
+    }
+
+    public int getAction() {
+        return action;
+    }
+
+    public int getPointerId() {
+        return pointerId;
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+}
@@ -6,7 +6,14 @@ import androidx.appcompat.app.AppCompatActivity;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
 
+import hwatheod.wallpaper.geometry.RenderMetrics;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -17,6 +24,7 @@ public class WallpaperActivity extends AppCompatActivity {
     private int symbolNamesMenuId = R.id.conway;
     private HashMap<Integer, Integer> menuIdToColor = new HashMap<>();
     private HashMap<Integer, Integer> colorToMenuId = new HashMap<>();
+    private HashMap<Integer, Float> menuIdToPatternScale = new HashMap<>();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -24,8 +32,46 @@ public class WallpaperActivity extends AppCompatActivity {
 
         SymmetryGroup.init();
         initColorMap();
+        initPatternScaleMap();
 
         setContentView(R.layout.activity_wallpaper);
+        if (savedInstanceState != null && savedInstanceState.getBoolean("renderThread"))
+            setRenderThread(true);
+    }
+
+    private DrawingSurface getDrawingSurface() {
+        return (DrawingSurface)findViewById(R.id.wallpaper_view);
+    }
+
+    private void setRenderThread(boolean enabled) {
+        /* Swaps the drawing view for one which draws on the UI thread (WallpaperView) or on a
+           render thread (WallpaperSurfaceView), keeping its settings. */
+
+        View current = findViewById(R.id.wallpaper_view);
+        if ((current instanceof WallpaperSurfaceView) == enabled)
+            return;
+
+        DrawingSurface oldSurface = (DrawingSurface)current;
+        ViewGroup parent = (ViewGroup)current.getParent();
+        int index = parent.indexOfChild(current);
+        parent.removeViewAt(index);
+
+        /* Created once the old view is gone, so that it picks up the strokes the old view saved. */
+        View replacement = enabled ? new WallpaperSurfaceView(this, null) : new WallpaperView(this, null);
+        replacement.setId(R.id.wallpaper_view);
+        DrawingSurface newSurface = (DrawingSurface)replacement;
+        if (newSurface.getSymmetryGroupId() != oldSurface.getSymmetryGroupId())
+            newSurface.setSymmetryGroupId(oldSurface.getSymmetryGroupId());
+        newSurface.setPatternScale(oldSurface.getPatternScale());
+        newSurface.setColor(oldSurface.getColor());
+        newSurface.setTileRendering(oldSurface.isTileRendering());
+        newSurface.setParallelRendering(oldSurface.isParallelRendering());
+        newSurface.setNavigating(oldSurface.isNavigating());
+        newSurface.setShowingMetrics(oldSurface.isShowingMetrics());
+        newSurface.setSmoothingStrokes(oldSurface.isSmoothingStrokes());
+        newSurface.setIndexedStorage(oldSurface.isIndexedStorage());
+
+        parent.addView(replacement, index, current.getLayoutParams());
     }
 
     private void initColorMap() {
@@ -42,6 +88,12 @@ public class WallpaperActivity extends AppCompatActivity {
         }
     }
 
+    private void initPatternScaleMap() {
+        menuIdToPatternScale.put(R.id.pattern_small, 0.75f);
+        menuIdToPatternScale.put(R.id.pattern_medium, 1f);
+        menuIdToPatternScale.put(R.id.pattern_large, 1.5f);
+    }
+
     @Override
     protected void onSaveInstanceState (Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -54,6 +106,7 @@ public class WallpaperActivity extends AppCompatActivity {
                 break;
             }
         }
+        outState.putBoolean("renderThread", findViewById(R.id.wallpaper_view) instanceof WallpaperSurfaceView);
     }
 
     @Override
@@ -63,6 +116,18 @@ public class WallpaperActivity extends AppCompatActivity {
         symbolNamesMenuId = savedInstanceState.getInt("symbolNamesMenuId");
     }
 
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        /* Adds the render metrics to "adb shell dumpsys activity hwatheod.wallpaper", and resets them
+           after if the arguments include --reset-metrics. */
+
+        super.dump(prefix, fd, writer, args);
+        writer.println(prefix + "Render metrics:");
+        RenderMetrics.get().dump(writer, prefix + "  ");
+        if (args != null && Arrays.asList(args).contains("--reset-metrics"))
+            RenderMetrics.get().reset();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         theMenu = menu;
@@ -70,15 +135,34 @@ public class WallpaperActivity extends AppCompatActivity {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.menu_wallpaper, menu);
 
-        int symmetryGroupId = ((WallpaperView)findViewById(R.id.wallpaper_view)).getSymmetryGroupId();
-        int color = ((WallpaperView)findViewById(R.id.wallpaper_view)).getColor();
-        onOptionsItemSelected(menu.findItem(symmetryGroupId));
+        int symmetryGroupId = getDrawingSurface().getSymmetryGroupId();
+        int color = getDrawingSurface().getColor();
+        menu.findItem(symmetryGroupId).setChecked(true);  // choosing it would start a new drawing
         onOptionsItemSelected(menu.findItem(symbolNamesMenuId));
         onOptionsItemSelected(menu.findItem(colorToMenuId.get(color)));
+        for (Map.Entry<Integer, Float> entry : menuIdToPatternScale.entrySet()) {
+            if (entry.getValue() == getDrawingSurface().getPatternScale())
+                menu.findItem(entry.getKey()).setChecked(true);
+        }
+        menu.findItem(R.id.action_navigate).setChecked(getDrawingSurface().isNavigating());
+        menu.findItem(R.id.tile_rendering).setChecked(getDrawingSurface().isTileRendering());
+        menu.findItem(R.id.parallel_rendering).setChecked(getDrawingSurface().isParallelRendering());
+        menu.findItem(R.id.render_thread).setChecked(findViewById(R.id.wallpaper_view) instanceof WallpaperSurfaceView);
+        menu.findItem(R.id.show_metrics).setChecked(getDrawingSurface().isShowingMetrics());
+        menu.findItem(R.id.smooth_strokes).setChecked(getDrawingSurface().isSmoothingStrokes());
+        updateIndexedStorageItem();
 
         return true;
     }
 
+    private void updateIndexedStorageItem() {
+        /* Only the render thread supports indexed storage. */
+
+        MenuItem item = theMenu.findItem(R.id.indexed_storage);
+        item.setEnabled(findViewById(R.id.wallpaper_view) instanceof WallpaperSurfaceView);
+        item.setChecked(getDrawingSurface().isIndexedStorage());
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         // Handle action bar item clicks here. The action bar will
@@ -101,8 +185,67 @@ public class WallpaperActivity extends AppCompatActivity {
             return true;
         }
 
+        if (id == R.id.action_navigate) {
+            item.setChecked(!item.isChecked());
+            getDrawingSurface().setNavigating(item.isChecked());
+            return true;
+        }
+
+        if (id == R.id.action_undo) {
+            getDrawingSurface().undo();
+            return true;
+        }
+
+        if (id == R.id.action_redo) {
+            getDrawingSurface().redo();
+            return true;
+        }
+
+        if (item.getGroupId() == R.id.group_pattern_size) {
+            getDrawingSurface().setPatternScale(menuIdToPatternScale.get(id));
+            item.setChecked(true);
+            return true;
+        }
+
+        if (id == R.id.tile_rendering) {
+            item.setChecked(!item.isChecked());
+            getDrawingSurface().setTileRendering(item.isChecked());
+            return true;
+        }
+
+        if (id == R.id.parallel_rendering) {
+            item.setChecked(!item.isChecked());
+            getDrawingSurface().setParallelRendering(item.isChecked());
+            return true;
+        }
+
+        if (id == R.id.render_thread) {
+            item.setChecked(!item.isChecked());
+            setRenderThread(item.isChecked());
+            updateIndexedStorageItem();
+            return true;
+        }
+
+        if (id == R.id.show_metrics) {
+            item.setChecked(!item.isChecked());
+            getDrawingSurface().setShowingMetrics(item.isChecked());
+            return true;
+        }
+
+        if (id == R.id.smooth_strokes) {
+            item.setChecked(!item.isChecked());
+            getDrawingSurface().setSmoothingStrokes(item.isChecked());
+            return true;
+        }
+
+        if (id == R.id.indexed_storage) {
+            item.setChecked(!item.isChecked());
+            getDrawingSurface().setIndexedStorage(item.isChecked());
+            return true;
+        }
+
         if (item.getGroupId() == R.id.group_change_group) {
-            ((WallpaperView)findViewById(R.id.wallpaper_view)).setSymmetryGroupId(id);
+            getDrawingSurface().setSymmetryGroupId(id);
             theMenu.findItem(R.id.action_change_group).setTitle(item.getTitle());
             item.setChecked(true);
             return true;
@@ -110,7 +253,7 @@ public class WallpaperActivity extends AppCompatActivity {
 
         if (item.getGroupId() == R.id.group_change_color) {
             int color = menuIdToColor.get(id);
-            ((WallpaperView)findViewById(R.id.wallpaper_view)).setColor(color);
+            getDrawingSurface().setColor(color);
             theMenu.findItem(R.id.action_change_color).getIcon().setColorFilter(color, PorterDuff.Mode.SRC_ATOP);
             item.setChecked(true);
             return true;
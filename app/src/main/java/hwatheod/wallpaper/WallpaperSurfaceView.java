@@ -0,0 +1,578 @@
+package hwatheod.wallpaper;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Parcelable;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import hwatheod.wallpaper.geometry.CellTiling;
+import hwatheod.wallpaper.geometry.IndexedCanvas;
+import hwatheod.wallpaper.geometry.PointArray;
+import hwatheod.wallpaper.geometry.StrokeFilter;
+import hwatheod.wallpaper.geometry.StrokeTracker;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+  Rendering mode which keeps the symmetry replication off the UI thread.  onTouchEvent only puts
+  the touch samples of every finger on a lock-free queue.  A render thread drains the queue in batches,
+  replicates the new segments of all the fingers onto the persistent bitmap in one pass and presents the
+  changed area through the SurfaceView.
+
+  With indexed storage the drawing is held in an IndexedCanvas, a byte per pixel instead of four, and expanded
+  to ARGB a strip of rows at a time, only over the area presented.  The surface keeps the rest of the frame,
+  so this is only done here and not in WallpaperView, which redraws the whole view every frame.
+
+  WallpaperView remains the default, drawing on the UI thread.
+ */
+public class WallpaperSurfaceView extends SurfaceView implements SurfaceHolder.Callback, DrawingSurface {
+
+    private static final String TAG = "WallpaperSurfaceView";
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int CONTROL_RESERVE = 64;  // queue slots kept for samples which must not be lost
+    private static final int STRIP_ROWS = 32;  // rows of an IndexedCanvas expanded to ARGB at a time
+
+    // Actions queued with the touch samples, so that they are carried out after the strokes before them.
+    private static final int ACTION_UNDO = -1;
+    private static final int ACTION_REDO = -2;
+
+    private TouchSampleQueue samples = new TouchSampleQueue(QUEUE_CAPACITY, CONTROL_RESERVE);
+    private RenderThread renderThread;
+
+    // Settings written on the UI thread and picked up by the render thread before its next batch.
+    private volatile int symmetryGroupId = R.id.group_o;
+    private volatile float patternScale = 1;  // size of the pattern chosen by the user
+    private volatile int color = Color.BLUE;
+    private volatile boolean tileRendering;
+    private volatile boolean parallelRendering;
+    private volatile int surfaceWidth, surfaceHeight;
+    private volatile boolean navigating;  // touches pan and zoom instead of drawing
+    private volatile boolean showingMetrics;
+    private volatile boolean smoothingStrokes;  // applied by the render thread to each stroke it begins
+    private volatile boolean indexedStorage;  // the drawing is an IndexedCanvas instead of a bitmap
+    private AtomicBoolean resetRequested = new AtomicBoolean();  // group, pattern size or surface size changed
+    private AtomicBoolean newDrawingRequested = new AtomicBoolean();  // group chosen, so the strokes are dropped
+
+    // Owned by the render thread.  Kept here so that the drawing survives the surface being recreated.
+    private Bitmap canvasBitmap;
+    private Canvas drawCanvas;
+    private IndexedCanvas indexedCanvas;  // instead of canvasBitmap, with indexed storage
+    private DrawingTarget drawing;  // whichever of canvasBitmap and indexedCanvas is in use
+    private SymmetryGroup gp;
+    private SymmetryRenderer renderer = new SymmetryRenderer();
+    private DrawingHistory history;  // every stroke of the drawing, redrawn on reset unless only the size changed
+    private PatternNavigator navigator;  // gestures on the UI thread, frames on the render thread
+
+    public WallpaperSurfaceView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        getHolder().addCallback(this);
+
+        /* carry on with the drawing saved by the last run, or by the view this one replaced */
+        history = new DrawingHistory(context.getFilesDir(), SymmetryGroup.getConwaySymbol(symmetryGroupId),
+                getPixelsPerUnit());
+        symmetryGroupId = SymmetryGroup.getIdForConwaySymbol(history.getLog().getConwaySymbol());
+        navigator = new PatternNavigator(context, new Runnable() {
+            @Override
+            public void run() {
+                requestRedraw();
+            }
+        });
+    }
+
+    protected Bitmap getCanvasBitmap() {
+        return canvasBitmap;
+    }
+
+    public int getSymmetryGroupId() {
+        return symmetryGroupId;
+    }
+
+    public void setSymmetryGroupId(int newSymmetryGroupId) {
+        symmetryGroupId = newSymmetryGroupId;
+        newDrawingRequested.set(true);
+        resetRequested.set(true);
+        wakeRenderThread();
+    }
+
+    public float getPatternScale() {
+        return patternScale;
+    }
+
+    public void setPatternScale(float patternScale) {
+        this.patternScale = patternScale;
+        resetRequested.set(true);
+        wakeRenderThread();
+    }
+
+    private float getPixelsPerUnit() {
+        return SymmetryGroup.getPixelsPerUnit(getResources().getDisplayMetrics().density, patternScale);
+    }
+
+    public int getColor() {
+        return color;
+    }
+
+    public void setColor(int color) {
+        this.color = color;
+    }
+
+    public boolean isTileRendering() {
+        return tileRendering;
+    }
+
+    public void setTileRendering(boolean enabled) {
+        tileRendering = enabled;
+    }
+
+    public boolean isParallelRendering() {
+        return parallelRendering;
+    }
+
+    public void setParallelRendering(boolean enabled) {
+        parallelRendering = enabled;
+    }
+
+    public boolean isNavigating() {
+        return navigating;
+    }
+
+    public void setNavigating(boolean enabled) {
+        if (enabled)
+            offerControl(MotionEvent.ACTION_CANCEL, 0, 0, 0);  // ends the strokes cut off by the switch
+        navigating = enabled;
+        requestRedraw();
+    }
+
+    public boolean isShowingMetrics() {
+        return showingMetrics;
+    }
+
+    public void setShowingMetrics(boolean enabled) {
+        showingMetrics = enabled;
+        requestRedraw();
+    }
+
+    public boolean isSmoothingStrokes() {
+        return smoothingStrokes;
+    }
+
+    public void setSmoothingStrokes(boolean enabled) {
+        smoothingStrokes = enabled;
+    }
+
+    public boolean isIndexedStorage() {
+        return indexedStorage;
+    }
+
+    public void setIndexedStorage(boolean enabled) {
+        indexedStorage = enabled;
+        resetRequested.set(true);
+        wakeRenderThread();
+    }
+
+    public void undo() {
+        offerControl(ACTION_UNDO, 0, 0, 0);
+        wakeRenderThread();
+    }
+
+    public void redo() {
+        offerControl(ACTION_REDO, 0, 0, 0);
+        wakeRenderThread();
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        renderThread = new RenderThread(holder);
+        renderThread.start();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        if (width != surfaceWidth || height != surfaceHeight) {
+            surfaceWidth = width;
+            surfaceHeight = height;
+            resetRequested.set(true);
+        }
+        renderThread.requestRedraw();
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        /* The surface must not be used after this returns, so wait for the render thread to finish. */
+        renderThread.quit();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                renderThread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        renderThread = null;
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void offerControl(int action, int pointerId, float x, float y) {
+        /* Queues a sample which must not be lost, such as the end of a stroke or an undo.  Moves leave
+           CONTROL_RESERVE slots free for these; should even those be full, the queue keeps them in its
+           overflow, so the UI thread never waits for the render thread. */
+        samples.add(action, pointerId, x, y);
+    }
+
+    private void requestRedraw() {
+        RenderThread thread = renderThread;
+        if (thread != null)
+            thread.requestRedraw();
+    }
+
+    private void wakeRenderThread() {
+        RenderThread thread = renderThread;
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    @Override
+    public Parcelable onSaveInstanceState() {
+        Parcelable superState = super.onSaveInstanceState();
+
+        WallpaperView.WallpaperViewSavedState ss = new WallpaperView.WallpaperViewSavedState(superState);
+        ss.symmetryGroupId = this.symmetryGroupId;
+        ss.patternScale = this.patternScale;
+        ss.color = this.color;
+        ss.tileRendering = this.tileRendering;
+        ss.parallelRendering = this.parallelRendering;
+        ss.smoothingStrokes = this.smoothingStrokes;
+        ss.indexedStorage = this.indexedStorage;
+
+        return ss;
+    }
+
+    @Override
+    public void onRestoreInstanceState(Parcelable state) {
+        if(!(state instanceof WallpaperView.WallpaperViewSavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+
+        WallpaperView.WallpaperViewSavedState ss = (WallpaperView.WallpaperViewSavedState)state;
+        super.onRestoreInstanceState(ss.getSuperState());
+
+        symmetryGroupId = ss.symmetryGroupId;  // same as in the log, so the drawing is kept
+        patternScale = ss.patternScale;
+        resetRequested.set(true);
+        setColor(ss.color);
+        setTileRendering(ss.tileRendering);
+        setParallelRendering(ss.parallelRendering);
+        setSmoothingStrokes(ss.smoothingStrokes);
+        setIndexedStorage(ss.indexedStorage);
+    }
+
+    public boolean onTouchEvent(MotionEvent event) {
+        MetricsOverlay.inputReceived(event);
+        if (navigating)
+            return navigator.onTouchEvent(event);
+
+        /* If the render thread falls so far behind that the queue is full, dropping a move only
+           straightens the stroke between its neighbours.  The other samples begin and end strokes, so they
+           are never dropped. */
+        int index = event.getActionIndex();
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN:
+                offerControl(MotionEvent.ACTION_DOWN, event.getPointerId(index), event.getX(index), event.getY(index));
+                break;
+            case MotionEvent.ACTION_MOVE:
+                for (int h = 0; h < event.getHistorySize(); h++) {
+                    for (int i = 0; i < event.getPointerCount(); i++) {
+                        samples.offerDroppable(MotionEvent.ACTION_MOVE, event.getPointerId(i),
+                                event.getHistoricalX(i, h), event.getHistoricalY(i, h));
+                    }
+                }
+                for (int i = 0; i < event.getPointerCount(); i++) {
+                    samples.offerDroppable(MotionEvent.ACTION_MOVE, event.getPointerId(i), event.getX(i), event.getY(i));
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_POINTER_UP:
+                offerControl(MotionEvent.ACTION_UP, event.getPointerId(index), event.getX(index), event.getY(index));
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                offerControl(MotionEvent.ACTION_CANCEL, 0, 0, 0);
+                break;
+            default:
+                return false;
+        }
+        wakeRenderThread();
+        return true;
+    }
+
+    private class RenderThread extends Thread {
+        private final SurfaceHolder holder;
+        private volatile boolean running = true;
+        private AtomicBoolean redrawRequested = new AtomicBoolean(true);
+
+        private Paint drawPaint, fundamentalRegionPaint;
+        private MetricsOverlay metricsOverlay;
+        private StrokeTracker strokes;  // a stroke per finger, and the segments of the current batch
+        private RectF dirtyBounds = new RectF();
+        private Rect dirtyRect = new Rect();
+
+        // for presenting an IndexedCanvas
+        private Bitmap strip;  // STRIP_ROWS rows of the canvas in ARGB
+        private int[] stripPixels;
+        private Rect clip = new Rect();
+        private Rect stripSource = new Rect();
+        private Rect stripTarget = new Rect();
+
+        RenderThread(SurfaceHolder holder) {
+            super(TAG);
+            this.holder = holder;
+
+            drawPaint = new Paint();
+            drawPaint.setStyle(Paint.Style.STROKE);
+            drawPaint.setStrokeJoin(Paint.Join.ROUND);
+            drawPaint.setStrokeCap(Paint.Cap.ROUND);
+
+            fundamentalRegionPaint = new Paint();
+            fundamentalRegionPaint.setColor(Color.BLACK);
+            fundamentalRegionPaint.setStyle(Paint.Style.STROKE);
+
+            metricsOverlay = new MetricsOverlay(getResources().getDisplayMetrics().density);
+            strokes = new StrokeTracker(new StrokeTracker.Listener() {
+                @Override
+                public void onStrokeEnd(int color, float width, float[] points, int pointCount) {
+                    /* the end of the stroke is drawn first, so that a checkpoint holds all of it */
+                    drawBatch();
+                    boolean checkpoint = strokes.getActiveCount() == 0;
+                    history.addStroke(color, width, points, pointCount, checkpoint ? drawing : null);
+                }
+            });
+            strokes.setQuantization(history.getLog());  // so that undo gives back exactly what was drawn
+        }
+
+        void requestRedraw() {
+            redrawRequested.set(true);
+            LockSupport.unpark(this);
+        }
+
+        void quit() {
+            running = false;
+            LockSupport.unpark(this);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                if (samples.isEmpty() && !resetRequested.get() && !redrawRequested.get()) {
+                    LockSupport.park(this);
+                    continue;
+                }
+
+                boolean redraw = redrawRequested.getAndSet(false);
+                if (resetRequested.getAndSet(false)) {
+                    reset();
+                    redraw = true;
+                }
+                if (gp == null) {
+                    while (samples.poll()) {
+                        // no size yet, so nothing to draw on
+                    }
+                    continue;
+                }
+                if (renderer.isTileRendering() != tileRendering)
+                    renderer.setTileRendering(tileRendering);
+                if (renderer.isParallel() != parallelRendering)
+                    renderer.setParallel(parallelRendering);
+
+                dirtyBounds.setEmpty();
+                drainSamples();
+                if (redraw) {
+                    present(null);
+                } else if (!dirtyBounds.isEmpty()) {
+                    float inset = drawPaint.getStrokeWidth() / 2 + 1;
+                    dirtyBounds.inset(-inset, -inset);
+                    dirtyBounds.roundOut(dirtyRect);
+                    present(dirtyRect);
+                }
+            }
+        }
+
+        private void reset() {
+            /* Redraws the drawing for the current group and surface size, from a blank one if the group was
+               chosen since.  If only the size changed, the drawing is re-tiled to it instead. */
+
+            String conwaySymbol = SymmetryGroup.getConwaySymbol(symmetryGroupId);
+            boolean started = false;
+            if (newDrawingRequested.getAndSet(false) || !conwaySymbol.equals(history.getLog().getConwaySymbol())) {
+                history.startDrawing(conwaySymbol);
+                started = true;
+            }
+
+            int width = surfaceWidth, height = surfaceHeight;
+            if (width == 0 || height == 0)
+                return;
+
+            float pixelsPerUnit = getPixelsPerUnit();
+            SymmetryGroup oldGp = started ? null : gp;
+            gp = SymmetryGroup.get(symmetryGroupId, width, height, pixelsPerUnit);
+            renderer.setSymmetryGroup(gp, width, height);
+            drawPaint.setStrokeWidth(SymmetryGroup.BRUSH_WIDTH * pixelsPerUnit);
+            strokes.clear();
+
+            /* the groups are laid out around the center of the surface, so the strokes are replayed around it
+               too, at the scale of the group */
+            history.getLog().setOrigin(width/2, height/2);
+            history.getLog().setScale(pixelsPerUnit);
+
+            if (indexedStorage) {
+                canvasBitmap = null;
+                drawCanvas = null;
+                if (indexedCanvas != null && (indexedCanvas.getWidth() != width || indexedCanvas.getHeight() != height)) {
+                    CellTiling tiling = history.planResize(oldGp, indexedCanvas.getWidth(), indexedCanvas.getHeight(),
+                            gp, width, height);
+                    if (tiling != null) {
+                        indexedCanvas = history.resize(indexedCanvas, tiling);
+                        drawing = new DrawingTarget.OnIndexedCanvas(indexedCanvas);
+                        return;
+                    }
+                    indexedCanvas = null;
+                }
+                if (indexedCanvas == null)
+                    indexedCanvas = new IndexedCanvas(width, height, Color.WHITE);
+                drawing = new DrawingTarget.OnIndexedCanvas(indexedCanvas);
+                history.redraw(drawing, renderer, drawPaint, dirtyBounds);
+            } else {
+                indexedCanvas = null;
+                strip = null;
+                stripPixels = null;
+                if (canvasBitmap != null && (canvasBitmap.getWidth() != width || canvasBitmap.getHeight() != height)) {
+                    CellTiling tiling = history.planResize(oldGp, canvasBitmap.getWidth(), canvasBitmap.getHeight(),
+                            gp, width, height);
+                    if (tiling != null) {
+                        canvasBitmap = history.resize(canvasBitmap, tiling);
+                        drawCanvas = new Canvas(canvasBitmap);
+                        drawing = new DrawingTarget.OnBitmap(canvasBitmap, drawCanvas);
+                        return;
+                    }
+                    canvasBitmap = null;
+                }
+                if (canvasBitmap == null) {
+                    canvasBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                    drawCanvas = new Canvas(canvasBitmap);
+                }
+                drawing = new DrawingTarget.OnBitmap(canvasBitmap, drawCanvas);
+                history.redraw(drawing, renderer, drawPaint, dirtyBounds);
+            }
+        }
+
+        private void drainSamples() {
+            /* Replicates the segments of all the queued samples, of every finger, in one batch. */
+
+            while (samples.poll()) {
+                int action = samples.getAction();
+                if (action == MotionEvent.ACTION_DOWN) {
+                    startStroke(samples.getPointerId(), samples.getX(), samples.getY());
+                } else if (action == MotionEvent.ACTION_UP) {
+                    strokes.up(samples.getPointerId(), samples.getX(), samples.getY());
+                } else if (action == MotionEvent.ACTION_CANCEL) {
+                    strokes.finishAll();
+                } else if (action == ACTION_UNDO || action == ACTION_REDO) {
+                    drawBatch();
+                    if (action == ACTION_UNDO)
+                        history.undo(drawing, renderer, drawPaint, dirtyBounds);
+                    else history.redo(drawing, renderer, drawPaint, dirtyBounds);
+                } else {
+                    strokes.add(samples.getPointerId(), samples.getX(), samples.getY());
+                }
+            }
+            drawBatch();
+        }
+
+        private void startStroke(int pointerId, float x, float y) {
+            /* Begins a stroke in the color and with the smoothing chosen at the time.  The batch so far is
+               drawn in the color it was replicated with before the paint changes; strokes still in progress
+               take the new one. */
+
+            int strokeColor = color;
+            if (strokeColor != drawPaint.getColor()) {
+                drawBatch();
+                drawPaint.setColor(strokeColor);
+            }
+            strokes.setStyle(strokeColor, drawPaint.getStrokeWidth());
+            strokes.setFilter(StrokeFilter.DEFAULT_TOLERANCE, smoothingStrokes ? STROKE_SMOOTHING : 0);
+            strokes.add(pointerId, x, y);
+        }
+
+        private void drawBatch() {
+            PointArray batchSegments = strokes.getSegments();
+            if (batchSegments.isEmpty())
+                return;
+            drawing.drawSegments(renderer, batchSegments.array(), batchSegments.size(), drawPaint, dirtyBounds);
+            batchSegments.clear();
+        }
+
+        private void present(Rect dirty) {
+            /* Shows canvasBitmap on the surface.  Only dirty is redrawn, or everything if dirty is null.
+               In navigate mode the whole frame is drawn through the viewport instead. */
+
+            long start = System.nanoTime();
+            boolean navigate = navigating;
+            boolean showMetrics = showingMetrics;
+            if (showMetrics && dirty != null)
+                dirty.union(metricsOverlay.getBounds());
+            Canvas canvas = holder.lockCanvas(navigate ? null : dirty);
+            if (canvas == null)
+                return;
+            try {
+                if (navigate) {
+                    if (indexedCanvas != null)
+                        navigator.draw(canvas, gp, history, drawPaint, fundamentalRegionPaint, indexedCanvas.getWidth(), indexedCanvas.getHeight());
+                    else navigator.draw(canvas, gp, history, drawPaint, fundamentalRegionPaint, canvasBitmap.getWidth(), canvasBitmap.getHeight());
+                } else {
+                    if (indexedCanvas != null)
+                        drawIndexedCanvas(canvas);
+                    else canvas.drawBitmap(canvasBitmap, 0, 0, null);
+                    gp.getFundamentalRegion().draw(canvas, fundamentalRegionPaint);
+                }
+                if (showMetrics)
+                    metricsOverlay.draw(canvas);
+            } finally {
+                holder.unlockCanvasAndPost(canvas);
+            }
+            MetricsOverlay.frameDrawn(start);
+        }
+
+        private void drawIndexedCanvas(Canvas canvas) {
+            /* Draws the rows of indexedCanvas within the clip of canvas, expanded to ARGB a strip at a time. */
+
+            if (!canvas.getClipBounds(clip) || !clip.intersect(0, 0, indexedCanvas.getWidth(), indexedCanvas.getHeight()))
+                return;
+            if (strip == null || strip.getWidth() != indexedCanvas.getWidth()) {
+                strip = Bitmap.createBitmap(indexedCanvas.getWidth(), STRIP_ROWS, Bitmap.Config.ARGB_8888);
+                stripPixels = new int[indexedCanvas.getWidth() * STRIP_ROWS];
+            }
+
+            int w = clip.width();
+            for (int y = clip.top; y < clip.bottom; y += STRIP_ROWS) {
+                int h = Math.min(STRIP_ROWS, clip.bottom - y);
+                indexedCanvas.getPixels(stripPixels, 0, w, clip.left, y, w, h);
+                strip.setPixels(stripPixels, 0, w, 0, 0, w, h);
+                stripSource.set(0, 0, w, h);
+                stripTarget.set(clip.left, y, clip.right, y + h);
+                canvas.drawBitmap(strip, stripSource, stripTarget, null);
+            }
+        }
+    }
+}
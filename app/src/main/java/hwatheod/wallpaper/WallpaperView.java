@@ -4,9 +4,8 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Matrix;
 import android.graphics.Paint;
-import android.graphics.Path;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.os.Parcel;
 import android.os.Parcelable;
@@ -14,27 +13,50 @@ import android.util.AttributeSet;
 import android.view.MotionEvent;
 import android.view.View;
 
-public class WallpaperView extends View {
+import hwatheod.wallpaper.geometry.CellTiling;
+import hwatheod.wallpaper.geometry.PointArray;
+import hwatheod.wallpaper.geometry.StrokeFilter;
+import hwatheod.wallpaper.geometry.StrokeTracker;
+
+public class WallpaperView extends View implements DrawingSurface {
 
     private static final String TAG = "WallpaperView";
 
     private Paint drawPaint, fundamentalRegionPaint;
     private Canvas drawCanvas;
-    private Path currentPath;
     private Bitmap canvasBitmap;
+    private DrawingTarget drawing;  // canvasBitmap through drawCanvas
+
+    private StrokeTracker strokes;  // a stroke per finger, and their segments not yet replicated onto canvasBitmap
 
     private int symmetryGroupId;
+    private float patternScale = 1;  // size of the pattern chosen by the user
     private SymmetryGroup gp;
 
+    private SymmetryRenderer renderer = new SymmetryRenderer();
+
+    private DrawingHistory history;  // every stroke of the drawing, redrawn when the group or scale changes
+
+    private boolean navigating;  // touches pan and zoom instead of drawing
+    private PatternNavigator navigator;
+
+    private boolean showingMetrics;
+    private boolean smoothingStrokes;
+    private MetricsOverlay metricsOverlay;
+
+    // scratch objects for the draw path, kept so that drawing a frame does not allocate
+    private RectF dirtyBounds = new RectF();  // area of canvasBitmap changed by the latest segment
+    private Rect dirtyRect = new Rect();
+    private Rect clipRect = new Rect();  // the clip of the canvas in onDraw
+
     public WallpaperView(Context context, AttributeSet attrs){
         super(context, attrs);
         setupDrawing();
     }
 
     private void setupDrawing() {
-        currentPath = new Path();
         drawPaint = new Paint();
-        drawPaint.setStrokeWidth(20);
+        drawPaint.setStrokeWidth(SymmetryGroup.BRUSH_WIDTH * getPixelsPerUnit());
         drawPaint.setStyle(Paint.Style.STROKE);
         drawPaint.setStrokeJoin(Paint.Join.ROUND);
         drawPaint.setStrokeCap(Paint.Cap.ROUND);
@@ -45,24 +67,128 @@ public class WallpaperView extends View {
         fundamentalRegionPaint.setStyle(Paint.Style.STROKE);
 
         symmetryGroupId = R.id.group_o;
+        strokes = new StrokeTracker(new StrokeTracker.Listener() {
+            @Override
+            public void onStrokeEnd(int color, float width, float[] points, int pointCount) {
+                /* the end of the stroke is drawn first, so that a checkpoint holds all of it */
+                drawCurrentSegments();
+                history.addStroke(color, width, points, pointCount, (strokes.getActiveCount() == 0) ? drawing : null);
+            }
+        });
+        metricsOverlay = new MetricsOverlay(getResources().getDisplayMetrics().density);
+        navigator = new PatternNavigator(getContext(), new Runnable() {
+            @Override
+            public void run() {
+                invalidate();
+            }
+        });
+
+        /* carry on with the drawing saved by the last run */
+        history = new DrawingHistory(getContext().getFilesDir(), SymmetryGroup.getConwaySymbol(symmetryGroupId),
+                getPixelsPerUnit());
+        symmetryGroupId = SymmetryGroup.getIdForConwaySymbol(history.getLog().getConwaySymbol());
+        strokes.setQuantization(history.getLog());  // so that undo gives back exactly what was drawn
+    }
+
+    private float getPixelsPerUnit() {
+        return SymmetryGroup.getPixelsPerUnit(getResources().getDisplayMetrics().density, patternScale);
     }
 
     protected Bitmap getCanvasBitmap() {
         return canvasBitmap;
     }
 
+    protected DrawingHistory getHistory() {
+        return history;
+    }
+
     public int getSymmetryGroupId() {
         return symmetryGroupId;
     }
 
     public void setSymmetryGroupId(int newSymmetryGroupId) {
-        canvasBitmap.eraseColor(Color.WHITE);
-        currentPath.reset();
         symmetryGroupId = newSymmetryGroupId;
-        gp = new SymmetryGroup(newSymmetryGroupId, getWidth(), getHeight());
+        history.startDrawing(SymmetryGroup.getConwaySymbol(newSymmetryGroupId));
+        if (canvasBitmap == null)
+            return;  // not laid out yet; onSizeChanged() creates the group
+
+        canvasBitmap.eraseColor(Color.WHITE);
+        strokes.clear();
+        gp = SymmetryGroup.get(newSymmetryGroupId, getWidth(), getHeight(), getPixelsPerUnit());
+        renderer.setSymmetryGroup(gp, getWidth(), getHeight());
         invalidate();
     }
 
+    public float getPatternScale() {
+        return patternScale;
+    }
+
+    public void setPatternScale(float patternScale) {
+        /* Scales the pattern, and the strokes drawn so far with it. */
+
+        this.patternScale = patternScale;
+        drawPaint.setStrokeWidth(SymmetryGroup.BRUSH_WIDTH * getPixelsPerUnit());
+        if (canvasBitmap == null)
+            return;  // not laid out yet; onSizeChanged() creates the group
+
+        gp = SymmetryGroup.get(symmetryGroupId, getWidth(), getHeight(), getPixelsPerUnit());
+        renderer.setSymmetryGroup(gp, getWidth(), getHeight());
+        redrawHistory(getWidth(), getHeight());
+    }
+
+    public boolean isTileRendering() {
+        return renderer.isTileRendering();
+    }
+
+    public void setTileRendering(boolean enabled) {
+        renderer.setTileRendering(enabled);
+    }
+
+    public boolean isParallelRendering() {
+        return renderer.isParallel();
+    }
+
+    public void setParallelRendering(boolean enabled) {
+        renderer.setParallel(enabled);
+    }
+
+    public boolean isNavigating() {
+        return navigating;
+    }
+
+    public void setNavigating(boolean enabled) {
+        if (enabled)
+            strokes.finishAll();
+        navigating = enabled;
+        invalidate();
+    }
+
+    public boolean isShowingMetrics() {
+        return showingMetrics;
+    }
+
+    public void setShowingMetrics(boolean enabled) {
+        showingMetrics = enabled;
+        invalidate();
+    }
+
+    public boolean isSmoothingStrokes() {
+        return smoothingStrokes;
+    }
+
+    public void setSmoothingStrokes(boolean enabled) {
+        smoothingStrokes = enabled;
+        strokes.setFilter(StrokeFilter.DEFAULT_TOLERANCE, enabled ? STROKE_SMOOTHING : 0);
+    }
+
+    public boolean isIndexedStorage() {
+        return false;
+    }
+
+    public void setIndexedStorage(boolean enabled) {
+        /* Not supported: the whole view is redrawn every frame, so the drawing is kept as a bitmap, ready to draw. */
+    }
+
     public int getColor() {
         return drawPaint.getColor();
     }
@@ -74,10 +200,60 @@ public class WallpaperView extends View {
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
+        SymmetryGroup oldGp = gp;
+        gp = SymmetryGroup.get(symmetryGroupId, w, h, getPixelsPerUnit());
+        renderer.setSymmetryGroup(gp, w, h);
+
+        CellTiling tiling = (canvasBitmap == null) ? null :
+                history.planResize(oldGp, canvasBitmap.getWidth(), canvasBitmap.getHeight(), gp, w, h);
+        if (tiling != null) {
+            /* the same drawing about the new center, copied from one cell of the old one */
+            canvasBitmap = history.resize(canvasBitmap, tiling);
+            drawCanvas = new Canvas(canvasBitmap);
+            drawing = new DrawingTarget.OnBitmap(canvasBitmap, drawCanvas);
+            history.getLog().setOrigin(w/2, h/2);
+            strokes.clear();
+            invalidate();
+            return;
+        }
+
         canvasBitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
         drawCanvas = new Canvas(canvasBitmap);
+        drawing = new DrawingTarget.OnBitmap(canvasBitmap, drawCanvas);
+        redrawHistory(w, h);
+    }
 
-        gp = new SymmetryGroup(symmetryGroupId, w, h);
+    private void redrawHistory(int w, int h) {
+        /* Redraws the strokes of the history for the new size.  The groups are laid out around the center
+           of the view, so the strokes are replayed around it too, at the scale of the group. */
+
+        if (!history.getLog().getConwaySymbol().equals(SymmetryGroup.getConwaySymbol(symmetryGroupId)))
+            history.startDrawing(SymmetryGroup.getConwaySymbol(symmetryGroupId));
+        history.getLog().setOrigin(w/2, h/2);
+        history.getLog().setScale(getPixelsPerUnit());
+        strokes.clear();
+
+        dirtyBounds.setEmpty();
+        history.redraw(drawing, renderer, drawPaint, dirtyBounds);
+        invalidate();
+    }
+
+    public void undo() {
+        if (canvasBitmap == null)
+            return;
+
+        dirtyBounds.setEmpty();
+        if (history.undo(drawing, renderer, drawPaint, dirtyBounds))
+            invalidate();
+    }
+
+    public void redo() {
+        if (canvasBitmap == null)
+            return;
+
+        dirtyBounds.setEmpty();
+        if (history.redo(drawing, renderer, drawPaint, dirtyBounds))
+            invalidate();
     }
 
     // Save/restore instance code from:
@@ -89,7 +265,12 @@ public class WallpaperView extends View {
 
         WallpaperViewSavedState ss = new WallpaperViewSavedState(superState);
         ss.symmetryGroupId = this.symmetryGroupId;
+        ss.patternScale = this.patternScale;
         ss.color = this.drawPaint.getColor();
+        ss.tileRendering = isTileRendering();
+        ss.parallelRendering = isParallelRendering();
+        ss.smoothingStrokes = this.smoothingStrokes;
+        ss.indexedStorage = isIndexedStorage();
 
         return ss;
     }
@@ -105,12 +286,22 @@ public class WallpaperView extends View {
         super.onRestoreInstanceState(ss.getSuperState());
 
         this.symmetryGroupId = ss.symmetryGroupId;
+        setPatternScale(ss.patternScale);
         setColor(ss.color);
+        setTileRendering(ss.tileRendering);
+        setParallelRendering(ss.parallelRendering);
+        setSmoothingStrokes(ss.smoothingStrokes);
+        setIndexedStorage(ss.indexedStorage);
     }
 
     static class WallpaperViewSavedState extends BaseSavedState {
         int symmetryGroupId;
+        float patternScale;
         int color;
+        boolean tileRendering;
+        boolean parallelRendering;
+        boolean smoothingStrokes;
+        boolean indexedStorage;
 
         WallpaperViewSavedState(Parcelable superState) {
             super(superState);
@@ -119,14 +310,24 @@ public class WallpaperView extends View {
         private WallpaperViewSavedState(Parcel in) {
             super(in);
             this.symmetryGroupId = in.readInt();
+            this.patternScale = in.readFloat();
             this.color = in.readInt();
+            this.tileRendering = in.readInt() != 0;
+            this.parallelRendering = in.readInt() != 0;
+            this.smoothingStrokes = in.readInt() != 0;
+            this.indexedStorage = in.readInt() != 0;
         }
 
         @Override
         public void writeToParcel(Parcel out, int flags) {
             super.writeToParcel(out, flags);
             out.writeInt(this.symmetryGroupId);
+            out.writeFloat(this.patternScale);
             out.writeInt(this.color);
+            out.writeInt(this.tileRendering ? 1 : 0);
+            out.writeInt(this.parallelRendering ? 1 : 0);
+            out.writeInt(this.smoothingStrokes ? 1 : 0);
+            out.writeInt(this.indexedStorage ? 1 : 0);
         }
 
         //required field that makes Parcelables from a Parcel
@@ -141,135 +342,94 @@ public class WallpaperView extends View {
                 };
     }
 
-    private boolean isInBounds(float x, float y) {
-        return (x >= 0 && x < getWidth() && y >= 0 && y < getHeight());
-    }
+    private void drawCurrentSegments() {
+        /* Replicates the new segments of every finger onto canvasBitmap in one batch and invalidates only the
+           area they changed.  Earlier segments of the strokes are already on canvasBitmap, so the cost does not
+           grow with the length of the strokes, nor with the number of fingers beyond their new segments.
 
-    private boolean rayTowardsWindow(float x, float y, float dx, float dy) {
-        /* Returns true iff the ray from (x,y) in the direction (dx, dy) moves "towards" the window
-           in the sense that all these conditions are satisfied:
-             if x is to the left of the window, then dx > 0.
-             if x is to the right of the window, then dx < 0.
-             if y is above the window, then dy > 0.
-             if y is below the window, then dy < 0.
+           MotionEvent moves are delivered at most once per frame, so this is also done at most once
+           per frame, apart from the ends of strokes. */
 
-           This does not necessarily mean that the ray intersects the window, but it is
-           sufficient for our purposes.
-         */
-
-        if (x < 0 && dx <= 0)
-            return false;
-        if (x >= getWidth() && dx >= 0)
-            return false;
-        if (y < 0 && dy <= 0)
-            return false;
-        if (y >= getHeight() && dy >= 0)
-            return false;
-        return true;
-    }
-
-    private boolean doSingleDirectionTranslation(Canvas canvas, Path tempPath, float centerX, float centerY, float dx, float dy) {
-        /* This finds all translations of (centerX, centerY) in the direction of positive (dx,dy) which are within the view window.
-           i.e. Finds all integers n>=0 such that (centerX + n*dx, centerY + n*dy) are within the view window.
-           The corresponding translations of tempPath are made.
-           Returns true if at least one translation was made, otherwise false.
-
-           Before returning, tempPath is returned to its original location.
-        */
-        
-        boolean inBoundsFound = false;
-        int n = 0;
-
-        while(rayTowardsWindow(centerX, centerY, dx, dy)) {
-            if (isInBounds(centerX, centerY)) {
-                inBoundsFound = true;
-                canvas.drawPath(tempPath, drawPaint);
-            }
-            centerX += dx;
-            centerY += dy;
-            n++;
-            tempPath.offset(dx, dy);
+        PointArray segments = strokes.getSegments();
+        if (segments.isEmpty())
+            return;
+        dirtyBounds.setEmpty();
+        renderer.drawSegments(drawCanvas, segments.array(), segments.size(), drawPaint, dirtyBounds);
+        segments.clear();
+
+        if (!dirtyBounds.isEmpty()) {
+            float inset = drawPaint.getStrokeWidth() / 2 + 1;
+            dirtyBounds.inset(-inset, -inset);
+            dirtyBounds.roundOut(dirtyRect);
+            if (isHardwareAccelerated())
+                invalidate();
+            else
+                invalidateSoftware(dirtyRect);
         }
-        tempPath.offset(-n*dx, -n*dy);
-
-        return inBoundsFound;
     }
 
-    private void applyTranslations(Canvas canvas, Path path) {
-        Path tempPath = new Path(path);
-
-        float d1x = gp.getTranslationX()[0];
-        float d1y = gp.getTranslationY()[0];
-        float d2x = gp.getTranslationX()[1];
-        float d2y = gp.getTranslationY()[1];
-
-        RectF bounds = new RectF();
-        path.computeBounds(bounds, true);
-
-        float centerX = bounds.centerX();
-        float centerY = bounds.centerY();
+    @SuppressWarnings("deprecation")
+    private void invalidateSoftware(Rect dirty) {
+        /* Invalidates only the area the new segments changed, plus the metrics overlay.  The rectangle is only
+           honoured by views drawn in software: from API 21 a hardware accelerated view redraws whole whatever
+           rectangle is passed, so those are invalidated whole instead.  A software canvas comes to onDraw
+           clipped to the union of the rectangles, and onDraw blits only that part of canvasBitmap. */
 
-        int n=0;
-        boolean posDirectionFound = true, negDirectionFound = true;
-        while (posDirectionFound || negDirectionFound) {
-            posDirectionFound = doSingleDirectionTranslation(canvas, tempPath, centerX, centerY, d1x, d1y);
-            negDirectionFound = doSingleDirectionTranslation(canvas, tempPath, centerX, centerY, -d1x, -d1y);
-            n++;
-            centerX += d2x;
-            centerY += d2y;
-            tempPath.offset(d2x, d2y);
-        }
-
-        centerX -= (n+1)*d2x;
-        centerY -= (n+1)*d2y;
-        tempPath.offset(-(n+1)*d2x, -(n+1)*d2y); // go one past the original
-        posDirectionFound = true;
-        negDirectionFound = true;
-        while (posDirectionFound || negDirectionFound) {
-            posDirectionFound = doSingleDirectionTranslation(canvas, tempPath, centerX, centerY, d1x, d1y);
-            negDirectionFound = doSingleDirectionTranslation(canvas, tempPath, centerX, centerY, -d1x, -d1y);
-            // don't need to count n in the second stage
-            centerX -= d2x;
-            centerY -= d2y;
-            tempPath.offset(-d2x, -d2y);
-        }
-    }
-
-    private void applySymmetriesToCurrentPath(Canvas canvas) {
-        Path path = new Path(currentPath);
-        applyTranslations(canvas, path);
-        for (Matrix m : gp.getCosetReps()) {
-            path.rewind();
-            currentPath.transform(m, path);
-            applyTranslations(canvas, path);
-        }
+        invalidate(dirty.left, dirty.top, dirty.right, dirty.bottom);
+        if (showingMetrics)
+            invalidate(metricsOverlay.getBounds());
     }
 
     protected void onDraw(Canvas canvas) {
-        applySymmetriesToCurrentPath(drawCanvas);
-        canvas.drawBitmap(canvasBitmap, 0, 0, drawPaint);
-        gp.getFundamentalRegion().draw(canvas, fundamentalRegionPaint);
+        long start = System.nanoTime();
+        if (navigating) {
+            navigator.draw(canvas, gp, history, drawPaint, fundamentalRegionPaint, getWidth(), getHeight());
+        } else {
+            /* only the part of canvasBitmap inside the clip, which is all of it unless drawn in software */
+            if (canvas.getClipBounds(clipRect))
+                canvas.drawBitmap(canvasBitmap, clipRect, clipRect, drawPaint);
+            gp.getFundamentalRegion().draw(canvas, fundamentalRegionPaint);
+        }
+        MetricsOverlay.frameDrawn(start);
+        if (showingMetrics)
+            metricsOverlay.draw(canvas);
     }
 
     public boolean onTouchEvent(MotionEvent event) {
-        float touchX = event.getX();
-        float touchY = event.getY();
+        MetricsOverlay.inputReceived(event);
+        if (navigating)
+            return navigator.onTouchEvent(event);
 
-        switch (event.getAction()) {
+        strokes.setStyle(drawPaint.getColor(), drawPaint.getStrokeWidth());
+        int index = event.getActionIndex();
+        switch (event.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN:
+                strokes.add(event.getPointerId(index), event.getX(index), event.getY(index));
+                break;
             case MotionEvent.ACTION_MOVE:
-                if (currentPath.isEmpty())
-                    currentPath.moveTo(touchX, touchY);
-                else currentPath.lineTo(touchX, touchY);
-                invalidate();
+                /* the samples batched into the event since the last one, then its own, of every finger */
+                for (int h = 0; h < event.getHistorySize(); h++) {
+                    for (int i = 0; i < event.getPointerCount(); i++) {
+                        strokes.add(event.getPointerId(i), event.getHistoricalX(i, h), event.getHistoricalY(i, h));
+                    }
+                }
+                for (int i = 0; i < event.getPointerCount(); i++) {
+                    strokes.add(event.getPointerId(i), event.getX(i), event.getY(i));
+                }
                 break;
             case MotionEvent.ACTION_UP:
-                currentPath.reset();
+            case MotionEvent.ACTION_POINTER_UP:
+                strokes.up(event.getPointerId(index), event.getX(index), event.getY(index));
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                strokes.finishAll();
                 break;
             default:
                 return false;
         }
 
+        drawCurrentSegments();
         return true;
     }
 }
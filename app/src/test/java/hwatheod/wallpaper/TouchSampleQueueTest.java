@@ -0,0 +1,73 @@
+package hwatheod.wallpaper;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class TouchSampleQueueTest {
+    @Test
+    public void testFifo() {
+        TouchSampleQueue queue = new TouchSampleQueue(4);
+        assertTrue(queue.isEmpty());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i, 10 + i, i, -i));
+        }
+        assertFalse(queue.offer(9, 0, 0, 0));
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.poll());
+            assertEquals(queue.getAction(), i);
+            assertEquals(queue.getPointerId(), 10 + i);
+            assertEquals(queue.getY(), (float)-i);
+        }
+        assertFalse(queue.poll());
+    }
+
+    @Test
+    public void testReservedSlots() {
+        /* droppable samples leave the reserved slots to the others */
+        TouchSampleQueue queue = new TouchSampleQueue(8, 3);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(queue.offerDroppable(1, 0, i, 0));
+        }
+        assertFalse(queue.offerDroppable(1, 0, 5, 0));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.offer(2, 0, i, 0));
+        }
+        assertFalse(queue.offer(2, 0, 3, 0));
+
+        /* once one is taken, a slot is free to offer() but not yet to offerDroppable() */
+        assertTrue(queue.poll());
+        assertFalse(queue.offerDroppable(1, 0, 6, 0));
+        assertTrue(queue.offer(2, 0, 4, 0));
+    }
+
+    @Test
+    public void testOverflow() {
+        /* add() never drops a sample, and the others wait behind those in the overflow */
+        TouchSampleQueue queue = new TouchSampleQueue(4, 1);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.offerDroppable(1, 0, i, 0));
+        }
+        for (int i = 3; i < 6; i++) {
+            queue.add(2, 0, i, 0);
+        }
+        assertTrue(queue.poll());
+        assertFalse(queue.offerDroppable(1, 0, 9, 0));
+        assertFalse(queue.offer(2, 0, 9, 0));
+        for (int i = 1; i < 6; i++) {
+            assertTrue(queue.poll());
+            assertEquals(queue.getX(), (float)i);
+        }
+        assertTrue(queue.isEmpty());
+        assertFalse(queue.poll());
+
+        /* once the overflow is empty, the arrays take samples again */
+        assertTrue(queue.offerDroppable(1, 0, 6, 0));
+        assertTrue(queue.poll());
+        assertEquals(queue.getX(), 6f);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testReserveTooLarge() {
+        new TouchSampleQueue(8, 8);
+    }
+}
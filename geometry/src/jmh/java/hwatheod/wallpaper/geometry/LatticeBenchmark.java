@@ -0,0 +1,58 @@
+package hwatheod.wallpaper.geometry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of the lattice arithmetic behind replication: enumerating the translations which reach the
+ * window, and reducing a point to the lattice cell.  Enumeration is what a change of group or size
+ * pays before the offsets are cached.
+ */
+@State(Scope.Thread)
+public class LatticeBenchmark {
+    @Param({"o", "xx", "*x", "**", "632", "*632", "333", "*333", "3*3", "442", "*442", "4*2",
+            "2222", "22x", "22*", "*2222", "2*22"})
+    public String group;
+
+    @Param({"480x800", "1080x1920", "1600x2560"})
+    public String viewSize;
+
+    private int width, height;
+    private Lattice lattice;
+    private float[] points;
+    private float[] reduced = new float[2];
+    private float x, y;
+
+    @Setup
+    public void setUp() {
+        width = Integer.parseInt(viewSize.substring(0, viewSize.indexOf('x')));
+        height = Integer.parseInt(viewSize.substring(viewSize.indexOf('x') + 1));
+        lattice = new WallpaperGroup(group, width, height).getLattice();
+        points = new float[2 * lattice.getPoints(0, 0, width, height, new float[0])];
+    }
+
+    @Benchmark
+    public int enumerate() {
+        return lattice.getPoints(0, 0, width, height, points);
+    }
+
+    @Benchmark
+    public float[] enumerateOffsets() {
+        /* includes the allocation of the table, as on a change of group or size */
+        return new Lattice(lattice.getTranslationX()[0], lattice.getTranslationY()[0],
+                lattice.getTranslationX()[1], lattice.getTranslationY()[1]).getOffsets(width, height, 0);
+    }
+
+    @Benchmark
+    public float reduce() {
+        x += 37.5f;
+        y += 11.25f;
+        if (x > width) x -= width;
+        if (y > height) y -= height;
+        lattice.reduce(x, y, reduced);
+        return reduced[0];
+    }
+}
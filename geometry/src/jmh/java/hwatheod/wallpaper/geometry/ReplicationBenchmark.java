@@ -0,0 +1,58 @@
+package hwatheod.wallpaper.geometry;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Throughput of replicating a stroke over the window, measured on the geometry alone so that it runs
+ * on a JVM.  The segments counter reports segments replicated per second, counting every image.
+ * Run with -prof gc for the allocations per operation, which should be 0 once the buffers have grown.
+ */
+@State(Scope.Thread)
+public class ReplicationBenchmark {
+    @Param({"o", "xx", "*x", "**", "632", "*632", "333", "*333", "3*3", "442", "*442", "4*2",
+            "2222", "22x", "22*", "*2222", "2*22"})
+    public String group;
+
+    @Param({"480x800", "1080x1920", "1600x2560"})
+    public String viewSize;
+
+    @Param({"1", "16", "128"})
+    public int strokeLength;  // segments in the stroke
+
+    private SegmentReplicator replicator;
+    private float[] stroke;
+    private PointArray lines = new PointArray();
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long segments;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            segments = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        int width = Integer.parseInt(viewSize.substring(0, viewSize.indexOf('x')));
+        int height = Integer.parseInt(viewSize.substring(viewSize.indexOf('x') + 1));
+        replicator = new SegmentReplicator(new WallpaperGroup(group, width, height), width, height);
+        stroke = Strokes.zigzag(width, height, strokeLength);
+    }
+
+    @Benchmark
+    public int replicate(Counters counters) {
+        lines.clear();
+        int copies = replicator.replicate(stroke, 2 * strokeLength, lines);
+        counters.segments += lines.size() / 2;
+        return copies;
+    }
+}
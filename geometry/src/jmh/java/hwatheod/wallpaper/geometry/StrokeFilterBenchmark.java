@@ -0,0 +1,85 @@
+package hwatheod.wallpaper.geometry;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Conditioning the touch samples of a stroke and replicating the segments which are left, against replicating
+ * a segment per sample.  The segments counter reports the segments replicated, counting every image, and
+ * samples the touch samples taken in, so segments/samples shows the reduction.
+ */
+@State(Scope.Thread)
+public class StrokeFilterBenchmark {
+    private static final int SAMPLE_COUNT = 256;
+
+    @Param({"o", "*632", "442"})
+    public String group;
+
+    @Param({"1", "4"})
+    public float spacing;  // pixels between samples: 1 for a fast digitizer, 4 for a typical screen
+
+    @Param({"raw", "filter", "simplify"})
+    public String mode;
+
+    private SegmentReplicator replicator;
+    private float[] samples;
+    private StrokeFilter filter = new StrokeFilter();
+    private PointArray points = new PointArray(SAMPLE_COUNT);
+    private PointArray segments = new PointArray(2 * SAMPLE_COUNT);
+    private PointArray lines = new PointArray();
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long samples;
+        public long segments;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            samples = 0;
+            segments = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        int width = 1080, height = 1920;
+        replicator = new SegmentReplicator(new WallpaperGroup(group, width, height), width, height);
+        samples = Strokes.samples(width, height, SAMPLE_COUNT, spacing);
+    }
+
+    @Benchmark
+    public int conditionAndReplicate(Counters counters) {
+        points.clear();
+        switch (mode) {
+            case "raw":
+                for (int i = 0; i < SAMPLE_COUNT; i++) {
+                    points.add(samples[2*i], samples[2*i + 1]);
+                }
+                break;
+            case "filter":
+                filter.reset();
+                for (int i = 0; i < SAMPLE_COUNT; i++) {
+                    filter.add(samples[2*i], samples[2*i + 1], points);
+                }
+                filter.finish(points);
+                break;
+            case "simplify":
+                StrokeFilter.simplify(samples, SAMPLE_COUNT, StrokeFilter.DEFAULT_TOLERANCE, points);
+                break;
+        }
+
+        segments.clear();
+        segments.addSegments(points.array(), points.size());
+        lines.clear();
+        int copies = replicator.replicate(segments.array(), segments.size(), lines);
+        counters.samples += SAMPLE_COUNT;
+        counters.segments += copies;
+        return copies;
+    }
+}
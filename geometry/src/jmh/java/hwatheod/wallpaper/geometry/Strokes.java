@@ -0,0 +1,38 @@
+package hwatheod.wallpaper.geometry;
+
+import java.util.Random;
+
+/**
+ * Test strokes for the benchmarks.
+ */
+class Strokes {
+    static float[] zigzag(int width, int height, int segmentCount) {
+        /* A zigzag of segmentCount 10 pixel segments, starting near the center of the window, like a
+           finger moving across it.  Packed as segments, (x0, y0, x1, y1) each, as the views batch them. */
+
+        float[] segments = new float[4 * segmentCount];
+        float x = width / 2f, y = height / 2f;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[4*i] = x + 8 * i;
+            segments[4*i + 1] = y + ((i % 2 == 0) ? 0 : 6);
+            segments[4*i + 2] = x + 8 * (i + 1);
+            segments[4*i + 3] = y + ((i % 2 == 0) ? 6 : 0);
+        }
+        return segments;
+    }
+
+    static float[] samples(int width, int height, int sampleCount, float spacing) {
+        /* The touch samples of a finger tracing loops from the center of the window, spacing pixels apart as
+           a digitizer samples a steady movement, with a little jitter.  Packed as points, (x, y) each. */
+
+        Random random = new Random(1);
+        float[] points = new float[2 * sampleCount];
+        float radius = 60;
+        for (int i = 0; i < sampleCount; i++) {
+            double angle = i * spacing / radius;
+            points[2*i] = width / 2f + (float)(i * spacing / 8 + radius * Math.sin(angle)) + 0.3f * (random.nextFloat() - 0.5f);
+            points[2*i + 1] = height / 2f + (float)(radius * (1 - Math.cos(angle))) + 0.3f * (random.nextFloat() - 0.5f);
+        }
+        return points;
+    }
+}
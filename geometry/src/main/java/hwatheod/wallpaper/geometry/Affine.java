@@ -0,0 +1,186 @@
+package hwatheod.wallpaper.geometry;
+
+/**
+ * An affine transformation of the plane, mapping (x, y) to (a*x + b*y + c, d*x + e*y + f).
+ * The setters and postConcat() follow android.graphics.Matrix, so that code built on one reads
+ * the same with the other.
+ */
+public class Affine {
+    // Sines and cosines smaller than this are taken to be 0, so that rotations by multiples of 90
+    // degrees are exact.
+    private static final double SNAP_TO_ZERO = 1e-6;
+
+    private float a, b, c, d, e, f;
+
+    public Affine() {
+        setIdentity();
+    }
+
+    public Affine(Affine other) {
+        set(other);
+    }
+
+    public void set(Affine other) {
+        a = other.a; b = other.b; c = other.c;
+        d = other.d; e = other.e; f = other.f;
+    }
+
+    public void setIdentity() {
+        a = 1; b = 0; c = 0;
+        d = 0; e = 1; f = 0;
+    }
+
+    public void setTranslate(float dx, float dy) {
+        a = 1; b = 0; c = dx;
+        d = 0; e = 1; f = dy;
+    }
+
+    public void setRotate(float degrees, float px, float py) {
+        /* Sets this to the rotation by degrees about (px, py).  With the y axis pointing down, as on
+           the screen, positive angles turn clockwise. */
+
+        double radians = Math.toRadians(degrees);
+        double sin = Math.sin(radians);
+        double cos = Math.cos(radians);
+        if (Math.abs(sin) < SNAP_TO_ZERO)
+            sin = 0;
+        if (Math.abs(cos) < SNAP_TO_ZERO)
+            cos = 0;
+
+        a = (float)cos; b = (float)-sin;
+        d = (float)sin; e = (float)cos;
+        c = px - a * px - b * py;
+        f = py - d * px - e * py;
+    }
+
+    public void setReflection(float x1, float y1, float x2, float y2) {
+        /* Sets this to the reflection about the line through (x1, y1) and (x2, y2). */
+
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double lengthSquared = dx*dx + dy*dy;
+
+        /* the linear part fixes the direction of the line and negates its normal */
+        a = (float)((dx*dx - dy*dy) / lengthSquared);
+        b = (float)(2*dx*dy / lengthSquared);
+        d = b;
+        e = -a;
+        c = x1 - a * x1 - b * y1;
+        f = y1 - d * x1 - e * y1;
+    }
+
+    public boolean setInverse(Affine m) {
+        /* Sets this to the inverse of m.  Returns false, leaving this unchanged, if m is not invertible. */
+
+        float det = m.a * m.e - m.b * m.d;
+        if (det == 0)
+            return false;
+
+        float na = m.e / det, nb = -m.b / det;
+        float nd = -m.d / det, ne = m.a / det;
+        float nc = -(na * m.c + nb * m.f), nf = -(nd * m.c + ne * m.f);
+        a = na; b = nb; c = nc;
+        d = nd; e = ne; f = nf;
+        return true;
+    }
+
+    public void postTranslate(float dx, float dy) {
+        c += dx;
+        f += dy;
+    }
+
+    public void postConcat(Affine other) {
+        /* Sets this to other * this, i.e. this transformation followed by other. */
+
+        float na = other.a * a + other.b * d;
+        float nb = other.a * b + other.b * e;
+        float nc = other.a * c + other.b * f + other.c;
+        float nd = other.d * a + other.e * d;
+        float ne = other.d * b + other.e * e;
+        float nf = other.d * c + other.e * f + other.f;
+        a = na; b = nb; c = nc;
+        d = nd; e = ne; f = nf;
+    }
+
+    public void conjugateByScale(float scale, float px, float py) {
+        /* Sets this to S * this * S^-1, where S scales by scale about (px, py): the same transformation of a
+           scaled copy of the plane.  The linear part is unchanged. */
+
+        float qx = mapX(px, py), qy = mapY(px, py);
+        c = px - a * px - b * py + scale * (qx - px);
+        f = py - d * px - e * py + scale * (qy - py);
+    }
+
+    public void conjugateByTranslate(float dx, float dy) {
+        /* Sets this to T * this * T^-1, where T translates by (dx, dy): the same transformation about a moved
+           origin.  The linear part is unchanged. */
+
+        c += dx - a * dx - b * dy;
+        f += dy - d * dx - e * dy;
+    }
+
+    public float mapX(float x, float y) {
+        return a * x + b * y + c;
+    }
+
+    public float mapY(float x, float y) {
+        return d * x + e * y + f;
+    }
+
+    public void mapPoints(float[] dst, int dstIndex, float[] src, int srcIndex, int pointCount) {
+        /* Maps pointCount points, packed as (x, y) pairs, from src to dst.  src and dst may be the same array. */
+
+        for (int i = 0; i < 2*pointCount; i += 2) {
+            float x = src[srcIndex + i];
+            float y = src[srcIndex + i + 1];
+            dst[dstIndex + i] = a * x + b * y + c;
+            dst[dstIndex + i + 1] = d * x + e * y + f;
+        }
+    }
+
+    public static float[] pack(Affine[] transforms) {
+        /* Returns the coefficients (a, b, c, d, e, f) of each of transforms, one after the other, for
+           mapPoints(float[], int, ...). */
+
+        float[] packed = new float[6 * transforms.length];
+        for (int i = 0; i < transforms.length; i++) {
+            Affine m = transforms[i];
+            packed[6*i] = m.a; packed[6*i + 1] = m.b; packed[6*i + 2] = m.c;
+            packed[6*i + 3] = m.d; packed[6*i + 4] = m.e; packed[6*i + 5] = m.f;
+        }
+        return packed;
+    }
+
+    public static void mapPoints(float[] packed, int transform, float[] dst, int dstIndex, float[] src, int srcIndex, int pointCount) {
+        /* Maps pointCount points from src to dst as mapPoints() does, by the given transform of an array from pack(). */
+
+        int k = 6 * transform;
+        float a = packed[k], b = packed[k + 1], c = packed[k + 2];
+        float d = packed[k + 3], e = packed[k + 4], f = packed[k + 5];
+        for (int i = 0; i < 2*pointCount; i += 2) {
+            float x = src[srcIndex + i];
+            float y = src[srcIndex + i + 1];
+            dst[dstIndex + i] = a * x + b * y + c;
+            dst[dstIndex + i + 1] = d * x + e * y + f;
+        }
+    }
+
+    public boolean isOrientationReversing() {
+        return a * e - b * d < 0;
+    }
+
+    /**
+     * @param values Receives the 9 values of the equivalent 3x3 matrix, in row-major order as
+     *               used by android.graphics.Matrix.getValues().
+     */
+    public void getValues(float[] values) {
+        values[0] = a; values[1] = b; values[2] = c;
+        values[3] = d; values[4] = e; values[5] = f;
+        values[6] = 0; values[7] = 0; values[8] = 1;
+    }
+
+    @Override
+    public String toString() {
+        return "Affine[" + a + ", " + b + ", " + c + "; " + d + ", " + e + ", " + f + "]";
+    }
+}
@@ -0,0 +1,99 @@
+package hwatheod.wallpaper.geometry;
+
+import java.util.Arrays;
+
+/**
+ * A software raster of one lattice cell of a pattern: the bounding box of the parallelogram spanned by the
+ * translation vectors at the origin, at a given number of pixels per unit.  Since the pattern is periodic,
+ * this cell holds all of it, and any point of the plane is looked up by reducing it to the cell.
+ *
+ * <p>Strokes are filled without antialiasing, as on the screen: a pixel is covered when its center lies
+ * within the stroke.
+ */
+public class CellRaster {
+    private final Lattice lattice;
+    private final float scale;  // pixels per unit
+    private final float left, top, right, bottom;  // area covered, in pattern coordinates
+    private final int width, height;
+    private final int[] pixels;
+
+    // scratch objects, kept so that drawing does not allocate once the buffers have grown
+    private float[] translates = new float[32];
+    private float[] reduced = new float[2];
+
+    public CellRaster(Lattice lattice, float scale, int background) {
+        this.lattice = lattice;
+        this.scale = scale;
+
+        float[] cellBounds = lattice.getCellBounds();
+        left = cellBounds[0];
+        top = cellBounds[1];
+        width = Math.max(1, (int)Math.ceil((cellBounds[2] - left) * scale));
+        height = Math.max(1, (int)Math.ceil((cellBounds[3] - top) * scale));
+        right = left + width / scale;
+        bottom = top + height / scale;
+
+        pixels = new int[width * height];
+        Arrays.fill(pixels, background);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void drawSegment(float x0, float y0, float x1, float y1, float radius, int color) {
+        /* Fills the segment, with round caps, at every lattice translate which reaches into the cell. */
+
+        float minX = Math.min(x0, x1) - radius, maxX = Math.max(x0, x1) + radius;
+        float minY = Math.min(y0, y1) - radius, maxY = Math.max(y0, y1) + radius;
+        int count = lattice.getPoints(left - maxX, top - maxY, right - minX, bottom - minY, translates);
+        if (2*count > translates.length) {
+            translates = new float[2*count];
+            lattice.getPoints(left - maxX, top - maxY, right - minX, bottom - minY, translates);
+        }
+
+        for (int i = 0; i < count; i++) {
+            float tx = translates[2*i], ty = translates[2*i + 1];
+            fillCapsule((x0 + tx - left) * scale, (y0 + ty - top) * scale,
+                    (x1 + tx - left) * scale, (y1 + ty - top) * scale, radius * scale, color);
+        }
+    }
+
+    private void fillCapsule(float ax, float ay, float bx, float by, float r, int color) {
+        /* Fills the pixels whose centers lie within r of the segment from a to b, in pixel coordinates. */
+
+        int i0 = Math.max(0, (int)Math.floor(Math.min(ax, bx) - r));
+        int i1 = Math.min(width - 1, (int)Math.ceil(Math.max(ax, bx) + r));
+        int j0 = Math.max(0, (int)Math.floor(Math.min(ay, by) - r));
+        int j1 = Math.min(height - 1, (int)Math.ceil(Math.max(ay, by) + r));
+
+        float dx = bx - ax, dy = by - ay;
+        float lengthSquared = dx*dx + dy*dy;
+        float rSquared = r*r;
+        for (int j = j0; j <= j1; j++) {
+            float py = j + 0.5f - ay;
+            for (int i = i0; i <= i1; i++) {
+                float px = i + 0.5f - ax;
+                float t = (lengthSquared > 0) ? Math.max(0, Math.min(1, (px*dx + py*dy) / lengthSquared)) : 0;
+                float ex = px - t*dx, ey = py - t*dy;
+                if (ex*ex + ey*ey <= rSquared)
+                    pixels[j*width + i] = color;
+            }
+        }
+    }
+
+    public int sample(float x, float y) {
+        /* Returns the color of the pattern at (x, y), in pattern coordinates. */
+
+        lattice.reduce(x, y, reduced);
+        int i = (int)((reduced[0] - left) * scale);
+        int j = (int)((reduced[1] - top) * scale);
+        i = Math.max(0, Math.min(width - 1, i));
+        j = Math.max(0, Math.min(height - 1, j));
+        return pixels[j*width + i];
+    }
+}
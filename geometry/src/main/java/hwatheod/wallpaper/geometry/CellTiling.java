@@ -0,0 +1,145 @@
+package hwatheod.wallpaper.geometry;
+
+/**
+ * How to carry a drawing over to a window of another size without replaying its strokes.  The groups are
+ * laid out around the center of the window, (width/2, height/2) in integer division, so at a new size the
+ * pattern is the old one shifted by the move of the center.  Since it is periodic, one cell of it is enough:
+ * a rectangle of the old window holding a whole parallelogram of the lattice, copied to every lattice
+ * translate of it which meets the new window.  The copies overlap, but agree where they do.
+ *
+ * <p>Copies are placed at whole pixels, so a pixel of the new window may come from up to half a pixel away
+ * along each axis from where a replay would put it, about as far as the translates of a stroke already are
+ * from one another.
+ */
+public class CellTiling {
+    private final int sourceX, sourceY, sourceWidth, sourceHeight;
+    private final int oldWidth, width, height;
+    private final int[] positions;  // packed (x, y) of the copies in the new window
+    private final float[] errors;  // packed (x, y) of how far each copy is from its exact place
+
+    private CellTiling(int sourceX, int sourceY, int sourceWidth, int sourceHeight, int oldWidth, int width,
+                       int height, int[] positions, float[] errors) {
+        this.sourceX = sourceX;
+        this.sourceY = sourceY;
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.oldWidth = oldWidth;
+        this.width = width;
+        this.height = height;
+        this.positions = positions;
+        this.errors = errors;
+    }
+
+    public static CellTiling plan(Lattice lattice, int oldWidth, int oldHeight, int width, int height) {
+        /* Plans the copy from a window of oldWidth x oldHeight to one of width x height, both in pixels, the
+           lattice being in pixels too.  Returns null if no whole cell fits in the old window, in which case
+           the drawing has to be replayed. */
+
+        float[] cellBounds = lattice.getCellBounds();
+
+        /* a translate of the parallelogram lying in the old window, within whole pixels */
+        float[] found = new float[2];
+        int count = lattice.getPoints(-cellBounds[0], -cellBounds[1],
+                oldWidth - cellBounds[2], oldHeight - cellBounds[3], found);
+        if (count == 0)
+            return null;
+        int sourceX = Math.max(0, (int)Math.floor(cellBounds[0] + found[0]));
+        int sourceY = Math.max(0, (int)Math.floor(cellBounds[1] + found[1]));
+        int sourceWidth = Math.min(oldWidth, (int)Math.ceil(cellBounds[2] + found[0])) - sourceX;
+        int sourceHeight = Math.min(oldHeight, (int)Math.ceil(cellBounds[3] + found[1])) - sourceY;
+        if (sourceWidth <= 0 || sourceHeight <= 0)
+            return null;
+
+        /* where the source lands in the new window before translating, after the move of the center */
+        int x0 = sourceX + width/2 - oldWidth/2, y0 = sourceY + height/2 - oldHeight/2;
+
+        /* the translates whose copy meets the new window, allowing for the rounding */
+        float minX = -x0 - sourceWidth - 1, minY = -y0 - sourceHeight - 1;
+        float maxX = width - x0 + 1, maxY = height - y0 + 1;
+        count = lattice.getPoints(minX, minY, maxX, maxY, new float[0]);
+        float[] translates = new float[2 * count];
+        lattice.getPoints(minX, minY, maxX, maxY, translates);
+
+        int[] positions = new int[2 * count];
+        float[] errors = new float[2 * count];
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            float x = x0 + translates[2*i], y = y0 + translates[2*i + 1];
+            int left = Math.round(x), top = Math.round(y);
+            if (left + sourceWidth <= 0 || top + sourceHeight <= 0 || left >= width || top >= height)
+                continue;
+            positions[2*kept] = left;
+            positions[2*kept + 1] = top;
+            errors[2*kept] = left - x;
+            errors[2*kept + 1] = top - y;
+            kept++;
+        }
+        int[] keptPositions = new int[2 * kept];
+        float[] keptErrors = new float[2 * kept];
+        System.arraycopy(positions, 0, keptPositions, 0, 2 * kept);
+        System.arraycopy(errors, 0, keptErrors, 0, 2 * kept);
+        return new CellTiling(sourceX, sourceY, sourceWidth, sourceHeight, oldWidth, width, height,
+                keptPositions, keptErrors);
+    }
+
+    public int getSourceX() {
+        return sourceX;
+    }
+
+    public int getSourceY() {
+        return sourceY;
+    }
+
+    public int getSourceWidth() {
+        return sourceWidth;
+    }
+
+    public int getSourceHeight() {
+        return sourceHeight;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getCopyCount() {
+        return positions.length / 2;
+    }
+
+    public int getCopyX(int i) {
+        /* Where the top left of the source goes for copy i, in the new window.  It may lie outside it. */
+        return positions[2*i];
+    }
+
+    public int getCopyY(int i) {
+        return positions[2*i + 1];
+    }
+
+    public float getCopyErrorX(int i) {
+        /* How far copy i is to the right of its exact place, at most 1/2. */
+        return errors[2*i];
+    }
+
+    public float getCopyErrorY(int i) {
+        return errors[2*i + 1];
+    }
+
+    public void copy(byte[] from, int fromOffset, byte[] to, int toOffset) {
+        /* Carries a plane of one byte per pixel over from the old window, rows of the old width from
+           fromOffset, to the new one, rows of the new width from toOffset.  from and to must differ. */
+
+        for (int i = 0; i < getCopyCount(); i++) {
+            int left = positions[2*i], top = positions[2*i + 1];
+            int x0 = Math.max(0, left), x1 = Math.min(width, left + sourceWidth);
+            int y0 = Math.max(0, top), y1 = Math.min(height, top + sourceHeight);
+            for (int y = y0; y < y1; y++) {
+                System.arraycopy(from, fromOffset + (sourceY + y - top) * oldWidth + sourceX + x0 - left,
+                        to, toOffset + y * width + x0, x1 - x0);
+            }
+        }
+    }
+}
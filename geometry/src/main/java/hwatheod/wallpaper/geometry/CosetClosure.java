@@ -0,0 +1,149 @@
+package hwatheod.wallpaper.geometry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds coset reps of the lattice in the wallpaper group generated by the lattice and some isometries, by
+ * breadth-first closure: each element found is followed by each generator in turn, until no new coset turns
+ * up.  The generators therefore come first, and every rep is a shortest product of them.
+ *
+ * <p>Two products lie in the same coset when they have the same linear part and their translations differ
+ * by a lattice vector.  Each product is reduced into the unit cell about an origin: translated by the
+ * lattice vector which leaves the image of the origin within half a cell of the origin in each lattice
+ * coordinate.  It is then looked up by a key of its linear part and the lattice coordinates of that
+ * movement, each rounded to the tolerance, the coordinates modulo 1.
+ *
+ * <p>The generators must be consistent with the lattice.  Their linear parts must map the lattice onto
+ * itself, and no product may be a translation outside the lattice, which would mean the translations of
+ * the group are finer than the lattice.  Otherwise close() throws IllegalArgumentException.
+ */
+public class CosetClosure {
+    public static final float DEFAULT_TOLERANCE = 0.001f;
+    private static final int MAX_POINT_GROUP_ORDER = 12;  // the order of the point group of *632
+
+    private final Lattice lattice;
+    private final float[] translationX, translationY;
+    private final float tolerance;  // for matrix entries and lattice coordinates
+    private final int steps;  // key values per unit, about 1 / tolerance
+
+    // scratch objects, so that closing does not allocate beyond the elements and their keys
+    private float[] values = new float[9];
+    private float[] coordinates = new float[2];
+
+    public CosetClosure(Lattice lattice) {
+        this(lattice, DEFAULT_TOLERANCE);
+    }
+
+    public CosetClosure(Lattice lattice, float tolerance) {
+        if (!(tolerance > 0 && tolerance < 0.5f))
+            throw new IllegalArgumentException("Tolerance " + tolerance);
+        this.lattice = lattice;
+        this.translationX = lattice.getTranslationX();
+        this.translationY = lattice.getTranslationY();
+        this.tolerance = tolerance;
+        this.steps = Math.round(1 / tolerance);
+    }
+
+    // The rounded linear part of an element, and the lattice coordinates of its movement of the origin.
+    private static final class Key {
+        private final int[] rounded;
+
+        Key(int[] rounded) {
+            this.rounded = rounded;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(rounded, ((Key)other).rounded);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(rounded);
+        }
+    }
+
+    public Affine[] close(Affine[] generators, float originX, float originY) {
+        /* Returns the coset reps other than that of the identity, each reduced about (originX, originY).
+           The generators are not modified. */
+
+        for (int i = 0; i < generators.length; i++) {
+            checkPreservesLattice(generators[i], i);
+        }
+
+        List<Affine> elements = new ArrayList<>();
+        Map<Key, Affine> cosets = new HashMap<>();
+        Map<Key, Affine> linearParts = new HashMap<>();  // the element found with each linear part
+        Affine identity = new Affine();
+        elements.add(identity);
+        cosets.put(key(identity, originX, originY, true), identity);
+        linearParts.put(key(identity, originX, originY, false), identity);
+        for (int i = 0; i < elements.size(); i++) {
+            for (Affine generator : generators) {
+                Affine product = new Affine(elements.get(i));
+                product.postConcat(generator);
+                reduce(product, originX, originY);
+                Key key = key(product, originX, originY, true);
+                if (cosets.containsKey(key))
+                    continue;
+
+                /* Another element with the same linear part differs from this one by a translation. */
+                Affine other = linearParts.get(key(product, originX, originY, false));
+                if (other != null)
+                    throw new IllegalArgumentException("Generators give the translation (" +
+                            (product.mapX(0, 0) - other.mapX(0, 0)) + ", " + (product.mapY(0, 0) - other.mapY(0, 0)) +
+                            "), which is not in the lattice");
+                if (elements.size() == MAX_POINT_GROUP_ORDER)
+                    throw new IllegalArgumentException("Generators give more than " + MAX_POINT_GROUP_ORDER + " cosets");
+                cosets.put(key, product);
+                linearParts.put(key(product, originX, originY, false), product);
+                elements.add(product);
+            }
+        }
+        return elements.subList(1, elements.size()).toArray(new Affine[elements.size() - 1]);
+    }
+
+    private void checkPreservesLattice(Affine m, int index) {
+        m.getValues(values);
+        for (int i = 0; i < 2; i++) {
+            float x = values[0] * translationX[i] + values[1] * translationY[i];
+            float y = values[3] * translationX[i] + values[4] * translationY[i];
+            if (!lattice.isLatticeVector(x, y, tolerance))
+                throw new IllegalArgumentException("Generator " + index + ", " + m + ", does not preserve the lattice");
+        }
+    }
+
+    private void reduce(Affine m, float originX, float originY) {
+        /* Translates m by the lattice vector which leaves m(origin) within half a cell of the origin. */
+
+        lattice.getCoordinates(m.mapX(originX, originY) - originX, m.mapY(originX, originY) - originY, coordinates);
+        int n1 = Math.round(coordinates[0]), n2 = Math.round(coordinates[1]);
+        m.postTranslate(-n1 * translationX[0] - n2 * translationX[1], -n1 * translationY[0] - n2 * translationY[1]);
+    }
+
+    private Key key(Affine m, float originX, float originY, boolean withTranslation) {
+        /* The key of the coset of m, which must be reduced, or of just its linear part. */
+
+        m.getValues(values);
+        int[] rounded = new int[withTranslation ? 6 : 4];
+        rounded[0] = Math.round(values[0] * steps);
+        rounded[1] = Math.round(values[1] * steps);
+        rounded[2] = Math.round(values[3] * steps);
+        rounded[3] = Math.round(values[4] * steps);
+        if (withTranslation) {
+            lattice.getCoordinates(m.mapX(originX, originY) - originX, m.mapY(originX, originY) - originY, coordinates);
+            rounded[4] = modSteps(Math.round(coordinates[0] * steps));
+            rounded[5] = modSteps(Math.round(coordinates[1] * steps));
+        }
+        return new Key(rounded);
+    }
+
+    private int modSteps(int n) {
+        /* n modulo steps, so that coordinates either side of a cell boundary get the same key */
+        return ((n % steps) + steps) % steps;
+    }
+}
@@ -0,0 +1,239 @@
+package hwatheod.wallpaper.geometry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The definition of a wallpaper group, in units about the center of the window: the lattice of translations,
+ * the vertices of a fundamental region, and the generators of the group, from which CosetClosure finds the
+ * coset reps.  WallpaperGroup lays a definition out in a window.
+ *
+ * <p>The definitions of the 17 groups are read once from the resource wallpaper_groups.txt, whose header
+ * describes the format.  Each definition is checked as it is read: the images of the fundamental region
+ * under the coset reps, including the identity, must have the area of a cell of the lattice.
+ */
+public class GroupDefinition {
+    private static final String RESOURCE = "wallpaper_groups.txt";
+    private static final float AREA_TOLERANCE = 0.001f;  // relative
+
+    private final String conwaySymbol;
+    private final float[] lattice;  // {d1x, d1y, d2x, d2y}
+    private final float[] region;  // vertices of the fundamental region, packed as (x, y) pairs
+    private final Affine[] cosetReps;  // identity NOT included
+
+    // The definitions in the resource, read when first needed.
+    private static class Resource {
+        static final Map<String, GroupDefinition> DEFINITIONS = load();
+    }
+
+    private GroupDefinition(String conwaySymbol, float[] lattice, float[] region, Affine[] cosetReps) {
+        this.conwaySymbol = conwaySymbol;
+        this.lattice = lattice;
+        this.region = region;
+        this.cosetReps = cosetReps;
+    }
+
+    public static GroupDefinition get(String conwaySymbol) {
+        /* Returns the definition of the group with the given Conway symbol. */
+
+        GroupDefinition definition = Resource.DEFINITIONS.get(conwaySymbol);
+        if (definition == null)
+            throw new IllegalArgumentException("Unknown wallpaper group " + conwaySymbol);
+        return definition;
+    }
+
+    public static Map<String, GroupDefinition> getAll() {
+        /* Returns the definitions of the resource by Conway symbol, in the order of the resource. */
+        return Resource.DEFINITIONS;
+    }
+
+    private static Map<String, GroupDefinition> load() {
+        InputStream in = GroupDefinition.class.getResourceAsStream(RESOURCE);
+        if (in == null)
+            throw new IllegalStateException("Missing resource " + RESOURCE);
+        try {
+            try {
+                return Collections.unmodifiableMap(parse(new InputStreamReader(in, Charset.forName("UTF-8"))));
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read " + RESOURCE, e);
+        }
+    }
+
+    public static Map<String, GroupDefinition> parse(Reader reader) throws IOException {
+        /* Reads group definitions in the format of the resource.  Throws IllegalArgumentException, naming the
+           line, if the text is malformed, or naming the group, if a definition is inconsistent. */
+
+        Map<String, GroupDefinition> result = new LinkedHashMap<>();
+        BufferedReader lines = new BufferedReader(reader);
+        Builder builder = null;
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0)
+                line = line.substring(0, comment);
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens[0].isEmpty())
+                continue;
+
+            try {
+                if (tokens[0].equals("group")) {
+                    expectArguments(tokens, 1);
+                    if (builder != null)
+                        builder.addTo(result);
+                    builder = new Builder(tokens[1]);
+                    continue;
+                }
+                if (builder == null)
+                    throw new IllegalArgumentException("Expected group");
+                builder.addLine(tokens);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        if (builder != null)
+            builder.addTo(result);
+        return result;
+    }
+
+    private static void expectArguments(String[] tokens, int count) {
+        if (tokens.length != count + 1)
+            throw new IllegalArgumentException(tokens[0] + " takes " + count + " arguments");
+    }
+
+    static float parseNumber(String token) {
+        /* A decimal number, multiplied by the square root of 3 if it ends in r3. */
+
+        if (token.endsWith("r3"))
+            return (float)(Double.parseDouble(token.substring(0, token.length() - 2)) * Math.sqrt(3));
+        return Float.parseFloat(token);
+    }
+
+    private static float[] parseNumbers(String[] tokens) {
+        float[] result = new float[tokens.length - 1];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = parseNumber(tokens[i + 1]);
+        }
+        return result;
+    }
+
+    // Collects the lines of one definition.
+    private static class Builder {
+        private final String conwaySymbol;
+        private float[] lattice;
+        private float[] region;
+        private List<Affine> generators = new ArrayList<>();
+
+        Builder(String conwaySymbol) {
+            this.conwaySymbol = conwaySymbol;
+        }
+
+        void addLine(String[] tokens) {
+            float[] values;
+            Affine generator = new Affine();
+            switch (tokens[0]) {
+                case "lattice":
+                    expectArguments(tokens, 4);
+                    lattice = parseNumbers(tokens);
+                    break;
+                case "region":
+                    if (tokens.length < 7 || tokens.length % 2 == 0)
+                        throw new IllegalArgumentException("region takes at least 3 points");
+                    region = parseNumbers(tokens);
+                    break;
+                case "rotate":
+                    expectArguments(tokens, 3);
+                    values = parseNumbers(tokens);
+                    generator.setRotate(values[0], values[1], values[2]);
+                    generators.add(generator);
+                    break;
+                case "reflect":
+                    expectArguments(tokens, 4);
+                    values = parseNumbers(tokens);
+                    generator.setReflection(values[0], values[1], values[2], values[3]);
+                    generators.add(generator);
+                    break;
+                case "glide":
+                    expectArguments(tokens, 5);
+                    values = parseNumbers(tokens);
+                    generator.setReflection(values[0], values[1], values[2], values[3]);
+                    float dx = values[2] - values[0], dy = values[3] - values[1];
+                    float length = (float)Math.sqrt(dx*dx + dy*dy);
+                    generator.postTranslate(values[4] * dx / length, values[4] * dy / length);
+                    generators.add(generator);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown keyword " + tokens[0]);
+            }
+        }
+
+        void addTo(Map<String, GroupDefinition> definitions) {
+            if (lattice == null || region == null)
+                throw new IllegalArgumentException("Group " + conwaySymbol + " needs a lattice and a region");
+            if (definitions.containsKey(conwaySymbol))
+                throw new IllegalArgumentException("Group " + conwaySymbol + " is defined twice");
+
+            PointArray regionPoints = new PointArray(region.length / 2);
+            float sumX = 0, sumY = 0;
+            for (int i = 0; i < region.length; i += 2) {
+                regionPoints.add(region[i], region[i + 1]);
+                sumX += region[i];
+                sumY += region[i + 1];
+            }
+
+            /* reduced about the middle of the region, so that its images stay close to it */
+            Lattice translations = new Lattice(lattice[0], lattice[1], lattice[2], lattice[3]);
+            Affine[] cosetReps;
+            try {
+                cosetReps = new CosetClosure(translations).close(generators.toArray(new Affine[generators.size()]),
+                        sumX / regionPoints.size(), sumY / regionPoints.size());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Group " + conwaySymbol + ": " + e.getMessage(), e);
+            }
+
+            float tiledArea = regionPoints.polygonArea() * (1 + cosetReps.length);
+            if (Math.abs(tiledArea / translations.getCellArea() - 1) > AREA_TOLERANCE)
+                throw new IllegalArgumentException("Images of the fundamental region of group " + conwaySymbol +
+                        " have area " + tiledArea + ", but a cell has area " + translations.getCellArea());
+
+            definitions.put(conwaySymbol, new GroupDefinition(conwaySymbol, lattice, region, cosetReps));
+        }
+    }
+
+    public String getConwaySymbol() {
+        return conwaySymbol;
+    }
+
+    public float[] getLattice() {
+        /* {d1x, d1y, d2x, d2y} */
+        return lattice.clone();
+    }
+
+    public float[] getRegion() {
+        /* The vertices of the fundamental region, packed as (x, y) pairs. */
+        return region.clone();
+    }
+
+    public Affine[] getCosetReps() {
+        /* The coset reps about the center of the window, identity NOT included.  The caller may modify them. */
+
+        Affine[] result = new Affine[cosetReps.length];
+        for (int i = 0; i < cosetReps.length; i++) {
+            result[i] = new Affine(cosetReps[i]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,143 @@
+package hwatheod.wallpaper.geometry;
+
+import java.util.Arrays;
+
+/**
+ * A drawing held as one byte per pixel, an index into a palette of at most 256 colors, instead of the four
+ * bytes of an ARGB bitmap.  The app only paints a handful of colors, so nothing is lost.  The palette starts
+ * with the background and grows as colors are first painted.  getPixels() expands an area to ARGB, so that
+ * only the area shown needs the larger form, and only while it is shown.
+ *
+ * <p>Strokes are filled as by CellRaster, without antialiasing: a pixel is covered when its center lies
+ * within the stroke, a capsule of the segment and its round caps.  This is close to, but not the same as, a
+ * bitmap drawn through android.graphics.Canvas with an aliased Paint: Skia strokes the segment into a path,
+ * approximating the caps by curves, and fills that path with its own rounding of the edges, so pixels along
+ * the edges of a stroke may differ by one between the two.  A drawing stays on one kind of canvas while it is
+ * redrawn, undone and redone, so it is always consistent with itself.
+ */
+public class IndexedCanvas {
+    public static final int MAX_COLORS = 256;
+
+    private final int width, height;
+    private final byte[] data;  // width * height indices
+    private final int[] palette = new int[MAX_COLORS];
+    private int colorCount;
+
+    public IndexedCanvas(int width, int height, int background) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Size " + width + "x" + height);
+        this.width = width;
+        this.height = height;
+        data = new byte[width * height];
+        palette[0] = background;
+        colorCount = 1;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getBackground() {
+        return palette[0];
+    }
+
+    public byte[] getData() {
+        /* The indices themselves, for copying a checkpoint in and out. */
+        return data;
+    }
+
+    public int getColorCount() {
+        return colorCount;
+    }
+
+    public int indexOf(int color) {
+        /* The palette index of color, adding it if it is new.  Throws IllegalArgumentException if the palette
+           is full. */
+
+        for (int i = 0; i < colorCount; i++) {
+            if (palette[i] == color)
+                return i;
+        }
+        if (colorCount == MAX_COLORS)
+            throw new IllegalArgumentException("More than " + MAX_COLORS + " colors");
+        palette[colorCount] = color;
+        return colorCount++;
+    }
+
+    public void clear() {
+        /* Fills the canvas with the background.  The palette is kept, as checkpoints refer to it. */
+        Arrays.fill(data, (byte)0);
+    }
+
+    public void copyTiles(IndexedCanvas from, CellTiling tiling) {
+        /* Carries the drawing on from, a canvas of the old size, over to this one of the new size as planned
+           by tiling, palette included, instead of replaying its strokes. */
+
+        if (tiling.getWidth() != width || tiling.getHeight() != height)
+            throw new IllegalArgumentException("Canvas does not match the tiling");
+        System.arraycopy(from.palette, 0, palette, 0, from.colorCount);
+        colorCount = from.colorCount;
+        tiling.copy(from.data, 0, data, 0);
+    }
+
+    public void drawLines(float[] lines, int pointCount, float strokeWidth, int color) {
+        /* Fills the segments made of the first pointCount points of lines, packed as for
+           android.graphics.Canvas.drawLines(), with round caps. */
+
+        byte index = (byte)indexOf(color);
+        float r = strokeWidth / 2;
+        for (int j = 0; j + 3 < 2*pointCount; j += 4) {
+            fillCapsule(lines[j], lines[j+1], lines[j+2], lines[j+3], r, index);
+        }
+    }
+
+    private void fillCapsule(float ax, float ay, float bx, float by, float r, byte index) {
+        /* Paints the pixels whose centers lie within r of the segment from a to b. */
+
+        int i0 = Math.max(0, (int)Math.floor(Math.min(ax, bx) - r));
+        int i1 = Math.min(width - 1, (int)Math.ceil(Math.max(ax, bx) + r));
+        int j0 = Math.max(0, (int)Math.floor(Math.min(ay, by) - r));
+        int j1 = Math.min(height - 1, (int)Math.ceil(Math.max(ay, by) + r));
+
+        float dx = bx - ax, dy = by - ay;
+        float lengthSquared = dx*dx + dy*dy;
+        float rSquared = r*r;
+        for (int j = j0; j <= j1; j++) {
+            float py = j + 0.5f - ay;
+            int row = j * width;
+            for (int i = i0; i <= i1; i++) {
+                float px = i + 0.5f - ax;
+                float t = (lengthSquared > 0) ? Math.max(0, Math.min(1, (px*dx + py*dy) / lengthSquared)) : 0;
+                float ex = px - t*dx, ey = py - t*dy;
+                if (ex*ex + ey*ey <= rSquared)
+                    data[row + i] = index;
+            }
+        }
+    }
+
+    public int getPixel(int x, int y) {
+        /* The ARGB color of the pixel at (x, y). */
+        return palette[data[y * width + x] & 0xff];
+    }
+
+    public void getPixels(int[] pixels, int offset, int stride, int x, int y, int w, int h) {
+        /* Expands the area of w x h pixels at (x, y) to ARGB colors, as android.graphics.Bitmap.getPixels()
+           does: row r goes to pixels[offset + r * stride], onwards. */
+
+        if (x < 0 || y < 0 || w < 0 || h < 0 || x + w > width || y + h > height)
+            throw new IllegalArgumentException("Area " + w + "x" + h + " at (" + x + ", " + y + ") is outside " +
+                    width + "x" + height);
+
+        for (int r = 0; r < h; r++) {
+            int from = (y + r) * width + x;
+            int to = offset + r * stride;
+            for (int i = 0; i < w; i++) {
+                pixels[to + i] = palette[data[from + i] & 0xff];
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package hwatheod.wallpaper.geometry;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds with buckets of logarithmic width, as in HdrHistogram: values
+ * below 16 have a bucket each, and every doubling above is split into 8 buckets, so that a value is known to
+ * within 12.5% over the whole range of a long in under 500 buckets.
+ *
+ * <p>Recording is lock-free and does not allocate: an atomic increment of a bucket and of the count, and
+ * atomic updates of the total and the maximum.  Threads may record while another reads, in which case the
+ * reader may miss the records in flight.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;  // buckets per doubling
+    private static final int BUCKET_COUNT = bucketOf(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    static int bucketOf(long value) {
+        /* The index of the bucket holding value, which must not be negative. */
+
+        if (value < 2 * SUB_BUCKETS)
+            return (int)value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * SUB_BUCKETS + (int)(value >>> shift);
+    }
+
+    static long bucketStart(int bucket) {
+        /* The smallest value held by the bucket. */
+
+        if (bucket < 2 * SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long)(bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    public void record(long nanos) {
+        /* Records a duration.  Negative durations, e.g. from clocks of different threads, count as 0. */
+
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long previous;
+        while (value > (previous = max.get())) {
+            if (max.compareAndSet(previous, value))
+                break;
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getMean() {
+        long n = count.get();
+        return (n == 0) ? 0 : total.get() / n;
+    }
+
+    public long getPercentile(double percentile) {
+        /* Returns a duration at least percentile percent of the records are no longer than, the largest value
+           of the bucket where that many are reached, but no more than the maximum.  0 if nothing was recorded. */
+
+        long n = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            n += buckets.get(i);
+        }
+        if (n == 0)
+            return 0;
+
+        long wanted = Math.max(1, (long)Math.ceil(n * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= wanted)
+                return Math.min(max.get(), (i + 1 < BUCKET_COUNT) ? bucketStart(i + 1) - 1 : Long.MAX_VALUE);
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        /* Forgets the records.  Records made while resetting may be partly kept. */
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+}
@@ -0,0 +1,149 @@
+package hwatheod.wallpaper.geometry;
+
+/**
+ * The lattice of translations n1*d1 + n2*d2 generated by two independent vectors d1, d2.  Instances are
+ * immutable, so a lattice may be shared between threads.
+ */
+public class Lattice {
+    private final float d1x, d1y, d2x, d2y;
+    private final float det;
+    private final float inverseDet, inverseD1x, inverseD1y;  // 0 where the divisor is 0
+
+    public Lattice(float d1x, float d1y, float d2x, float d2y) {
+        this.d1x = d1x;
+        this.d1y = d1y;
+        this.d2x = d2x;
+        this.d2y = d2y;
+        det = d1x * d2y - d2x * d1y;
+        if (det == 0)
+            throw new IllegalArgumentException("Translation vectors are not independent");
+        inverseDet = 1 / det;
+        inverseD1x = (d1x != 0) ? 1 / d1x : 0;
+        inverseD1y = (d1y != 0) ? 1 / d1y : 0;
+    }
+
+    public float[] getTranslationX() {
+        return new float[] {d1x, d2x};
+    }
+
+    public float[] getTranslationY() {
+        return new float[] {d1y, d2y};
+    }
+
+    public float getCellArea() {
+        return Math.abs(det);
+    }
+
+    public void reduce(float x, float y, float[] out) {
+        /* Translates (x, y) by a lattice vector so that it lies in the parallelogram spanned by
+           d1 and d2 at the origin.  The result is stored in out[0], out[1]. */
+
+        /* coordinates of (x, y) with respect to the basis d1, d2 */
+        float a = (x * d2y - y * d2x) / det;
+        float b = (y * d1x - x * d1y) / det;
+        float n1 = (float)Math.floor(a);
+        float n2 = (float)Math.floor(b);
+
+        out[0] = x - n1 * d1x - n2 * d2x;
+        out[1] = y - n1 * d1y - n2 * d2y;
+    }
+
+    public void getCoordinates(float x, float y, float[] out) {
+        /* Stores in out[0], out[1] the coordinates (a, b) of (x, y) with respect to the basis d1, d2,
+           so that (x, y) = a*d1 + b*d2. */
+
+        out[0] = (x * d2y - y * d2x) / det;
+        out[1] = (y * d1x - x * d1y) / det;
+    }
+
+    public boolean isLatticeVector(float x, float y, float tolerance) {
+        /* Whether (x, y) is a lattice vector, allowing an error of tolerance in each lattice coordinate. */
+
+        float a = (x * d2y - y * d2x) / det;
+        float b = (y * d1x - x * d1y) / det;
+        return Math.abs(a - Math.round(a)) < tolerance && Math.abs(b - Math.round(b)) < tolerance;
+    }
+
+    public float[] getCellBounds() {
+        /* Returns {left, top, right, bottom} of the bounding box of the parallelogram spanned by
+           d1 and d2 at the origin. */
+
+        return new float[] {
+                Math.min(Math.min(0, d1x), Math.min(d2x, d1x + d2x)),
+                Math.min(Math.min(0, d1y), Math.min(d2y, d1y + d2y)),
+                Math.max(Math.max(0, d1x), Math.max(d2x, d1x + d2x)),
+                Math.max(Math.max(0, d1y), Math.max(d2y, d1y + d2y))
+        };
+    }
+
+    public int getPoints(float minX, float minY, float maxX, float maxY, float[] out) {
+        /* Finds the lattice translations lying in the rectangle [minX, maxX] x [minY, maxY].
+           They are stored in out as packed (x, y) pairs, as many as fit, row by row.
+           Returns the total number found, which may be more than out can hold.
+           Each row is only visited over the range where it crosses the rectangle, so the cost is
+           about the number of points found, even for long thin rectangles across a skewed lattice.
+         */
+
+        /* range of lattice coordinates over the rectangle, each coordinate being linear in x and y */
+        float ax = d2y * inverseDet, ay = -d2x * inverseDet, bx = -d1y * inverseDet, by = d1x * inverseDet;
+        float minA = Math.min(minX * ax, maxX * ax) + Math.min(minY * ay, maxY * ay);
+        float maxA = Math.max(minX * ax, maxX * ax) + Math.max(minY * ay, maxY * ay);
+        float minB = Math.min(minX * bx, maxX * bx) + Math.min(minY * by, maxY * by);
+        float maxB = Math.max(minX * bx, maxX * bx) + Math.max(minY * by, maxY * by);
+
+        int n1Min = (int)Math.floor(minA), n1Max = (int)Math.ceil(maxA);
+        int n2Min = (int)Math.floor(minB), n2Max = (int)Math.ceil(maxB);
+        int count = 0;
+        for (int n2 = n2Min; n2 <= n2Max; n2++) {
+            /* The row n2 meets the rectangle for n1 in the intersection of the ranges solving the x and the
+               y bounds.  One more is tried at either end, so that rounding cannot lose a point. */
+            float rowX = n2 * d2x, rowY = n2 * d2y;
+            float from = n1Min, to = n1Max;
+            if (d1x != 0) {
+                float a1 = (minX - rowX) * inverseD1x, a2 = (maxX - rowX) * inverseD1x;
+                from = Math.max(from, Math.min(a1, a2));
+                to = Math.min(to, Math.max(a1, a2));
+            }
+            if (d1y != 0) {
+                float b1 = (minY - rowY) * inverseD1y, b2 = (maxY - rowY) * inverseD1y;
+                from = Math.max(from, Math.min(b1, b2));
+                to = Math.min(to, Math.max(b1, b2));
+            }
+
+            int first = Math.max(n1Min, (int)Math.ceil(from) - 1), last = Math.min(n1Max, (int)Math.floor(to) + 1);
+            for (int n1 = first; n1 <= last; n1++) {
+                float tx = n1 * d1x + rowX;
+                float ty = n1 * d1y + rowY;
+                if (tx >= minX && tx <= maxX && ty >= minY && ty <= maxY) {
+                    if (2*count + 1 < out.length) {
+                        out[2*count] = tx;
+                        out[2*count + 1] = ty;
+                    }
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    public float[] getOffsets(int width, int height, float margin) {
+        /* Returns the lattice translations, packed as (x0, y0, x1, y1, ...), for which the translate of
+           the parallelogram used by reduce() meets the window [-margin, width + margin] x [-margin, height + margin].
+
+           A point reduced by reduce() therefore lands inside the window only under translations in
+           this table.  A new table is built on every call, so callers keep it for as long as the window
+           stays the same.
+         */
+
+        float[] cellBounds = getCellBounds();
+
+        /* the translation (tx, ty) is wanted iff it lies in this rectangle */
+        float minX = -margin - cellBounds[2], maxX = width + margin - cellBounds[0];
+        float minY = -margin - cellBounds[3], maxY = height + margin - cellBounds[1];
+
+        int count = getPoints(minX, minY, maxX, maxY, new float[0]);
+        float[] offsets = new float[2 * count];
+        getPoints(minX, minY, maxX, maxY, offsets);
+        return offsets;
+    }
+}
@@ -0,0 +1,125 @@
+package hwatheod.wallpaper.geometry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes an opaque RGB PNG image row by row, so that an image far larger than memory can be produced in
+ * bands.  The compressed data is emitted in IDAT chunks as it is produced.
+ */
+public class PngWriter {
+    private static final byte[] SIGNATURE = {(byte)137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
+    private static final int CHUNK_SIZE = 64 * 1024;  // bytes of compressed data per IDAT chunk
+
+    private final OutputStream out;
+    private final int width, height;
+    private int rowsWritten;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final CRC32 crc = new CRC32();
+    private byte[] scanline;  // filter type byte, then RGB
+    private byte[] previous;  // previous scanline, for the Up filter
+    private byte[] compressed = new byte[CHUNK_SIZE];
+    private int compressedLength;
+
+    public PngWriter(OutputStream out, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Image size " + width + "x" + height);
+
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        scanline = new byte[1 + 3*width];
+        previous = new byte[1 + 3*width];
+
+        out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;  // bits per sample
+        header[9] = 2;  // color type RGB
+        header[10] = 0;  // deflate
+        header[11] = 0;  // adaptive filtering
+        header[12] = 0;  // no interlace
+        writeChunk("IHDR", header, header.length);
+    }
+
+    /**
+     * @param argb Pixels of rowCount rows, each of width pixels, from offset onwards.  Alpha is ignored.
+     */
+    public void writeRows(int[] argb, int offset, int rowCount) throws IOException {
+        if (rowsWritten + rowCount > height)
+            throw new IllegalStateException("More than " + height + " rows");
+
+        for (int row = 0; row < rowCount; row++) {
+            /* The Up filter: stroke art repeats a lot from row to row, so the differences are mostly 0. */
+            scanline[0] = 2;
+            int p = offset + row * width;
+            for (int x = 0; x < width; x++) {
+                int c = argb[p + x];
+                int i = 1 + 3*x;
+                byte r = (byte)(c >> 16), g = (byte)(c >> 8), b = (byte)c;
+                scanline[i] = (byte)(r - previous[i]);
+                scanline[i + 1] = (byte)(g - previous[i + 1]);
+                scanline[i + 2] = (byte)(b - previous[i + 2]);
+                previous[i] = r;
+                previous[i + 1] = g;
+                previous[i + 2] = b;
+            }
+            deflater.setInput(scanline);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+        }
+        rowsWritten += rowCount;
+    }
+
+    public void finish() throws IOException {
+        /* Writes the end of the image.  Does not close the stream. */
+
+        if (rowsWritten != height)
+            throw new IllegalStateException(rowsWritten + " of " + height + " rows written");
+
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate();
+        }
+        if (compressedLength > 0)
+            writeChunk("IDAT", compressed, compressedLength);
+        writeChunk("IEND", compressed, 0);
+        deflater.end();
+        out.flush();
+    }
+
+    private void deflate() throws IOException {
+        compressedLength += deflater.deflate(compressed, compressedLength, CHUNK_SIZE - compressedLength);
+        if (compressedLength == CHUNK_SIZE) {
+            writeChunk("IDAT", compressed, compressedLength);
+            compressedLength = 0;
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        byte[] word = new byte[4];
+        putInt(word, 0, length);
+        out.write(word);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+
+        crc.reset();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        putInt(word, 0, (int)crc.getValue());
+        out.write(word);
+    }
+
+    private static void putInt(byte[] bytes, int offset, int v) {
+        bytes[offset] = (byte)(v >>> 24);
+        bytes[offset + 1] = (byte)(v >>> 16);
+        bytes[offset + 2] = (byte)(v >>> 8);
+        bytes[offset + 3] = (byte)v;
+    }
+}
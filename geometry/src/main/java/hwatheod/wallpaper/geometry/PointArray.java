@@ -0,0 +1,103 @@
+package hwatheod.wallpaper.geometry;
+
+/**
+ * A growable list of points, packed as (x0, y0, x1, y1, ...) in a single float array so that it can
+ * be handed to transforms and drawing calls without copying.
+ */
+public class PointArray {
+    private float[] coords;
+    private int size;  // number of points
+
+    public PointArray() {
+        this(16);
+    }
+
+    public PointArray(int capacity) {
+        coords = new float[2 * Math.max(capacity, 1)];
+    }
+
+    public PointArray(float[][] points, float offsetX, float offsetY) {
+        this(points.length);
+        for (float[] point : points) {
+            add(point[0] + offsetX, point[1] + offsetY);
+        }
+    }
+
+    public void add(float x, float y) {
+        if (2*size == coords.length) {
+            float[] grown = new float[2 * coords.length];
+            System.arraycopy(coords, 0, grown, 0, 2*size);
+            coords = grown;
+        }
+        coords[2*size] = x;
+        coords[2*size + 1] = y;
+        size++;
+    }
+
+    public void addSegments(float[] points, int pointCount) {
+        /* Adds the segments of the polyline through pointCount points, two points each as for drawLines(). */
+
+        for (int i = 1; i < pointCount; i++) {
+            add(points[2*i - 2], points[2*i - 1]);
+            add(points[2*i], points[2*i + 1]);
+        }
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public float getX(int i) {
+        return coords[2*i];
+    }
+
+    public float getY(int i) {
+        return coords[2*i + 1];
+    }
+
+    public float[] getPoint(int i) {
+        return new float[] { coords[2*i], coords[2*i + 1] };
+    }
+
+    /**
+     * @return The backing array.  Only the first 2*size() entries are points; it is replaced when the
+     *         array grows.
+     */
+    public float[] array() {
+        return coords;
+    }
+
+    public void computeBounds(float[] bounds) {
+        computeBounds(coords, size, bounds);
+    }
+
+    public static void computeBounds(float[] points, int pointCount, float[] bounds) {
+        /* Stores {left, top, right, bottom} of the bounding box of pointCount points, packed as (x, y)
+           pairs, in bounds. */
+
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < 2*pointCount; i += 2) {
+            minX = Math.min(minX, points[i]); maxX = Math.max(maxX, points[i]);
+            minY = Math.min(minY, points[i+1]); maxY = Math.max(maxY, points[i+1]);
+        }
+        bounds[0] = minX; bounds[1] = minY; bounds[2] = maxX; bounds[3] = maxY;
+    }
+
+    public float polygonArea() {
+        // area of the polygon with these vertices; used for the consistency checks of the groups
+        float sum = 0;
+        for (int i = 0; i < size; i++) {
+            int next = (i + 1) % size;
+            sum += getX(i) * getY(next) - getY(i) * getX(next);
+        }
+        return Math.abs(sum / 2);
+    }
+}
@@ -0,0 +1,105 @@
+package hwatheod.wallpaper.geometry;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the rendering pipeline: how much work the frames issued, and how long
+ * they and the replication took.  The renderers and views record into the shared instance from get(), from
+ * any thread.  Every update is a few atomic operations without locks or allocation, so the metrics are
+ * always on.  They can be read by the debug overlay of the views, or printed with dump().
+ *
+ * <p>The input-to-pixel latency is measured from the time of the oldest input not yet followed by a frame,
+ * e.g. the time stamp of a MotionEvent, to the end of the frame.  Both times must come from the same clock.
+ */
+public class RenderMetrics {
+    public enum Counter {
+        SEGMENTS,  // stroke segments given to the renderer
+        COSET_IMAGES,  // images of those segments under the coset reps, including the identity
+        TRANSLATES,  // segments drawn at lattice translates of the images
+        DRAW_CALLS  // drawLines() calls issued for them
+    }
+
+    public enum Timer {
+        FRAME,  // drawing a frame onto the screen
+        REPLICATION,  // replicating and drawing a batch of segments onto the drawing
+        INPUT_TO_PIXEL  // from an input to the end of the frame showing it
+    }
+
+    private static final RenderMetrics INSTANCE = new RenderMetrics();
+    private static final long NO_INPUT = Long.MIN_VALUE;
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+    private final LatencyHistogram[] timers = new LatencyHistogram[Timer.values().length];
+    private final AtomicLong pendingInput = new AtomicLong(NO_INPUT);  // time of the oldest input not yet shown
+
+    public RenderMetrics() {
+        for (int i = 0; i < timers.length; i++) {
+            timers[i] = new LatencyHistogram();
+        }
+    }
+
+    public static RenderMetrics get() {
+        /* The instance shared by the renderers and views of the app. */
+        return INSTANCE;
+    }
+
+    public void add(Counter counter, long amount) {
+        counters.addAndGet(counter.ordinal(), amount);
+    }
+
+    public long getCount(Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    public void record(Timer timer, long nanos) {
+        timers[timer.ordinal()].record(nanos);
+    }
+
+    public LatencyHistogram getHistogram(Timer timer) {
+        return timers[timer.ordinal()];
+    }
+
+    public void inputReceived(long nanos) {
+        /* Notes an input at the given time, unless an earlier one is still waiting for a frame. */
+        pendingInput.compareAndSet(NO_INPUT, nanos);
+    }
+
+    public void framePresented(long nanos) {
+        /* Ends a frame at the given time, which shows the inputs received before it was drawn. */
+
+        long input = pendingInput.getAndSet(NO_INPUT);
+        if (input != NO_INPUT)
+            record(Timer.INPUT_TO_PIXEL, nanos - input);
+    }
+
+    public void reset() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+        for (LatencyHistogram timer : timers) {
+            timer.reset();
+        }
+        pendingInput.set(NO_INPUT);
+    }
+
+    public void dump(PrintWriter writer, String prefix) {
+        /* Prints every counter, and the count and percentiles in milliseconds of every timer, one to a line. */
+
+        for (Counter counter : Counter.values()) {
+            writer.println(prefix + counter.name().toLowerCase(Locale.US) + " " + getCount(counter));
+        }
+        for (Timer timer : Timer.values()) {
+            LatencyHistogram histogram = getHistogram(timer);
+            writer.println(String.format(Locale.US, "%s%s count %d mean %.2f p50 %.2f p90 %.2f p99 %.2f max %.2f ms",
+                    prefix, timer.name().toLowerCase(Locale.US), histogram.getCount(),
+                    histogram.getMean() / NANOS_PER_MILLI, histogram.getPercentile(50) / NANOS_PER_MILLI,
+                    histogram.getPercentile(90) / NANOS_PER_MILLI, histogram.getPercentile(99) / NANOS_PER_MILLI,
+                    histogram.getMax() / NANOS_PER_MILLI));
+        }
+        writer.flush();
+    }
+}
@@ -0,0 +1,131 @@
+package hwatheod.wallpaper.geometry;
+
+/**
+ * Computes the images of a set of line segments under a wallpaper group within a window, as the segments
+ * a renderer draws: the images under the coset reps, and every translate of those which reaches into the
+ * window.  Each coset rep is applied to the whole array in one pass.  The translates are chosen for each
+ * segment on its own, so the result does not depend on how the segments of a stroke are batched.
+ * Segments are packed as in android.graphics.Canvas.drawLines(): (x0, y0, x1, y1) per segment.
+ * An instance holds scratch buffers, so it must only be used from one thread.
+ *
+ * <p>A translate is drawn exactly when the bounding box of the segment, grown by the reach allowed for the
+ * stroke width, meets the window, closed, when moved by it.  So no translate with ink in the window is left
+ * out, and none is drawn twice.  Those translates are the lattice points of a rectangle.  For the short
+ * segments of a stroke they are picked from a table of Lattice.getOffsets(), widened by TABLE_HALF_EXTENT
+ * and the reach, which each instance builds for itself and keeps until the reach changes; a longer segment
+ * has them found by Lattice.getPoints() in closed form.
+ */
+public class SegmentReplicator {
+    private static final float TABLE_HALF_EXTENT = 32;  // half the largest segment extent the offset table covers
+
+    private final WallpaperGroup group;
+    private final int width, height;
+
+    // Only images reaching into the rows [top, bottom) are kept, allowing reach for the stroke width.
+    private int top = Integer.MIN_VALUE, bottom = Integer.MAX_VALUE;
+    private float reach;
+    private float[] offsets;  // the translates of the table, for offsetsReach
+    private float offsetsReach;
+
+    // scratch objects, kept so that replicating does not allocate once the buffers have grown
+    private float[] image = new float[0];  // the segments under one coset rep
+    private float[] reducedCenter = new float[2];
+    private float[] translates = new float[64];  // packed (dx, dy) pairs
+
+    public SegmentReplicator(WallpaperGroup group, int width, int height) {
+        this.group = group;
+        this.width = width;
+        this.height = height;
+    }
+
+    public WallpaperGroup getGroup() {
+        return group;
+    }
+
+    public void setBand(int top, int bottom, float reach) {
+        this.top = top;
+        this.bottom = bottom;
+        this.reach = reach;
+    }
+
+    /**
+     * @param segments The segments, two points each.
+     * @param pointCount Number of points in segments, twice the number of segments.
+     * @param lines Receives the segments of every image.
+     * @return The number of segments added.
+     */
+    public int replicate(float[] segments, int pointCount, PointArray lines) {
+        if (pointCount < 2)
+            return 0;
+
+        if (image.length < 2*pointCount)
+            image = new float[2*pointCount];
+
+        if (offsets == null || offsetsReach != reach) {
+            offsets = group.getLattice().getOffsets(width, height, TABLE_HALF_EXTENT + reach);
+            offsetsReach = reach;
+        }
+        int copies = applyTranslations(segments, pointCount, offsets, lines);
+        float[] cosetReps = group.getPackedCosetReps();
+        for (int k = 0; 6*k < cosetReps.length; k++) {
+            Affine.mapPoints(cosetReps, k, image, 0, segments, 0, pointCount);
+            copies += applyTranslations(image, pointCount, offsets, lines);
+        }
+        return copies;
+    }
+
+    private int applyTranslations(float[] points, int pointCount, float[] offsets, PointArray lines) {
+        Lattice lattice = group.getLattice();
+        float windowTop = Math.max(0, top), windowBottom = Math.min(height, bottom);
+
+        int copies = 0;
+        for (int j = 0; j + 3 < 2*pointCount; j += 4) {
+            float x0 = points[j], y0 = points[j+1], x1 = points[j+2], y1 = points[j+3];
+            float left = Math.min(x0, x1) - reach, right = Math.max(x0, x1) + reach;
+            float segmentTop = Math.min(y0, y1) - reach, segmentBottom = Math.max(y0, y1) + reach;
+
+            if (Math.abs(x1 - x0) > 2*TABLE_HALF_EXTENT || Math.abs(y1 - y0) > 2*TABLE_HALF_EXTENT) {
+                copies += addLongSegment(x0, y0, x1, y1, -right, windowTop - segmentBottom,
+                        width - left, windowBottom - segmentTop, lines);
+                continue;
+            }
+
+            /* The table holds every translate which can move the reduced center of the segment, and so its
+               box, within the widened window.  Each is checked against the box exactly. */
+            float centerX = (x0 + x1) / 2;
+            float centerY = (y0 + y1) / 2;
+            lattice.reduce(centerX, centerY, reducedCenter);
+            float reducedX = reducedCenter[0] - centerX, reducedY = reducedCenter[1] - centerY;
+            for (int i = 0; i < offsets.length; i += 2) {
+                float dx = reducedX + offsets[i];
+                float dy = reducedY + offsets[i+1];
+                if (right + dx >= 0 && left + dx <= width &&
+                        segmentBottom + dy >= windowTop && segmentTop + dy <= windowBottom) {
+                    lines.add(x0 + dx, y0 + dy);
+                    lines.add(x1 + dx, y1 + dy);
+                    copies++;
+                }
+            }
+        }
+        return copies;
+    }
+
+    private int addLongSegment(float x0, float y0, float x1, float y1,
+                               float minX, float minY, float maxX, float maxY, PointArray lines) {
+        /* Adds the translates (dx, dy) of a segment in [minX, maxX] x [minY, maxY], too long for the table. */
+
+        Lattice lattice = group.getLattice();
+        int count = lattice.getPoints(minX, minY, maxX, maxY, translates);
+        if (2*count > translates.length) {
+            translates = new float[4*count];
+            lattice.getPoints(minX, minY, maxX, maxY, translates);
+        }
+
+        for (int i = 0; i < 2*count; i += 2) {
+            float dx = translates[i], dy = translates[i+1];
+            lines.add(x0 + dx, y0 + dy);
+            lines.add(x1 + dx, y1 + dy);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,179 @@
+package hwatheod.wallpaper.geometry;
+
+/**
+ * Conditions the touch samples of a stroke before they are replicated.  Every segment drawn is multiplied by
+ * the number of coset reps and translates, so the dense samples of a fast digitizer are thinned out to the
+ * points the stroke needs to stay within a tolerance of the input.
+ *
+ * <p>The filter works as the samples arrive.  The last point output is the anchor.  A new sample replaces the
+ * candidate end of the segment from the anchor as long as every sample since the anchor stays within the
+ * tolerance of the segment, which drops samples along straight or gently curving stretches and keeps them at
+ * corners.  Otherwise the candidate is output and becomes the anchor.  A segment is also output once it is
+ * maxSegmentLength long, which bounds how far the drawn stroke trails the finger, or once it stands for
+ * MAX_PENDING samples, which bounds the work per sample while the finger rests or jitters in place.
+ *
+ * <p>Samples can first be smoothed, which takes out the jitter of the digitizer but moves the stroke towards
+ * the inside of curves.  The tolerance then applies to the smoothed samples.  The smoothed samples lag behind
+ * the raw ones, so the stroke still ends at the last raw sample.
+ *
+ * <p>simplify() is the Ramer-Douglas-Peucker algorithm over a whole stroke, for comparison.  It needs the
+ * whole stroke before anything can be drawn, and keeps about as many points.
+ */
+public class StrokeFilter {
+    public static final float DEFAULT_TOLERANCE = 0.75f;  // pixels, so that the error is not visible
+    public static final float DEFAULT_MAX_SEGMENT_LENGTH = 24;  // pixels
+    public static final int MAX_PENDING = 64;  // samples checked against the tolerance for each new one
+
+    private final float tolerance;  // largest distance of a sample from the stroke output
+    private final float maxSegmentLength;
+    private float smoothing;  // weight of the previous smoothed sample, 0 for none
+
+    private boolean started;
+    private float anchorX, anchorY;
+    private float smoothX, smoothY;
+    private float lastX, lastY;  // the last raw sample
+    private PointArray pending = new PointArray(64);  // samples since the anchor; the last one is the candidate
+
+    public StrokeFilter() {
+        this(DEFAULT_TOLERANCE, DEFAULT_MAX_SEGMENT_LENGTH);
+    }
+
+    public StrokeFilter(float tolerance, float maxSegmentLength) {
+        this.tolerance = tolerance;
+        this.maxSegmentLength = maxSegmentLength;
+    }
+
+    public float getTolerance() {
+        return tolerance;
+    }
+
+    public float getMaxSegmentLength() {
+        return maxSegmentLength;
+    }
+
+    public float getSmoothing() {
+        return smoothing;
+    }
+
+    public void setSmoothing(float smoothing) {
+        /* Sets the weight, in [0, 1), of the previous smoothed sample in the next one.  0 turns smoothing off. */
+        if (smoothing < 0 || smoothing >= 1)
+            throw new IllegalArgumentException("Smoothing " + smoothing);
+        this.smoothing = smoothing;
+    }
+
+    public void reset() {
+        /* Starts a new stroke. */
+        started = false;
+        pending.clear();
+    }
+
+    public void add(float x, float y, PointArray out) {
+        /* Takes the next sample of the stroke, adding the points which are now final to out. */
+
+        lastX = x;
+        lastY = y;
+        if (!started) {
+            started = true;
+            smoothX = x;
+            smoothY = y;
+            anchorX = x;
+            anchorY = y;
+            out.add(x, y);
+            return;
+        }
+
+        smoothX = smoothing * smoothX + (1 - smoothing) * x;
+        smoothY = smoothing * smoothY + (1 - smoothing) * y;
+        x = smoothX;
+        y = smoothY;
+
+        if (!pending.isEmpty()) {
+            float dx = x - anchorX, dy = y - anchorY;
+            if (pending.size() == MAX_PENDING || dx*dx + dy*dy > maxSegmentLength * maxSegmentLength
+                    || !pendingWithinTolerance(x, y)) {
+                anchorX = pending.getX(pending.size() - 1);
+                anchorY = pending.getY(pending.size() - 1);
+                out.add(anchorX, anchorY);
+                pending.clear();
+            }
+        }
+        pending.add(x, y);
+    }
+
+    public void finish(PointArray out) {
+        /* Ends the stroke, adding the candidate, if any, to out, then the last raw sample if smoothing left the
+           candidate short of it. */
+
+        if (!pending.isEmpty()) {
+            float x = pending.getX(pending.size() - 1), y = pending.getY(pending.size() - 1);
+            out.add(x, y);
+            if (x != lastX || y != lastY)
+                out.add(lastX, lastY);
+        }
+        reset();
+    }
+
+    private boolean pendingWithinTolerance(float x, float y) {
+        /* Whether every pending sample lies within the tolerance of the segment from the anchor to (x, y). */
+
+        float[] points = pending.array();
+        for (int i = 0; i < pending.size(); i++) {
+            if (segmentDistanceSquared(points[2*i], points[2*i + 1], anchorX, anchorY, x, y) > tolerance * tolerance)
+                return false;
+        }
+        return true;
+    }
+
+    static float segmentDistanceSquared(float px, float py, float ax, float ay, float bx, float by) {
+        /* The square of the distance from p to the segment from a to b. */
+
+        float dx = bx - ax, dy = by - ay;
+        float lengthSquared = dx*dx + dy*dy;
+        float t = (lengthSquared > 0) ? Math.max(0, Math.min(1, ((px - ax)*dx + (py - ay)*dy) / lengthSquared)) : 0;
+        float ex = px - ax - t*dx, ey = py - ay - t*dy;
+        return ex*ex + ey*ey;
+    }
+
+    public static void simplify(float[] points, int pointCount, float tolerance, PointArray out) {
+        /* Adds to out the points of the polyline through pointCount points which the Ramer-Douglas-Peucker
+           algorithm keeps with the given tolerance. */
+
+        if (pointCount == 0)
+            return;
+        boolean[] keep = new boolean[pointCount];
+        keep[0] = true;
+        keep[pointCount - 1] = true;
+
+        /* ranges still to be split, as a stack of (first, last) index pairs */
+        int[] stack = new int[2 * pointCount];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = pointCount - 1;
+        while (top > 0) {
+            int last = stack[--top], first = stack[--top];
+            float worst = tolerance * tolerance;
+            int split = -1;
+            for (int i = first + 1; i < last; i++) {
+                float d = segmentDistanceSquared(points[2*i], points[2*i + 1],
+                        points[2*first], points[2*first + 1], points[2*last], points[2*last + 1]);
+                if (d > worst) {
+                    worst = d;
+                    split = i;
+                }
+            }
+            if (split >= 0) {
+                keep[split] = true;
+                stack[top++] = first;
+                stack[top++] = split;
+                stack[top++] = split;
+                stack[top++] = last;
+            }
+        }
+
+        for (int i = 0; i < pointCount; i++) {
+            if (keep[i])
+                out.add(points[2*i], points[2*i + 1]);
+        }
+    }
+}
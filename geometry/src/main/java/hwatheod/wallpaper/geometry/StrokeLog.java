@@ -0,0 +1,419 @@
+package hwatheod.wallpaper.geometry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Append-only record of a drawing: the wallpaper group it is drawn in, then every stroke with its color,
+ * width and points.  Replaying the strokes through the renderer rebuilds the drawing, at any window size.
+ *
+ * <p>The encoding is compact so that the log can be written out after every stroke.  It starts with a magic
+ * number and a group record, followed by one record per stroke:
+ * <pre>
+ *   stroke:  RECORD_STROKE, color (4 bytes), width, point count, points
+ * </pre>
+ * Widths and points are in the units of WallpaperGroup, so that the drawing keeps its shape at any scale, and
+ * are quantized to 1/QUANTUM of a unit.  Points are relative to the origin, normally the center of the window,
+ * on which the groups are centered.  Each point is stored as the difference from the
+ * previous one.  Counts and differences are varints, so a typical point takes 2 bytes.
+ * A record cut short, e.g. by the app being killed while writing, is dropped when the log is read.
+ *
+ * <p>Logs written before points were kept in units have the magic number "WPL1" and their points in pixels.
+ * read() converts them to the current format, "WPL2", at a scale given by the caller.
+ *
+ * <p>undoStroke() drops the last stroke from the log but keeps its record, so that redoStroke() can bring it
+ * back until a new stroke is recorded.
+ */
+public class StrokeLog {
+    private static final int MAGIC = 0x57504c32;  // "WPL2"
+    private static final int MAGIC_PIXELS = 0x57504c31;  // "WPL1", with points and widths in pixels
+    private static final int RECORD_GROUP = 1;
+    private static final int RECORD_STROKE = 2;
+    private static final float QUANTUM = 8;
+
+    /**
+     * Receives the strokes of the log on replay().
+     */
+    public interface Listener {
+        /**
+         * @param points The points of the stroke in window coordinates, packed as (x0, y0, x1, y1, ...).
+         *               The array is reused for the next stroke.
+         */
+        void onStroke(int color, float width, float[] points, int pointCount);
+    }
+
+    private byte[] bytes = new byte[1024];
+    private int length;  // bytes of bytes in the log
+    private int redoLength;  // bytes of bytes holding records, including undone strokes which can be redone
+    private String conwaySymbol;
+    private int strokeCount;
+    private int redoCount;  // strokes which can be redone
+    private int[] strokeOffsets = new int[64];  // offset of the record of each stroke, including undone ones
+    private float originX, originY;
+    private float scale = 1;  // pixels per unit of the window the points are recorded and replayed in
+
+    private boolean converted;  // whether read() converted the log from the pixel format
+
+    private float[] replayPoints = new float[256];
+
+    public StrokeLog(String conwaySymbol) {
+        startDrawing(conwaySymbol);
+    }
+
+    public void startDrawing(String conwaySymbol) {
+        /* Discards every stroke and starts a new drawing in the given group. */
+
+        int index = symbolIndex(conwaySymbol);
+        if (index < 0)
+            throw new IllegalArgumentException("Unknown wallpaper group " + conwaySymbol);
+
+        this.conwaySymbol = conwaySymbol;
+        length = 0;
+        strokeCount = 0;
+        redoCount = 0;
+        writeInt(MAGIC);
+        writeByte(RECORD_GROUP);
+        writeByte(index);
+        redoLength = length;
+    }
+
+    public String getConwaySymbol() {
+        return conwaySymbol;
+    }
+
+    public int getStrokeCount() {
+        return strokeCount;
+    }
+
+    public boolean canUndo() {
+        return strokeCount > 0;
+    }
+
+    public boolean canRedo() {
+        return redoCount > 0;
+    }
+
+    public boolean undoStroke() {
+        if (strokeCount == 0)
+            return false;
+        strokeCount--;
+        redoCount++;
+        length = strokeOffsets[strokeCount];
+        return true;
+    }
+
+    public boolean redoStroke() {
+        if (redoCount == 0)
+            return false;
+        strokeCount++;
+        redoCount--;
+        length = (redoCount > 0) ? strokeOffsets[strokeCount] : redoLength;
+        return true;
+    }
+
+    /**
+     * @return The number of bytes of the encoded log.  Changes by whole records, so that the bytes from an
+     *         earlier, smaller length onwards can be appended to a file holding the log up to that length.
+     */
+    public int length() {
+        return length;
+    }
+
+    public void setOrigin(float x, float y) {
+        /* Sets the point to which recorded points are relative, and at which they are replayed. */
+        originX = x;
+        originY = y;
+    }
+
+    public float getOriginX() {
+        return originX;
+    }
+
+    public float getOriginY() {
+        return originY;
+    }
+
+    public void setScale(float scale) {
+        /* Sets the pixels per unit of the group, by which recorded points are divided and replayed points multiplied. */
+        this.scale = scale;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    public float quantizeX(float x) {
+        /* x as it is recorded and comes back from replay(), so that a stroke drawn through quantized points
+           looks the same replayed, to the pixel. */
+        return Math.round((x - originX) / scale * QUANTUM) / QUANTUM * scale + originX;
+    }
+
+    public float quantizeY(float y) {
+        return Math.round((y - originY) / scale * QUANTUM) / QUANTUM * scale + originY;
+    }
+
+    public boolean addStroke(int color, float width, float[] points, int pointCount) {
+        /* Writes a whole stroke to the log, its points packed as (x0, y0, x1, y1, ...).  Strokes drawn at the
+           same time, e.g. by several fingers, are written as each ends.  Returns whether anything was written:
+           a stroke of a single point draws nothing, so it is not kept. */
+
+        if (pointCount < 2)
+            return false;
+
+        redoCount = 0;  // the undone strokes are overwritten
+        if (strokeCount == strokeOffsets.length) {
+            int[] grown = new int[2 * strokeOffsets.length];
+            System.arraycopy(strokeOffsets, 0, grown, 0, strokeCount);
+            strokeOffsets = grown;
+        }
+        strokeOffsets[strokeCount] = length;
+        writeByte(RECORD_STROKE);
+        writeInt(color);
+        writeVarint(Math.round(width / scale * QUANTUM));
+        writeVarint(pointCount);
+        int lastX = 0, lastY = 0;
+        for (int i = 0; i < pointCount; i++) {
+            int x = Math.round((points[2*i] - originX) / scale * QUANTUM);
+            int y = Math.round((points[2*i + 1] - originY) / scale * QUANTUM);
+            writeSignedVarint(x - lastX);
+            writeSignedVarint(y - lastY);
+            lastX = x;
+            lastY = y;
+        }
+        strokeCount++;
+        redoLength = length;
+        return true;
+    }
+
+    public void replay(Listener listener) {
+        /* Passes every stroke of the log, in order, to listener. */
+        replay(listener, 0, strokeCount);
+    }
+
+    public void replay(Listener listener, int fromStroke, int toStroke) {
+        /* Passes the strokes from index fromStroke up to, but not including, toStroke to listener. */
+        replay(listener, fromStroke, toStroke, originX, originY, scale);
+    }
+
+    public void replay(Listener listener, int fromStroke, int toStroke, float originX, float originY, float scale) {
+        /* As replay(), but at the given origin and scale instead of those of the log, which are left as they
+           are for its other users. */
+
+        if (fromStroke < 0 || toStroke > strokeCount || fromStroke > toStroke)
+            throw new IndexOutOfBoundsException("Strokes " + fromStroke + " to " + toStroke + " of " + strokeCount);
+        if (fromStroke == toStroke)
+            return;
+
+        try {
+            int end = (toStroke < strokeCount) ? strokeOffsets[toStroke] : length;
+            Decoder in = new Decoder(bytes, end);
+            in.seek(strokeOffsets[fromStroke]);
+            while (in.hasMore()) {
+                if (in.readByte() != RECORD_STROKE)
+                    throw new IOException("Unknown record");
+                int color = in.readInt();
+                float width = in.readVarint() / QUANTUM * scale;
+                int pointCount = in.readVarint();
+                if (replayPoints.length < 2*pointCount)
+                    replayPoints = new float[4*pointCount];
+                int x = 0, y = 0;
+                for (int i = 0; i < pointCount; i++) {
+                    x += in.readSignedVarint();
+                    y += in.readSignedVarint();
+                    replayPoints[2*i] = x / QUANTUM * scale + originX;
+                    replayPoints[2*i + 1] = y / QUANTUM * scale + originY;
+                }
+                listener.onStroke(color, width, replayPoints, pointCount);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt stroke log", e);  // checked when the log was read
+        }
+    }
+
+    public void writeTo(OutputStream out, int from) throws IOException {
+        /* Writes the encoded log from byte offset from onwards. */
+        out.write(bytes, from, length - from);
+    }
+
+    public boolean wasConverted() {
+        /* Whether read() converted the log from the pixel format, so that its encoding differs from the data
+           it was read from. */
+        return converted;
+    }
+
+    public static StrokeLog read(InputStream stream) throws IOException {
+        /* As read(stream, 1). */
+        return read(stream, 1);
+    }
+
+    public static StrokeLog read(InputStream stream, float pixelsPerUnit) throws IOException {
+        /* Reads a log written by writeTo().  A partial record at the end is dropped.  A log in the pixel format
+           is converted to units at pixelsPerUnit, so that it replays at that scale as it was drawn. */
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int n;
+        while ((n = stream.read(chunk)) > 0) {
+            buffer.write(chunk, 0, n);
+        }
+        byte[] data = buffer.toByteArray();
+
+        Decoder in = new Decoder(data, data.length);
+        int magic = in.readInt();
+        if (magic != MAGIC && magic != MAGIC_PIXELS)
+            throw new IOException("Not a stroke log");
+        StrokeLog log = new StrokeLog(readGroup(in));
+        int end = in.position();
+        int strokes = 0;
+        try {
+            while (in.hasMore()) {
+                int start = in.position();
+                if (in.readByte() != RECORD_STROKE)
+                    throw new IOException("Unknown record");
+                in.readInt();
+                in.readVarint();
+                int pointCount = in.readVarint();
+                for (int i = 0; i < 2*pointCount; i++) {
+                    in.readSignedVarint();
+                }
+                end = in.position();
+                if (strokes == log.strokeOffsets.length) {
+                    int[] grown = new int[2 * strokes];
+                    System.arraycopy(log.strokeOffsets, 0, grown, 0, strokes);
+                    log.strokeOffsets = grown;
+                }
+                log.strokeOffsets[strokes++] = start;
+            }
+        } catch (EOFException e) {
+            // partial record at the end
+        }
+
+        log.bytes = data;
+        log.length = end;
+        log.redoLength = end;
+        log.strokeCount = strokes;
+        return (magic == MAGIC_PIXELS) ? log.toUnits(pixelsPerUnit) : log;
+    }
+
+    private StrokeLog toUnits(float pixelsPerUnit) {
+        /* A copy of this log of pixels in the current format, its points and widths divided by pixelsPerUnit. */
+
+        final StrokeLog units = new StrokeLog(conwaySymbol);
+        units.setScale(pixelsPerUnit);
+        replay(new Listener() {
+            @Override
+            public void onStroke(int color, float width, float[] points, int pointCount) {
+                units.addStroke(color, width, points, pointCount);
+            }
+        }, 0, strokeCount, 0, 0, 1);
+        units.setScale(1);
+        units.converted = true;
+        return units;
+    }
+
+    private static String readGroup(Decoder in) throws IOException {
+        if (in.readByte() != RECORD_GROUP)
+            throw new IOException("Missing group");
+        int index = in.readByte();
+        if (index >= WallpaperGroup.CONWAY_SYMBOLS.length)
+            throw new IOException("Unknown group " + index);
+        return WallpaperGroup.CONWAY_SYMBOLS[index];
+    }
+
+    private static int symbolIndex(String conwaySymbol) {
+        for (int i = 0; i < WallpaperGroup.CONWAY_SYMBOLS.length; i++) {
+            if (WallpaperGroup.CONWAY_SYMBOLS[i].equals(conwaySymbol))
+                return i;
+        }
+        return -1;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > bytes.length) {
+            byte[] grown = new byte[Math.max(2 * bytes.length, length + extra)];
+            System.arraycopy(bytes, 0, grown, 0, length);
+            bytes = grown;
+        }
+    }
+
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        bytes[length++] = (byte)b;
+    }
+
+    private void writeInt(int v) {
+        ensureCapacity(4);
+        bytes[length++] = (byte)(v >>> 24);
+        bytes[length++] = (byte)(v >>> 16);
+        bytes[length++] = (byte)(v >>> 8);
+        bytes[length++] = (byte)v;
+    }
+
+    private void writeVarint(int v) {
+        ensureCapacity(5);
+        while ((v & ~0x7f) != 0) {
+            bytes[length++] = (byte)((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        bytes[length++] = (byte)v;
+    }
+
+    private void writeSignedVarint(int v) {
+        writeVarint((v << 1) ^ (v >> 31));  // zigzag, so that small negative values stay short
+    }
+
+    /*
+      Reads the encoding, throwing EOFException at the end of the data.
+     */
+    private static class Decoder {
+        private final byte[] data;
+        private final int limit;
+        private int pos;
+
+        Decoder(byte[] data, int limit) {
+            this.data = data;
+            this.limit = limit;
+        }
+
+        int position() {
+            return pos;
+        }
+
+        void seek(int position) {
+            pos = position;
+        }
+
+        boolean hasMore() {
+            return pos < limit;
+        }
+
+        int readByte() throws EOFException {
+            if (pos >= limit)
+                throw new EOFException();
+            return data[pos++] & 0xff;
+        }
+
+        int readInt() throws EOFException {
+            return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        }
+
+        int readVarint() throws IOException {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                v |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0)
+                    return v;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        int readSignedVarint() throws IOException {
+            int v = readVarint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+    }
+}
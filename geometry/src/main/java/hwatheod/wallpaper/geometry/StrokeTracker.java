@@ -0,0 +1,196 @@
+package hwatheod.wallpaper.geometry;
+
+/**
+ * Follows the strokes of several pointers at once, e.g. the fingers on a touch screen, each by its pointer
+ * id.  Every stroke has its own StrokeFilter, and the segments let through for all of them go into one batch,
+ * so that a renderer replicates the new segments of every finger in one pass per frame, however many
+ * fingers there are.
+ *
+ * <p>A stroke begins with the first sample of a pointer not yet followed, with the color and width set at
+ * the time, and ends with up(), or with finishAll().  The whole stroke is then passed to the listener, e.g.
+ * to be written to a StrokeLog.  Strokes end in the order the pointers are lifted, which may differ from the
+ * order they were drawn in where they cross.
+ *
+ * <p>setFilter() sets the tolerance and smoothing of the StrokeFilter of the strokes begun from then on.
+ *
+ * <p>With setQuantization(), the points let through are snapped to those the StrokeLog records, so that the
+ * strokes drawn live and replayed from the log are the same to the pixel, e.g. after undo.
+ *
+ * <p>Once as many strokes have been drawn at once as will be again, following them does not allocate.
+ * An instance must only be used from one thread.
+ */
+public class StrokeTracker {
+    public static final int INITIAL_STROKES = 10;  // one per finger
+
+    /**
+     * Receives the strokes as they end.
+     */
+    public interface Listener {
+        /**
+         * @param points The points of the stroke after filtering, packed as (x0, y0, x1, y1, ...).
+         *               The array is reused for the next stroke.
+         */
+        void onStrokeEnd(int color, float width, float[] points, int pointCount);
+    }
+
+    // One stroke, followed while its pointer is down.
+    private static class Stroke {
+        int pointerId;
+        int color;
+        float width;
+        StrokeFilter filter = new StrokeFilter();
+        PointArray points = new PointArray(256);  // every point of the stroke after filtering
+    }
+
+    private final Listener listener;
+    private Stroke[] strokes = new Stroke[INITIAL_STROKES];  // the strokes in progress come first
+    private int activeCount;
+    private int color;
+    private float width;
+    private float tolerance = StrokeFilter.DEFAULT_TOLERANCE;  // of the filters of new strokes
+    private float smoothing;
+    private StrokeLog quantization;  // whose recorded points those let through are snapped to, or null
+
+    private PointArray segments = new PointArray(256);  // new segments of every stroke, two points each
+    private PointArray filteredPoints = new PointArray(16);  // scratch, for the points of one sample
+
+    public StrokeTracker(Listener listener) {
+        this.listener = listener;
+        for (int i = 0; i < strokes.length; i++) {
+            strokes[i] = new Stroke();
+        }
+    }
+
+    public void setStyle(int color, float width) {
+        /* Sets the color and width of the strokes begun from now on. */
+        this.color = color;
+        this.width = width;
+    }
+
+    public void setFilter(float tolerance, float smoothing) {
+        /* Sets the tolerance, in pixels, and smoothing, as for StrokeFilter.setSmoothing(), of the strokes begun
+           from now on. */
+
+        if (smoothing < 0 || smoothing >= 1)
+            throw new IllegalArgumentException("Smoothing " + smoothing);
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+    }
+
+    public void setQuantization(StrokeLog log) {
+        /* Snaps the points let through from now on to those log records, at its origin and scale at the time
+           of each point, or stops doing so if log is null. */
+        quantization = log;
+    }
+
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    public void add(int pointerId, float x, float y) {
+        /* Takes the next sample of the pointer's stroke, beginning the stroke if the pointer is not followed. */
+
+        int index = find(pointerId);
+        if (index < 0)
+            index = begin(pointerId);
+        Stroke stroke = strokes[index];
+        stroke.filter.add(x, y, filteredPoints);
+        addFilteredPoints(stroke);
+    }
+
+    public void up(int pointerId, float x, float y) {
+        /* Takes the last sample of the pointer's stroke and ends it.  Ignored if the pointer is not followed. */
+
+        int index = find(pointerId);
+        if (index < 0)
+            return;
+        Stroke stroke = strokes[index];
+        stroke.filter.add(x, y, filteredPoints);
+        end(index);
+    }
+
+    public void finishAll() {
+        /* Ends every stroke at its last sample, e.g. when the gesture is cancelled. */
+
+        while (activeCount > 0) {
+            end(activeCount - 1);
+        }
+    }
+
+    public void clear() {
+        /* Forgets the strokes in progress and the batch, without passing them to the listener.  Pointers still
+           down begin new strokes with their next samples. */
+
+        activeCount = 0;
+        segments.clear();
+    }
+
+    public PointArray getSegments() {
+        /* The segments added since the batch was last cleared, two points each.  The caller draws and then
+           clears them. */
+        return segments;
+    }
+
+    private int find(int pointerId) {
+        for (int i = 0; i < activeCount; i++) {
+            if (strokes[i].pointerId == pointerId)
+                return i;
+        }
+        return -1;
+    }
+
+    private int begin(int pointerId) {
+        if (activeCount == strokes.length) {
+            Stroke[] grown = new Stroke[2 * strokes.length];
+            System.arraycopy(strokes, 0, grown, 0, strokes.length);
+            for (int i = strokes.length; i < grown.length; i++) {
+                grown[i] = new Stroke();
+            }
+            strokes = grown;
+        }
+
+        Stroke stroke = strokes[activeCount];
+        stroke.pointerId = pointerId;
+        stroke.color = color;
+        stroke.width = width;
+        if (stroke.filter.getTolerance() != tolerance)
+            stroke.filter = new StrokeFilter(tolerance, StrokeFilter.DEFAULT_MAX_SEGMENT_LENGTH);
+        stroke.filter.setSmoothing(smoothing);
+        stroke.filter.reset();
+        stroke.points.clear();
+        return activeCount++;
+    }
+
+    private void end(int index) {
+        /* Finishes the stroke at index, takes it out of the strokes in progress and passes it to the listener. */
+
+        Stroke stroke = strokes[index];
+        stroke.filter.finish(filteredPoints);
+        addFilteredPoints(stroke);
+
+        /* keeps the strokes in progress first, the ended one just after them */
+        activeCount--;
+        strokes[index] = strokes[activeCount];
+        strokes[activeCount] = stroke;
+        listener.onStrokeEnd(stroke.color, stroke.width, stroke.points.array(), stroke.points.size());
+    }
+
+    private void addFilteredPoints(Stroke stroke) {
+        /* Adds the points let through by the filter of stroke to it, and its new segments to the batch. */
+
+        for (int i = 0; i < filteredPoints.size(); i++) {
+            float x = filteredPoints.getX(i), y = filteredPoints.getY(i);
+            if (quantization != null) {
+                x = quantization.quantizeX(x);
+                y = quantization.quantizeY(y);
+            }
+            int last = stroke.points.size() - 1;
+            if (last >= 0) {
+                segments.add(stroke.points.getX(last), stroke.points.getY(last));
+                segments.add(x, y);
+            }
+            stroke.points.add(x, y);
+        }
+        filteredPoints.clear();
+    }
+}
@@ -0,0 +1,81 @@
+package hwatheod.wallpaper.geometry;
+
+/**
+ * Pan and zoom over the infinite wallpaper: the map from drawing coordinates, in which the group is laid out,
+ * to the screen, screen = zoom * drawing + offset.  Since the pattern is periodic, a frame is made of copies of
+ * one lattice cell, one at each translate returned by getVisibleTranslates().
+ */
+public class Viewport {
+    public static final float MIN_ZOOM = 0.25f;  // bounds the number of cells in a frame
+    public static final float MAX_ZOOM = 8;
+
+    private float zoom = 1;
+    private float offsetX, offsetY;
+
+    public void reset() {
+        zoom = 1;
+        offsetX = 0;
+        offsetY = 0;
+    }
+
+    public void set(Viewport other) {
+        zoom = other.zoom;
+        offsetX = other.offsetX;
+        offsetY = other.offsetY;
+    }
+
+    public float getZoom() {
+        return zoom;
+    }
+
+    public void pan(float dx, float dy) {
+        /* Moves the pattern by (dx, dy) on the screen. */
+        offsetX += dx;
+        offsetY += dy;
+    }
+
+    public void zoom(float factor, float focusX, float focusY) {
+        /* Zooms by factor, within [MIN_ZOOM, MAX_ZOOM], keeping the point of the screen (focusX, focusY) fixed. */
+
+        float newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+        float x = toDrawingX(focusX), y = toDrawingY(focusY);
+        zoom = newZoom;
+        offsetX = focusX - zoom * x;
+        offsetY = focusY - zoom * y;
+    }
+
+    public float toDrawingX(float screenX) {
+        return (screenX - offsetX) / zoom;
+    }
+
+    public float toDrawingY(float screenY) {
+        return (screenY - offsetY) / zoom;
+    }
+
+    public void getValues(float[] values) {
+        /* Stores the map as a 3x3 matrix in row-major order, as for android.graphics.Matrix.setValues(). */
+
+        values[0] = zoom;
+        values[1] = 0;
+        values[2] = offsetX;
+        values[3] = 0;
+        values[4] = zoom;
+        values[5] = offsetY;
+        values[6] = 0;
+        values[7] = 0;
+        values[8] = 1;
+    }
+
+    /**
+     * Finds the lattice translations at which a copy of the cell is visible in the screen [0, width] x [0, height].
+     *
+     * @param cellBounds {left, top, right, bottom} of the cell, in drawing coordinates.
+     * @param out Receives the translations as packed (x, y) pairs, as many as fit.
+     * @return The total number found, which may be more than out can hold.
+     */
+    public int getVisibleTranslates(Lattice lattice, float[] cellBounds, int width, int height, float[] out) {
+        float left = toDrawingX(0), top = toDrawingY(0);
+        float right = toDrawingX(width), bottom = toDrawingY(height);
+        return lattice.getPoints(left - cellBounds[2], top - cellBounds[3], right - cellBounds[0], bottom - cellBounds[1], out);
+    }
+}
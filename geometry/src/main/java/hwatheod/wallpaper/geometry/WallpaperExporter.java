@@ -0,0 +1,71 @@
+package hwatheod.wallpaper.geometry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Renders the strokes of a log into a PNG image of any size, e.g. for printing, without a screen or the
+ * Android graphics classes.  The strokes and their images under the coset reps are drawn once, into a
+ * CellRaster at the target scale.  The image is then filled in horizontal bands by looking up each pixel
+ * in the cell, and each band is passed to the PNG encoder before the next is filled.  Memory therefore
+ * stays at the cell plus one band, however large the image.
+ */
+public class WallpaperExporter {
+    private static final int BAND_HEIGHT = 64;  // rows per band
+    private static final int BACKGROUND = 0xffffffff;
+
+    private final WallpaperGroup group;
+    private final float scale;
+    private final CellRaster cell;
+
+    public WallpaperExporter(StrokeLog log, float scale) {
+        /* Draws the strokes of log into the cell at scale pixels per unit of the group. */
+
+        this.scale = scale;
+
+        /* The groups are laid out around the center of the window, and the log keeps points relative to it,
+           so a window of size 0 puts both around the origin. */
+        group = new WallpaperGroup(log.getConwaySymbol(), 0, 0);
+        cell = new CellRaster(group.getLattice(), scale, BACKGROUND);
+
+        /* replayed at its own origin and scale, leaving those of the log to the screen it is drawn on */
+        log.replay(new StrokeLog.Listener() {
+            @Override
+            public void onStroke(int color, float width, float[] points, int pointCount) {
+                for (int i = 1; i < pointCount; i++) {
+                    drawSegment(points[2*i - 2], points[2*i - 1], points[2*i], points[2*i + 1], width / 2, color);
+                }
+            }
+        }, 0, log.getStrokeCount(), 0, 0, 1);
+    }
+
+    private void drawSegment(float x0, float y0, float x1, float y1, float radius, int color) {
+        cell.drawSegment(x0, y0, x1, y1, radius, color);
+        for (Affine m : group.getCosetReps()) {
+            cell.drawSegment(m.mapX(x0, y0), m.mapY(x0, y0), m.mapX(x1, y1), m.mapY(x1, y1), radius, color);
+        }
+    }
+
+    public CellRaster getCell() {
+        return cell;
+    }
+
+    public void writePng(int width, int height, OutputStream out) throws IOException {
+        /* Writes a width x height image of the pattern, centered on the center of the screen the strokes were
+           drawn on. */
+
+        PngWriter png = new PngWriter(out, width, height);
+        int[] band = new int[width * Math.min(BAND_HEIGHT, height)];
+        for (int bandTop = 0; bandTop < height; bandTop += BAND_HEIGHT) {
+            int rows = Math.min(BAND_HEIGHT, height - bandTop);
+            for (int row = 0; row < rows; row++) {
+                float y = (bandTop + row + 0.5f - height/2) / scale;
+                for (int x = 0; x < width; x++) {
+                    band[row*width + x] = cell.sample((x + 0.5f - width/2) / scale, y);
+                }
+            }
+            png.writeRows(band, 0, rows);
+        }
+        png.finish();
+    }
+}
@@ -0,0 +1,116 @@
+package hwatheod.wallpaper.geometry;
+
+/**
+ * The geometry of one of the 17 wallpaper groups, laid out in a window of the given size: a fundamental
+ * region, the lattice of translations, and coset representatives of the translation subgroup.
+ * Groups are identified by their Conway symbol, and laid out from their GroupDefinition.
+ *
+ * <p>The sizes of the groups are given in units, which the scale converts to pixels.  The group is scaled
+ * about the center of the window, (width/2, height/2), which the other geometry also uses as its origin.
+ */
+public class WallpaperGroup {
+    public static final String[] CONWAY_SYMBOLS = {
+            "o", "xx", "*x", "**", "632", "*632", "333", "*333", "3*3", "442", "*442", "4*2",
+            "2222", "22x", "22*", "*2222", "2*22"
+    };
+
+    private String conwaySymbol;
+    private PointArray fundamentalRegion; // fundamental region for the symmetry group
+    private float[] translationX;
+    private float[] translationY;  // the 2 translation vectors for the translation subgroup
+    private float scale;  // pixels per unit
+    private Lattice lattice;
+    private Affine[] cosetReps; // coset representatives of the translation subgroup in the symmetry group,
+                        // which can be applied to the fundamental region to get the fundamental tile
+                        // Identity is NOT included.
+    private Affine[] inverseCosetReps;  // the inverse of each of cosetReps
+    private float[] packedCosetReps;  // cosetReps packed for Affine.mapPoints(float[], int, ...)
+
+    public WallpaperGroup(String conwaySymbol, int width, int height) {
+        this(conwaySymbol, width, height, 1);
+    }
+
+    public WallpaperGroup(String conwaySymbol, int width, int height, float scale) {
+        if (!(scale > 0))
+            throw new IllegalArgumentException("Scale " + scale);
+        this.conwaySymbol = conwaySymbol;
+        this.scale = scale;
+
+        GroupDefinition definition = GroupDefinition.get(conwaySymbol);
+        float cx = width/2, cy = height/2;
+        float[] region = definition.getRegion();
+        fundamentalRegion = new PointArray(region.length / 2);
+        for (int i = 0; i < region.length; i += 2) {
+            fundamentalRegion.add(region[i] + cx, region[i + 1] + cy);
+        }
+        float[] d = definition.getLattice();
+        translationX = new float[] {d[0], d[2]};
+        translationY = new float[] {d[1], d[3]};
+        cosetReps = definition.getCosetReps();
+        for (Affine m : cosetReps) {
+            m.conjugateByTranslate(cx, cy);
+        }
+
+        if (scale != 1)
+            applyScale(width/2, height/2);
+        inverseCosetReps = new Affine[cosetReps.length];
+        for (int i = 0; i < cosetReps.length; i++) {
+            inverseCosetReps[i] = new Affine();
+            inverseCosetReps[i].setInverse(cosetReps[i]);
+        }
+        packedCosetReps = Affine.pack(cosetReps);
+        lattice = new Lattice(translationX[0], translationY[0], translationX[1], translationY[1]);
+    }
+
+    private void applyScale(float cx, float cy) {
+        /* Scales the group laid out above by scale about (cx, cy). */
+
+        PointArray region = new PointArray(fundamentalRegion.size());
+        for (int i = 0; i < fundamentalRegion.size(); i++) {
+            region.add(cx + scale * (fundamentalRegion.getX(i) - cx), cy + scale * (fundamentalRegion.getY(i) - cy));
+        }
+        fundamentalRegion = region;
+
+        translationX = new float[] {scale * translationX[0], scale * translationX[1]};
+        translationY = new float[] {scale * translationY[0], scale * translationY[1]};
+        for (Affine m : cosetReps) {
+            m.conjugateByScale(scale, cx, cy);
+        }
+    }
+
+    public String getConwaySymbol() {
+        return conwaySymbol;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    public PointArray getFundamentalRegion() {
+        return fundamentalRegion;
+    }
+
+    public float[] getTranslationX() {
+        return translationX;
+    }
+
+    public float[] getTranslationY() {
+        return translationY;
+    }
+
+    public Lattice getLattice() {
+        return lattice;
+    }
+
+    public Affine[] getCosetReps() {
+        return cosetReps;
+    }
+
+    public Affine[] getInverseCosetReps() {
+        return inverseCosetReps;
+    }
+
+    public float[] getPackedCosetReps() {
+        return packedCosetReps;
+    }
+}
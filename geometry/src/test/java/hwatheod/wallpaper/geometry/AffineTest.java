@@ -0,0 +1,102 @@
+package hwatheod.wallpaper.geometry;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class AffineTest {
+    private static final double ERROR_THRESHOLD = 0.001;
+
+    @Test
+    public void testRotateQuarterTurnIsExact() {
+        Affine m = new Affine();
+        m.setRotate(90, 10, 20);
+        float[] values = new float[9];
+        m.getValues(values);
+        assertEquals(values, new float[] {0, -1, 30, 1, 0, 10, 0, 0, 1});
+        assertFalse(m.isOrientationReversing());
+    }
+
+    @Test
+    public void testReflection() {
+        Affine m = new Affine();
+        m.setReflection(0, 0, 1, 1);  // the line y = x
+        assertEquals(m.mapX(3, 7), 7, ERROR_THRESHOLD);
+        assertEquals(m.mapY(3, 7), 3, ERROR_THRESHOLD);
+        assertTrue(m.isOrientationReversing());
+
+        m.setReflection(5, 0, 5, 10);  // the line x = 5
+        assertEquals(m.mapX(2, 4), 8, ERROR_THRESHOLD);
+        assertEquals(m.mapY(2, 4), 4, ERROR_THRESHOLD);
+    }
+
+    @Test
+    public void testPostConcatAppliesOtherAfterThis() {
+        Affine m = new Affine();
+        m.setRotate(90, 0, 0);
+        Affine t = new Affine();
+        t.setTranslate(5, 0);
+        m.postConcat(t);
+        assertEquals(m.mapX(1, 0), 5, ERROR_THRESHOLD);
+        assertEquals(m.mapY(1, 0), 1, ERROR_THRESHOLD);
+    }
+
+    @Test
+    public void testMapPointsInPlace() {
+        Affine m = new Affine();
+        m.setTranslate(1, 2);
+        float[] points = {0, 0, 3, 4};
+        m.mapPoints(points, 0, points, 0, 2);
+        assertEquals(points, new float[] {1, 2, 4, 6});
+    }
+
+    @Test
+    public void testConjugateByScale() {
+        /* a rotation about (10, 20), scaled by 3 about (100, 50), is the rotation about (-170, -40) */
+        Affine m = new Affine();
+        m.setRotate(60, 10, 20);
+        m.conjugateByScale(3, 100, 50);
+        Affine expected = new Affine();
+        expected.setRotate(60, -170, -40);
+        float[] values = new float[9], expectedValues = new float[9];
+        m.getValues(values);
+        expected.getValues(expectedValues);
+        for (int i = 0; i < 9; i++) {
+            assertEquals(values[i], expectedValues[i], ERROR_THRESHOLD);
+        }
+    }
+
+    @Test
+    public void testSetInverse() {
+        Affine m = new Affine();
+        m.setReflection(10, 20, 70, 45);
+        m.postTranslate(15, -5);
+        Affine inverse = new Affine();
+        assertTrue(inverse.setInverse(m));
+        inverse.postConcat(m);
+        float[] values = new float[9];
+        inverse.getValues(values);
+        float[] identity = {1, 0, 0, 0, 1, 0, 0, 0, 1};
+        for (int i = 0; i < 9; i++) {
+            assertEquals(values[i], identity[i], ERROR_THRESHOLD);
+        }
+    }
+
+    @Test
+    public void testPackedMapPoints() {
+        Affine rotate = new Affine(), reflect = new Affine();
+        rotate.setRotate(60, 3, 4);
+        reflect.setReflection(0, 0, 1, 2);
+        reflect.conjugateByTranslate(5, -1);  // now about the line through (5, -1) and (6, 1)
+        float[] packed = Affine.pack(new Affine[] {rotate, reflect});
+        assertEquals(packed.length, 12);
+
+        float[] src = {1, 2, -3, 7.5f}, dst = new float[4];
+        Affine.mapPoints(packed, 1, dst, 0, src, 0, 2);
+        assertEquals(dst[0], reflect.mapX(1, 2), ERROR_THRESHOLD);
+        assertEquals(dst[3], reflect.mapY(-3, 7.5f), ERROR_THRESHOLD);
+        assertEquals(reflect.mapX(6, 1), 6, ERROR_THRESHOLD);
+        assertEquals(reflect.mapY(6, 1), 1, ERROR_THRESHOLD);
+        Affine.mapPoints(packed, 0, dst, 0, src, 0, 2);
+        assertEquals(dst[2], rotate.mapX(-3, 7.5f), ERROR_THRESHOLD);
+    }
+}
@@ -0,0 +1,75 @@
+package hwatheod.wallpaper.geometry;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class CellTilingTest {
+    private static final float[][] LATTICES = {
+            {40, 0, 0, 40},
+            {50, 0, 25, 43.30127f},  // hexagonal
+            {37.5f, -12.25f, 9.75f, 61.5f},  // skewed
+    };
+
+    @Test
+    public void testCopiesCoverWindow() {
+        for (float[] d : LATTICES) {
+            Lattice lattice = new Lattice(d[0], d[1], d[2], d[3]);
+            CellTiling tiling = CellTiling.plan(lattice, 301, 499, 500, 300);
+            assertNotNull(tiling);
+
+            /* the source lies in the old window */
+            assertTrue(tiling.getSourceX() >= 0 && tiling.getSourceY() >= 0);
+            assertTrue(tiling.getSourceX() + tiling.getSourceWidth() <= 301);
+            assertTrue(tiling.getSourceY() + tiling.getSourceHeight() <= 499);
+
+            /* every pixel of the new window is covered, by copies within half a pixel of their place */
+            boolean[] covered = new boolean[500 * 300];
+            for (int i = 0; i < tiling.getCopyCount(); i++) {
+                assertTrue(Math.abs(tiling.getCopyErrorX(i)) <= 0.5f && Math.abs(tiling.getCopyErrorY(i)) <= 0.5f);
+                for (int y = Math.max(0, tiling.getCopyY(i)); y < Math.min(300, tiling.getCopyY(i) + tiling.getSourceHeight()); y++) {
+                    for (int x = Math.max(0, tiling.getCopyX(i)); x < Math.min(500, tiling.getCopyX(i) + tiling.getSourceWidth()); x++) {
+                        covered[y * 500 + x] = true;
+                    }
+                }
+            }
+            for (int k = 0; k < covered.length; k++) {
+                assertTrue(covered[k], "(" + k % 500 + ", " + k / 500 + ") of lattice " + d[0] + ", " + d[1]);
+            }
+        }
+    }
+
+    @Test
+    public void testCopyMatchesPattern() {
+        /* with whole pixel translations the copy is exact: the new window shows the pattern about its center */
+        Lattice lattice = new Lattice(40, 0, 10, 30);
+        int oldWidth = 121, oldHeight = 207, width = 180, height = 95;
+        byte[] from = new byte[oldWidth * oldHeight];
+        for (int y = 0; y < oldHeight; y++) {
+            for (int x = 0; x < oldWidth; x++) {
+                from[y * oldWidth + x] = pattern(lattice, x - oldWidth/2, y - oldHeight/2);
+            }
+        }
+
+        CellTiling tiling = CellTiling.plan(lattice, oldWidth, oldHeight, width, height);
+        byte[] to = new byte[3 + width * height];
+        tiling.copy(from, 0, to, 3);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(to[3 + y * width + x], pattern(lattice, x - width/2, y - height/2), "(" + x + ", " + y + ")");
+            }
+        }
+    }
+
+    private static byte pattern(Lattice lattice, int x, int y) {
+        /* a pattern with the translations of lattice, different at each pixel of a cell */
+        float[] reduced = new float[2];
+        lattice.reduce(x, y, reduced);
+        return (byte)(Math.round(reduced[0]) * 7 + Math.round(reduced[1]) * 13);
+    }
+
+    @Test
+    public void testNoCellFits() {
+        assertNull(CellTiling.plan(new Lattice(40, 0, 0, 40), 39, 500, 500, 500));
+        assertNotNull(CellTiling.plan(new Lattice(40, 0, 0, 40), 40, 40, 500, 500));
+    }
+}
@@ -0,0 +1,119 @@
+package hwatheod.wallpaper.geometry;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class CosetClosureTest {
+    private static final float TOLERANCE = 0.001f;
+
+    @DataProvider(name = "groups")
+    public static Object[][] groups() {
+        return WallpaperGroupTest.groups();
+    }
+
+    private static boolean sameCoset(Affine m1, Affine m2, Lattice lattice) {
+        /* compared entry by entry, independently of the keys used by CosetClosure */
+        float[] v1 = new float[9], v2 = new float[9];
+        m1.getValues(v1);
+        m2.getValues(v2);
+        return Math.abs(v1[0] - v2[0]) < TOLERANCE && Math.abs(v1[1] - v2[1]) < TOLERANCE &&
+                Math.abs(v1[3] - v2[3]) < TOLERANCE && Math.abs(v1[4] - v2[4]) < TOLERANCE &&
+                lattice.isLatticeVector(v1[2] - v2[2], v1[5] - v2[5], TOLERANCE);
+    }
+
+    private static Affine[] withIdentity(Affine[] reps) {
+        Affine[] elements = new Affine[reps.length + 1];
+        elements[0] = new Affine();
+        System.arraycopy(reps, 0, elements, 1, reps.length);
+        return elements;
+    }
+
+    /*
+      For every group, as laid out in a window: the reps and the identity lie in distinct cosets, and the
+      product of any two of them lies in the coset of one of them, so that they make up the whole group
+      modulo the lattice.
+     */
+    @Test(dataProvider = "groups")
+    public void testCosetsFormGroup(String conwaySymbol) {
+        WallpaperGroup g = new WallpaperGroup(conwaySymbol, 600, 400, 1.5f);
+        Lattice lattice = g.getLattice();
+        Affine[] elements = withIdentity(g.getCosetReps());
+        for (int i = 0; i < elements.length; i++) {
+            for (int j = 0; j < i; j++) {
+                assertFalse(sameCoset(elements[i], elements[j], lattice), conwaySymbol + ": " + i + " and " + j);
+            }
+        }
+
+        for (Affine m1 : elements) {
+            for (Affine m2 : elements) {
+                Affine product = new Affine(m1);
+                product.postConcat(m2);
+                int matches = 0;
+                for (Affine m : elements) {
+                    if (sameCoset(product, m, lattice))
+                        matches++;
+                }
+                assertEquals(matches, 1, conwaySymbol + ": " + m1 + " then " + m2);
+            }
+        }
+    }
+
+    @Test(dataProvider = "groups")
+    public void testRepsReducedIntoCell(String conwaySymbol) {
+        /* each rep moves the middle of the fundamental region by at most half a cell in each lattice coordinate */
+        WallpaperGroup g = new WallpaperGroup(conwaySymbol, 600, 400);
+        PointArray region = g.getFundamentalRegion();
+        float x = 0, y = 0;
+        for (int i = 0; i < region.size(); i++) {
+            x += region.getX(i) / region.size();
+            y += region.getY(i) / region.size();
+        }
+        float[] coordinates = new float[2];
+        for (Affine m : g.getCosetReps()) {
+            g.getLattice().getCoordinates(m.mapX(x, y) - x, m.mapY(x, y) - y, coordinates);
+            assertTrue(Math.abs(coordinates[0]) <= 0.5f + TOLERANCE && Math.abs(coordinates[1]) <= 0.5f + TOLERANCE,
+                    conwaySymbol + ": " + m);
+        }
+    }
+
+    @Test
+    public void testCosetsAcrossCellBoundary() {
+        /* a half turn about a corner of the cell around the origin is found once, whichever way it is reached */
+        Lattice lattice = new Lattice(100, 0, 0, 100);
+        Affine a = new Affine(), b = new Affine();
+        a.setRotate(180, 50, 50);
+        b.setRotate(180, -50, 50);
+        Affine[] reps = new CosetClosure(lattice).close(new Affine[] {a, b}, 0, 0);
+        assertEquals(reps.length, 1);
+    }
+
+    @Test
+    public void testGeneratorsFirst() {
+        Lattice lattice = new Lattice(300, 0, 0, 300);
+        Affine rotate = new Affine(), reflect = new Affine();
+        rotate.setRotate(90, 0, 0);
+        reflect.setReflection(0, 0, 1, 0);
+        Affine[] reps = new CosetClosure(lattice).close(new Affine[] {rotate, reflect}, 0, 0);
+        assertEquals(reps.length, 7);
+        assertTrue(sameCoset(reps[0], rotate, lattice));
+        assertTrue(sameCoset(reps[1], reflect, lattice));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".*does not preserve the lattice")
+    public void testLatticeNotPreserved() {
+        /* a square lattice has no six-fold rotations */
+        Affine rotate = new Affine();
+        rotate.setRotate(60, 0, 0);
+        new CosetClosure(new Lattice(300, 0, 0, 300)).close(new Affine[] {rotate}, 0, 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".*not in the lattice")
+    public void testTranslationNotInLattice() {
+        /* a glide by a third of the lattice vector along its axis */
+        Affine glide = new Affine();
+        glide.setReflection(0, 0, 0, 1);
+        glide.postTranslate(0, 100);
+        new CosetClosure(new Lattice(300, 0, 0, 300)).close(new Affine[] {glide}, 0, 0);
+    }
+}
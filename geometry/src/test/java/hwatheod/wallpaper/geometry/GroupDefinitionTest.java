@@ -0,0 +1,90 @@
+package hwatheod.wallpaper.geometry;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+public class GroupDefinitionTest {
+    private static final double ERROR_THRESHOLD = 0.001;
+
+    private static Map<String, GroupDefinition> parse(String text) throws IOException {
+        return GroupDefinition.parse(new StringReader(text));
+    }
+
+    @Test
+    public void testResourceDefinesEveryGroup() {
+        Map<String, GroupDefinition> definitions = GroupDefinition.getAll();
+        assertEquals(definitions.size(), WallpaperGroup.CONWAY_SYMBOLS.length);
+        for (String symbol : WallpaperGroup.CONWAY_SYMBOLS) {
+            assertEquals(GroupDefinition.get(symbol).getConwaySymbol(), symbol);
+        }
+    }
+
+    @Test
+    public void testPointGroupOrders() {
+        /* the number of coset reps, with the identity, is the order of the point group */
+        String[] symbols = {"o", "xx", "*x", "**", "632", "*632", "333", "*333", "3*3", "442", "*442", "4*2",
+                "2222", "22x", "22*", "*2222", "2*22"};
+        int[] orders = {1, 2, 2, 2, 6, 12, 3, 6, 6, 4, 8, 8, 2, 4, 4, 4, 4};
+        for (int i = 0; i < symbols.length; i++) {
+            assertEquals(GroupDefinition.get(symbols[i]).getCosetReps().length + 1, orders[i], symbols[i]);
+        }
+    }
+
+    @Test
+    public void testParse() throws IOException {
+        Map<String, GroupDefinition> definitions = parse(
+                "# comment\n" +
+                "group 333  # three rotations\n" +
+                "lattice 225 75r3 225 -75r3\n" +
+                "region 0 0  75 75r3  150 0  75 -75r3\n" +
+                "rotate 120 0 0\n");
+        GroupDefinition g = definitions.get("333");
+        assertEquals(g.getLattice()[1], 75 * Math.sqrt(3), ERROR_THRESHOLD);
+        assertEquals(g.getRegion().length, 8);
+
+        /* the generator comes first, then its square */
+        Affine[] reps = g.getCosetReps();
+        assertEquals(reps.length, 2);
+        assertEquals(reps[1].mapX(10, 0), 10 * Math.cos(Math.toRadians(240)), ERROR_THRESHOLD);
+        assertEquals(reps[1].mapY(10, 0), 10 * Math.sin(Math.toRadians(240)), ERROR_THRESHOLD);
+    }
+
+    @Test
+    public void testGlide() throws IOException {
+        GroupDefinition g = parse(
+                "group xx\n" +
+                "lattice 150 0 0 240\n" +
+                "region -75 -60  75 -60  75 60  -75 60\n" +
+                "glide 0 -60 0 60 120\n").get("xx");
+        /* reduced into the cell about the middle of the region: glides down by 120, then up by the lattice's 240 */
+        Affine glide = g.getCosetReps()[0];
+        assertEquals(glide.mapX(10, 5), -10, ERROR_THRESHOLD);
+        assertEquals(glide.mapY(10, 5), -115, ERROR_THRESHOLD);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "Line 2: .*")
+    public void testUnknownKeyword() throws IOException {
+        parse("group o\nskew 1 2\n");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".*area.*")
+    public void testInconsistentArea() throws IOException {
+        /* the region of 442 with only a half turn covers half a cell */
+        parse("group 442\nlattice 300 0 0 300\nregion 0 0  0 150  150 150  150 0\nrotate 180 0 0\n");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "Group 442: .*not in the lattice")
+    public void testGeneratorsNotClosing() throws IOException {
+        /* quarter turns about centers too close together generate translations shorter than the lattice's */
+        parse("group 442\nlattice 300 0 0 300\nregion 0 0  0 150  150 150  150 0\nrotate 90 0 0\nrotate 90 100 0\n");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownGroup() {
+        GroupDefinition.get("5555");
+    }
+}
@@ -0,0 +1,123 @@
+package hwatheod.wallpaper.geometry;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class IndexedCanvasTest {
+    private static final int WHITE = 0xffffffff;
+    private static final int BLUE = 0xff0000ff;
+    private static final int RED = 0xffff0000;
+
+    @Test
+    public void testPixelCentersWithinStroke() {
+        /* a horizontal stroke 4 pixels wide along y = 10: rows 8 to 11 have their centers within 2 of it */
+        IndexedCanvas canvas = new IndexedCanvas(40, 20, WHITE);
+        canvas.drawLines(new float[] {10, 10, 30, 10}, 2, 4, BLUE);
+        assertEquals(canvas.getPixel(20, 7), WHITE);
+        assertEquals(canvas.getPixel(20, 8), BLUE);
+        assertEquals(canvas.getPixel(20, 11), BLUE);
+        assertEquals(canvas.getPixel(20, 12), WHITE);
+
+        /* round caps */
+        assertEquals(canvas.getPixel(8, 9), BLUE);
+        assertEquals(canvas.getPixel(7, 9), WHITE);
+        assertEquals(canvas.getPixel(8, 8), WHITE);
+    }
+
+    @Test
+    public void testMatchesCellRaster() {
+        /* the same rule as CellRaster, on a square lattice as large as the canvas */
+        Lattice lattice = new Lattice(50, 0, 0, 50);
+        CellRaster raster = new CellRaster(lattice, 1, WHITE);
+        IndexedCanvas canvas = new IndexedCanvas(raster.getWidth(), raster.getHeight(), WHITE);
+        float[] lines = {5.5f, 7.25f, 40.1f, 33.7f, 20, 44, 21, 3};
+        canvas.drawLines(lines, 4, 6.5f, RED);
+        for (int i = 0; i < lines.length; i += 4) {
+            raster.drawSegment(lines[i], lines[i+1], lines[i+2], lines[i+3], 6.5f / 2, RED);
+        }
+        for (int y = 0; y < canvas.getHeight(); y++) {
+            for (int x = 0; x < canvas.getWidth(); x++) {
+                assertEquals(canvas.getPixel(x, y), raster.sample(x + 0.5f, y + 0.5f), "(" + x + ", " + y + ")");
+            }
+        }
+    }
+
+    @Test
+    public void testGetPixels() {
+        IndexedCanvas canvas = new IndexedCanvas(30, 30, WHITE);
+        canvas.drawLines(new float[] {0, 15, 30, 15}, 2, 2, BLUE);
+        canvas.drawLines(new float[] {15, 0, 15, 30}, 2, 2, RED);
+        assertEquals(canvas.getColorCount(), 3);
+
+        /* a 4x3 area into a buffer with stride 5, after an offset of 2 */
+        int[] pixels = new int[2 + 3*5];
+        canvas.getPixels(pixels, 2, 5, 13, 13, 4, 3);
+        for (int r = 0; r < 3; r++) {
+            for (int i = 0; i < 4; i++) {
+                assertEquals(pixels[2 + r*5 + i], canvas.getPixel(13 + i, 13 + r), "(" + i + ", " + r + ")");
+            }
+            assertEquals(pixels[2 + r*5 + 4], 0, "beyond the row");
+        }
+        assertEquals(pixels[2 + 5], BLUE);  // (13, 14)
+        assertEquals(pixels[2 + 5 + 1], RED);  // (14, 14), drawn later
+        assertEquals(pixels[2], WHITE);  // (13, 13)
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testGetPixelsOutside() {
+        new IndexedCanvas(30, 30, WHITE).getPixels(new int[100], 0, 10, 25, 0, 10, 10);
+    }
+
+    @Test
+    public void testPalette() {
+        IndexedCanvas canvas = new IndexedCanvas(10, 10, WHITE);
+        assertEquals(canvas.indexOf(WHITE), 0);
+        assertEquals(canvas.indexOf(BLUE), 1);
+        assertEquals(canvas.indexOf(BLUE), 1);
+        for (int i = 2; i < IndexedCanvas.MAX_COLORS; i++) {
+            assertEquals(canvas.indexOf(i), i);
+        }
+        try {
+            canvas.indexOf(RED);
+            fail("palette is full");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        /* the palette outlives clear(), as checkpoints refer to it */
+        canvas.drawLines(new float[] {0, 5, 10, 5}, 2, 2, BLUE);
+        canvas.clear();
+        assertEquals(canvas.getPixel(5, 5), WHITE);
+        assertEquals(canvas.indexOf(BLUE), 1);
+        assertEquals(canvas.getData().length, 100);
+    }
+
+    @Test
+    public void testCopyTiles() {
+        /* a dot at every translation of a square lattice, about the center of the canvas */
+        IndexedCanvas canvas = new IndexedCanvas(100, 90, WHITE);
+        for (int x = 50 - 100; x < 100; x += 20) {
+            for (int y = 45 - 100; y < 90; y += 20) {
+                canvas.drawLines(new float[] {x + 5, y + 7, x + 5, y + 7}, 2, 3, RED);
+            }
+        }
+
+        CellTiling tiling = CellTiling.plan(new Lattice(20, 0, 0, 20), 100, 90, 64, 130);
+        IndexedCanvas resized = new IndexedCanvas(64, 130, WHITE);
+        resized.copyTiles(canvas, tiling);
+        assertEquals(resized.getColorCount(), canvas.getColorCount());
+        for (int y = 0; y < 130; y++) {
+            for (int x = 0; x < 64; x++) {
+                int oldX = Math.floorMod(x - 32, 20) + 50, oldY = Math.floorMod(y - 65, 20) + 45;
+                assertEquals(resized.getPixel(x, y), canvas.getPixel(oldX, oldY), "(" + x + ", " + y + ")");
+            }
+        }
+        assertEquals(resized.getPixel(32 + 5, 65 + 7), RED);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCopyTilesOfAnotherSize() {
+        CellTiling tiling = CellTiling.plan(new Lattice(20, 0, 0, 20), 100, 90, 64, 130);
+        new IndexedCanvas(64, 120, WHITE).copyTiles(new IndexedCanvas(100, 90, WHITE), tiling);
+    }
+}
@@ -0,0 +1,68 @@
+package hwatheod.wallpaper.geometry;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverValues() {
+        /* every value lies in its bucket, and buckets are at most an eighth of their start wide */
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 1000, 999999, 1000000, 123456789, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(LatencyHistogram.bucketStart(bucket) <= value, "value " + value);
+            if (value < Long.MAX_VALUE) {
+                long next = LatencyHistogram.bucketStart(bucket + 1);
+                assertTrue(value < next, "value " + value);
+                assertTrue(next - LatencyHistogram.bucketStart(bucket) <= Math.max(1, LatencyHistogram.bucketStart(bucket) / 8));
+            }
+        }
+        for (int bucket = 0; bucket < LatencyHistogram.bucketOf(Long.MAX_VALUE); bucket++) {
+            assertEquals(LatencyHistogram.bucketOf(LatencyHistogram.bucketStart(bucket)), bucket);
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(histogram.getPercentile(50), 0);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);  // 1 to 1000 microseconds
+        }
+        assertEquals(histogram.getCount(), 1000);
+        assertEquals(histogram.getMax(), 1000000);
+        assertEquals(histogram.getMean(), 500500);
+        assertEquals(histogram.getPercentile(50), 500000, 500000 / 8.0);
+        assertEquals(histogram.getPercentile(99), 990000, 990000 / 8.0);
+        assertTrue(histogram.getPercentile(50) >= 500000);  // never under the true value
+        assertEquals(histogram.getPercentile(100), 1000000);
+
+        histogram.reset();
+        assertEquals(histogram.getCount(), 0);
+        assertEquals(histogram.getPercentile(99), 0);
+    }
+
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(i + offset);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(histogram.getCount(), 40000);
+        assertEquals(histogram.getMax(), 9999 + 3);
+    }
+}
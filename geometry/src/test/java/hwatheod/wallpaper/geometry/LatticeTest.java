@@ -0,0 +1,49 @@
+package hwatheod.wallpaper.geometry;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class LatticeTest {
+    private static final double ERROR_THRESHOLD = 0.001;
+
+    @Test
+    public void testReduce() {
+        Lattice lattice = new Lattice(100, 0, 50, 80);
+        float[] out = new float[2];
+        lattice.reduce(1234.5f, -567.25f, out);
+
+        /* the result is in the cell spanned by the vectors, and differs from the input by a lattice vector */
+        float a = (out[0] * 80 - out[1] * 50) / lattice.getCellArea();
+        float b = out[1] / 80;
+        assertTrue(a >= 0 && a < 1, "a = " + a);
+        assertTrue(b >= 0 && b < 1, "b = " + b);
+        float n2 = (-567.25f - out[1]) / 80;
+        float n1 = (1234.5f - out[0] - n2 * 50) / 100;
+        assertEquals(n1, Math.round(n1), ERROR_THRESHOLD);
+        assertEquals(n2, Math.round(n2), ERROR_THRESHOLD);
+    }
+
+    @Test
+    public void testGetPointsReportsTotal() {
+        Lattice lattice = new Lattice(10, 0, 0, 10);
+        float[] out = new float[4];
+        assertEquals(lattice.getPoints(0, 0, 20, 20, out), 9);
+        assertEquals(out, new float[] {0, 0, 10, 0});
+    }
+
+    @Test
+    public void testOffsetsAreNotShared() {
+        /* every call builds its own table, so a lattice holds no state for the threads sharing it */
+        Lattice lattice = new Lattice(100, 0, 50, 80);
+        float[] offsets = lattice.getOffsets(600, 400, 0);
+        float[] again = lattice.getOffsets(600, 400, 0);
+        assertNotSame(again, offsets);
+        assertEquals(again, offsets);
+        assertNotEquals(lattice.getOffsets(400, 600, 0), offsets);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testDependentVectors() {
+        new Lattice(10, 20, 20, 40);
+    }
+}
@@ -0,0 +1,47 @@
+package hwatheod.wallpaper.geometry;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+public class PngWriterTest {
+    @Test
+    public void testRoundTrip() throws IOException {
+        int width = 300, height = 170;
+        int[] pixels = new int[width * height];
+        Random random = new Random(1);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+
+        /* written in uneven bands */
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngWriter png = new PngWriter(out, width, height);
+        for (int row = 0; row < height; row += 37) {
+            png.writeRows(pixels, row * width, Math.min(37, height - row));
+        }
+        png.finish();
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(image.getWidth(), width);
+        assertEquals(image.getHeight(), height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(image.getRGB(x, y), pixels[y*width + x], "pixel " + x + ", " + y);
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testMissingRows() throws IOException {
+        PngWriter png = new PngWriter(new ByteArrayOutputStream(), 10, 10);
+        png.writeRows(new int[50], 0, 5);
+        png.finish();
+    }
+}
@@ -0,0 +1,45 @@
+package hwatheod.wallpaper.geometry;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+public class RenderMetricsTest {
+
+    @Test
+    public void testInputToPixel() {
+        /* measured from the oldest input not yet shown, once per frame */
+        RenderMetrics metrics = new RenderMetrics();
+        metrics.framePresented(1000);
+        assertEquals(metrics.getHistogram(RenderMetrics.Timer.INPUT_TO_PIXEL).getCount(), 0);
+
+        metrics.inputReceived(2000);
+        metrics.inputReceived(2500);
+        metrics.framePresented(12000);
+        metrics.framePresented(13000);
+        LatencyHistogram latency = metrics.getHistogram(RenderMetrics.Timer.INPUT_TO_PIXEL);
+        assertEquals(latency.getCount(), 1);
+        assertEquals(latency.getMax(), 10000);
+    }
+
+    @Test
+    public void testDumpAndReset() {
+        RenderMetrics metrics = new RenderMetrics();
+        metrics.add(RenderMetrics.Counter.TRANSLATES, 40);
+        metrics.add(RenderMetrics.Counter.TRANSLATES, 2);
+        metrics.record(RenderMetrics.Timer.FRAME, 4000000);
+
+        StringWriter text = new StringWriter();
+        metrics.dump(new PrintWriter(text), "  ");
+        String dump = text.toString();
+        assertTrue(dump.contains("  translates 42\n"), dump);
+        assertTrue(dump.contains("  frame count 1 mean 4.00"), dump);
+        assertEquals(dump.split("\n").length, RenderMetrics.Counter.values().length + RenderMetrics.Timer.values().length);
+
+        metrics.reset();
+        assertEquals(metrics.getCount(RenderMetrics.Counter.TRANSLATES), 0);
+        assertEquals(metrics.getHistogram(RenderMetrics.Timer.FRAME).getCount(), 0);
+    }
+}
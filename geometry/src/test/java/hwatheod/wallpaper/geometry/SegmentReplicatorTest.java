@@ -0,0 +1,162 @@
+package hwatheod.wallpaper.geometry;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+public class SegmentReplicatorTest {
+    private static final double ERROR_THRESHOLD = 0.001;
+
+    @Test
+    public void testTranslationsOnly() {
+        WallpaperGroup g = new WallpaperGroup("o", 600, 400);
+        SegmentReplicator replicator = new SegmentReplicator(g, 600, 400);
+        float[] stroke = {300, 200, 310, 205, 310, 205, 320, 200};
+        PointArray lines = new PointArray();
+        int copies = replicator.replicate(stroke, 4, lines);
+
+        assertTrue(copies > 2);
+        assertEquals(lines.size(), 2 * copies);
+        for (int i = 0; i < lines.size(); i += 2) {
+            /* every copy is a translate of one of the segments which meets the window */
+            float dx = lines.getX(i+1) - lines.getX(i), dy = lines.getY(i+1) - lines.getY(i);
+            assertEquals(dx, 10, ERROR_THRESHOLD);
+            assertEquals(Math.abs(dy), 5, ERROR_THRESHOLD);
+            assertTrue(Math.max(lines.getX(i), lines.getX(i+1)) >= 0 && Math.min(lines.getX(i), lines.getX(i+1)) <= 600);
+            assertTrue(Math.max(lines.getY(i), lines.getY(i+1)) >= 0 && Math.min(lines.getY(i), lines.getY(i+1)) <= 400);
+        }
+    }
+
+    @Test
+    public void testBatchingDoesNotMatter() {
+        /* replicating segments one at a time gives the same copies as replicating them together */
+        WallpaperGroup g = new WallpaperGroup("*442", 600, 400);
+        SegmentReplicator replicator = new SegmentReplicator(g, 600, 400);
+        float[] stroke = {10, 10, 250, 390, 250, 390, 590, 20};
+        PointArray together = new PointArray();
+        replicator.replicate(stroke, 4, together);
+
+        PointArray separately = new PointArray();
+        replicator.replicate(new float[] {10, 10, 250, 390}, 2, separately);
+        replicator.replicate(new float[] {250, 390, 590, 20}, 2, separately);
+        assertEquals(together.size(), separately.size());
+    }
+
+    @Test
+    public void testSegmentLengthsPreserved() {
+        for (String symbol : WallpaperGroup.CONWAY_SYMBOLS) {
+            WallpaperGroup g = new WallpaperGroup(symbol, 600, 400);
+            SegmentReplicator replicator = new SegmentReplicator(g, 600, 400);
+            PointArray lines = new PointArray();
+            replicator.replicate(new float[] {300, 200, 330, 240}, 2, lines);
+            assertTrue(lines.size() > 0, symbol);
+            for (int i = 0; i < lines.size(); i += 2) {
+                float dx = lines.getX(i+1) - lines.getX(i), dy = lines.getY(i+1) - lines.getY(i);  // one segment
+                assertEquals(Math.sqrt(dx*dx + dy*dy), 50, ERROR_THRESHOLD, symbol);
+            }
+        }
+    }
+
+    @Test
+    public void testBand() {
+        WallpaperGroup g = new WallpaperGroup("o", 600, 400);
+        SegmentReplicator replicator = new SegmentReplicator(g, 600, 400);
+        float[] stroke = {300, 200, 330, 240};
+        PointArray all = new PointArray();
+        replicator.replicate(stroke, 2, all);
+
+        replicator.setBand(0, 100, 11);
+        PointArray band = new PointArray();
+        replicator.replicate(stroke, 2, band);
+        assertTrue(band.size() > 0 && band.size() < all.size());
+        for (int i = 0; i < band.size(); i += 2) {
+            float top = Math.min(band.getY(i), band.getY(i+1)), bottom = Math.max(band.getY(i), band.getY(i+1));
+            assertTrue(bottom + 11 >= 0 && top - 11 < 100);
+        }
+    }
+
+    private static void addBruteForceCopies(Lattice lattice, float[] segment, float reach, PointArray out) {
+        /* every translate of the segment whose grown bounding box meets the window, trying a range of lattice
+           coordinates wide enough to cover the window many times over */
+        float[] tx = lattice.getTranslationX(), ty = lattice.getTranslationY();
+        for (int n1 = -40; n1 <= 40; n1++) {
+            for (int n2 = -40; n2 <= 40; n2++) {
+                float dx = n1 * tx[0] + n2 * tx[1], dy = n1 * ty[0] + n2 * ty[1];
+                float x0 = segment[0] + dx, y0 = segment[1] + dy, x1 = segment[2] + dx, y1 = segment[3] + dy;
+                if (Math.max(x0, x1) + reach >= 0 && Math.min(x0, x1) - reach <= 600 &&
+                        Math.max(y0, y1) + reach >= 0 && Math.min(y0, y1) - reach <= 400) {
+                    out.add(x0, y0);
+                    out.add(x1, y1);
+                }
+            }
+        }
+    }
+
+    /*
+      For every group, the copies are exactly the translates of the images whose grown bounding boxes meet the
+      window: none is missing, and there is nothing else, nor any copy twice.
+     */
+    @Test(dataProvider = "groups", dataProviderClass = WallpaperGroupTest.class)
+    public void testCopiesMatchBruteForce(String conwaySymbol) {
+        WallpaperGroup g = new WallpaperGroup(conwaySymbol, 600, 400);
+        SegmentReplicator replicator = new SegmentReplicator(g, 600, 400);
+        float reach = 11;
+        replicator.setBand(Integer.MIN_VALUE, Integer.MAX_VALUE, reach);
+        Random random = new Random(conwaySymbol.hashCode());
+        for (int s = 0; s < 20; s++) {
+            /* segments anywhere around the window, some long */
+            float x = -100 + 800 * random.nextFloat(), y = -100 + 600 * random.nextFloat();
+            float length = (s % 4 == 0) ? 400 : 30;
+            float[] segment = {x, y, x + length * (random.nextFloat() - 0.5f), y + length * (random.nextFloat() - 0.5f)};
+            PointArray actual = new PointArray();
+            int copies = replicator.replicate(segment, 2, actual);
+            assertEquals(actual.size(), 2 * copies);
+
+            PointArray expected = new PointArray();
+            addBruteForceCopies(g.getLattice(), segment, reach, expected);
+            float[] image = new float[4];
+            for (Affine m : g.getCosetReps()) {
+                m.mapPoints(image, 0, segment, 0, 2);
+                addBruteForceCopies(g.getLattice(), image, reach, expected);
+            }
+
+            assertEquals(actual.size(), expected.size(), conwaySymbol);
+            boolean[] matched = new boolean[expected.size() / 2];
+            for (int i = 0; i < actual.size(); i += 2) {
+                int match = -1;
+                for (int k = 0; k < matched.length && match < 0; k++) {
+                    if (!matched[k] && Math.abs(actual.getX(i) - expected.getX(2*k)) < 0.01f && Math.abs(actual.getY(i) - expected.getY(2*k)) < 0.01f &&
+                            Math.abs(actual.getX(i+1) - expected.getX(2*k+1)) < 0.01f && Math.abs(actual.getY(i+1) - expected.getY(2*k+1)) < 0.01f)
+                        match = k;
+                }
+                assertTrue(match >= 0, conwaySymbol + ": copy " + i/2 + " is not expected, or is a duplicate");
+                matched[match] = true;
+            }
+        }
+    }
+
+    @Test
+    public void testInkAcrossEdgeKept() {
+        /* a segment just outside the window whose stroke still reaches into it */
+        WallpaperGroup g = new WallpaperGroup("o", 600, 400);
+        SegmentReplicator replicator = new SegmentReplicator(g, 600, 400);
+        replicator.setBand(Integer.MIN_VALUE, Integer.MAX_VALUE, 11);
+        PointArray lines = new PointArray();
+        replicator.replicate(new float[] {-5, 200, -8, 210}, 2, lines);
+        boolean found = false;
+        for (int i = 0; i < lines.size(); i += 2) {
+            if (Math.abs(lines.getX(i) + 5) < ERROR_THRESHOLD && Math.abs(lines.getY(i) - 200) < ERROR_THRESHOLD)
+                found = true;
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    public void testSinglePoint() {
+        WallpaperGroup g = new WallpaperGroup("632", 600, 400);
+        PointArray lines = new PointArray();
+        assertEquals(new SegmentReplicator(g, 600, 400).replicate(new float[] {1, 2}, 1, lines), 0);
+        assertTrue(lines.isEmpty());
+    }
+}
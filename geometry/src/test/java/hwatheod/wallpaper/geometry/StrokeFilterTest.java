@@ -0,0 +1,151 @@
+package hwatheod.wallpaper.geometry;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+public class StrokeFilterTest {
+    private static final float TOLERANCE = 0.75f;
+    private static final double ERROR_THRESHOLD = 0.001;
+
+    private static float[] noisyCircle(int count) {
+        /* samples 1 pixel apart around a circle of radius 80, with up to 0.2 pixels of jitter */
+        Random random = new Random(1);
+        float[] points = new float[2 * count];
+        for (int i = 0; i < count; i++) {
+            double angle = i / 80.0;
+            points[2*i] = 300 + 80 * (float)Math.cos(angle) + 0.4f * (random.nextFloat() - 0.5f);
+            points[2*i + 1] = 200 + 80 * (float)Math.sin(angle) + 0.4f * (random.nextFloat() - 0.5f);
+        }
+        return points;
+    }
+
+    private static PointArray filter(StrokeFilter filter, float[] points, int count) {
+        PointArray out = new PointArray();
+        filter.reset();
+        for (int i = 0; i < count; i++) {
+            filter.add(points[2*i], points[2*i + 1], out);
+        }
+        filter.finish(out);
+        return out;
+    }
+
+    private static float maxError(float[] points, int count, PointArray polyline) {
+        /* the largest distance of a sample from the polyline */
+        float worst = 0;
+        for (int i = 0; i < count; i++) {
+            float best = Float.MAX_VALUE;
+            for (int j = 1; j < polyline.size(); j++) {
+                best = Math.min(best, StrokeFilter.segmentDistanceSquared(points[2*i], points[2*i + 1],
+                        polyline.getX(j - 1), polyline.getY(j - 1), polyline.getX(j), polyline.getY(j)));
+            }
+            worst = Math.max(worst, (float)Math.sqrt(best));
+        }
+        return worst;
+    }
+
+    @Test
+    public void testWithinTolerance() {
+        float[] points = noisyCircle(500);
+        PointArray out = filter(new StrokeFilter(TOLERANCE, 1000), points, 500);
+        assertTrue(maxError(points, 500, out) <= TOLERANCE + ERROR_THRESHOLD, "error " + maxError(points, 500, out));
+        assertTrue(out.size() < 500 / 4, out.size() + " points");
+
+        /* the stroke still starts and ends at the first and last samples */
+        assertEquals(out.getX(0), points[0]);
+        assertEquals(out.getY(out.size() - 1), points[2*499 + 1]);
+    }
+
+    @Test
+    public void testCornerKept() {
+        float[] points = new float[2 * 41];
+        for (int i = 0; i <= 40; i++) {
+            points[2*i] = Math.min(i, 20);
+            points[2*i + 1] = Math.max(0, i - 20);
+        }
+        PointArray out = filter(new StrokeFilter(TOLERANCE, 1000), points, 41);
+        assertEquals(out.size(), 3);
+        assertEquals(out.getX(1), 20f);
+        assertEquals(out.getY(1), 0f);
+    }
+
+    @Test
+    public void testMaxSegmentLength() {
+        float[] points = new float[2 * 101];
+        for (int i = 0; i <= 100; i++) {
+            points[2*i] = i;
+            points[2*i + 1] = 5;
+        }
+        PointArray out = filter(new StrokeFilter(TOLERANCE, 16), points, 101);
+        for (int j = 1; j < out.size(); j++) {
+            assertTrue(out.getX(j) - out.getX(j - 1) <= 16);
+        }
+        assertEquals(out.getX(out.size() - 1), 100f);
+    }
+
+    @Test
+    public void testRestingFinger() {
+        /* a finger held still for a long press, jittering within the tolerance: a point is output every
+           MAX_PENDING samples, so that each sample is checked against at most that many */
+        Random random = new Random(2);
+        int count = 100 * StrokeFilter.MAX_PENDING;
+        float[] points = new float[2 * count];
+        for (int i = 0; i < count; i++) {
+            points[2*i] = 50 + 0.5f * random.nextFloat();
+            points[2*i + 1] = 60 + 0.5f * random.nextFloat();
+        }
+        PointArray out = filter(new StrokeFilter(TOLERANCE, 16), points, count);
+        assertTrue(out.size() >= 100 && out.size() <= 102, out.size() + " points");
+        assertTrue(maxError(points, count, out) <= TOLERANCE + ERROR_THRESHOLD);
+    }
+
+    @Test
+    public void testSinglePoint() {
+        PointArray out = filter(new StrokeFilter(TOLERANCE, 16), new float[] {3, 4}, 1);
+        assertEquals(out.size(), 1);
+    }
+
+    @Test
+    public void testSmoothingRemovesJitter() {
+        /* a straight line with a pixel of jitter from sample to sample */
+        float[] points = new float[2 * 200];
+        for (int i = 0; i < 200; i++) {
+            points[2*i] = i;
+            points[2*i + 1] = (i % 2 == 0) ? 0 : 1;
+        }
+        int unsmoothed = filter(new StrokeFilter(TOLERANCE, 1000), points, 200).size();
+        StrokeFilter smoothing = new StrokeFilter(TOLERANCE, 1000);
+        smoothing.setSmoothing(0.75f);
+        int smoothed = filter(smoothing, points, 200).size();
+        assertTrue(smoothed < unsmoothed / 4, smoothed + " smoothed, " + unsmoothed + " unsmoothed");
+    }
+
+    @Test
+    public void testSmoothedStrokeEndsAtLastSample() {
+        /* the smoothed samples lag behind the finger, but the stroke ends where it was lifted */
+        float[] points = new float[2 * 20];
+        for (int i = 0; i < 20; i++) {
+            points[2*i] = 10*i;
+        }
+        StrokeFilter smoothing = new StrokeFilter(TOLERANCE, 1000);
+        smoothing.setSmoothing(0.75f);
+        PointArray out = filter(smoothing, points, 20);
+        assertEquals(out.getX(out.size() - 1), 190f);
+        assertEquals(out.getY(out.size() - 1), 0f);
+
+        /* without smoothing the candidate is the last sample, and is not repeated */
+        out = filter(new StrokeFilter(TOLERANCE, 1000), points, 20);
+        assertEquals(out.size(), 2);
+        assertEquals(out.getX(1), 190f);
+    }
+
+    @Test
+    public void testSimplify() {
+        float[] points = noisyCircle(500);
+        PointArray out = new PointArray();
+        StrokeFilter.simplify(points, 500, TOLERANCE, out);
+        assertTrue(maxError(points, 500, out) <= TOLERANCE + ERROR_THRESHOLD);
+        assertTrue(out.size() < 500 / 4, out.size() + " points");
+    }
+}
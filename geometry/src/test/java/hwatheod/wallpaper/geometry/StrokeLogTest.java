@@ -0,0 +1,295 @@
+package hwatheod.wallpaper.geometry;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StrokeLogTest {
+    private static final double ERROR_THRESHOLD = 0.07;  // half of the quantum, plus rounding
+
+    private static class Recorder implements StrokeLog.Listener {
+        List<Integer> colors = new ArrayList<>();
+        List<Float> widths = new ArrayList<>();
+        List<float[]> strokes = new ArrayList<>();
+
+        @Override
+        public void onStroke(int color, float width, float[] points, int pointCount) {
+            colors.add(color);
+            widths.add(width);
+            float[] copy = new float[2*pointCount];
+            System.arraycopy(points, 0, copy, 0, 2*pointCount);
+            strokes.add(copy);
+        }
+    }
+
+    private static StrokeLog roundTrip(StrokeLog log) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        log.writeTo(out, 0);
+        return StrokeLog.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        StrokeLog log = new StrokeLog("*632");
+        log.setOrigin(300, 200);
+        assertTrue(log.addStroke(0xff0000ff, 20, new float[] {300, 200, 310.3f, 195.6f, -1000.25f, 2000.5f}, 3));
+        assertTrue(log.addStroke(0xffff0000, 12.5f, new float[] {5, 5, 6, 7}, 2));
+
+        StrokeLog read = roundTrip(log);
+        assertEquals(read.getConwaySymbol(), "*632");
+        assertEquals(read.getStrokeCount(), 2);
+        assertEquals(read.length(), log.length());
+
+        /* replayed around a different origin, as after a change of window size */
+        read.setOrigin(500, 100);
+        Recorder recorder = new Recorder();
+        read.replay(recorder);
+        assertEquals(recorder.strokes.size(), 2);
+        assertEquals((int)recorder.colors.get(0), 0xff0000ff);
+        assertEquals(recorder.widths.get(1), 12.5f, ERROR_THRESHOLD);
+        float[] first = recorder.strokes.get(0);
+        assertEquals(first.length, 6);
+        assertEquals(first[2], 510.3f, ERROR_THRESHOLD);
+        assertEquals(first[3], 95.6f, ERROR_THRESHOLD);
+        assertEquals(first[4], -800.25f, ERROR_THRESHOLD);
+        assertEquals(first[5], 1900.5f, ERROR_THRESHOLD);
+    }
+
+    @Test
+    public void testScale() {
+        /* recorded at 3 pixels per unit and replayed at 1.5, the stroke is half the size around the origin */
+        StrokeLog log = new StrokeLog("442");
+        log.setOrigin(300, 200);
+        log.setScale(3);
+        assertTrue(log.addStroke(0xff0000ff, 24, new float[] {300, 200, 360, 140}, 2));
+
+        log.setScale(1.5f);
+        Recorder recorder = new Recorder();
+        log.replay(recorder);
+        assertEquals(recorder.widths.get(0), 12f, ERROR_THRESHOLD);
+        float[] points = recorder.strokes.get(0);
+        assertEquals(points[0], 300f, ERROR_THRESHOLD);
+        assertEquals(points[1], 200f, ERROR_THRESHOLD);
+        assertEquals(points[2], 330f, ERROR_THRESHOLD);
+        assertEquals(points[3], 170f, ERROR_THRESHOLD);
+    }
+
+    @Test
+    public void testReplayAtOtherOrigin() {
+        /* replayed at another origin and scale, the log keeps its own */
+        StrokeLog log = new StrokeLog("442");
+        log.setOrigin(300, 200);
+        log.setScale(3);
+        assertTrue(log.addStroke(0xff0000ff, 24, new float[] {300, 200, 360, 140}, 2));
+
+        Recorder recorder = new Recorder();
+        log.replay(recorder, 0, 1, 0, 0, 1);
+        assertEquals(recorder.widths.get(0), 8f, ERROR_THRESHOLD);
+        float[] points = recorder.strokes.get(0);
+        assertEquals(points[0], 0f, ERROR_THRESHOLD);
+        assertEquals(points[1], 0f, ERROR_THRESHOLD);
+        assertEquals(points[2], 20f, ERROR_THRESHOLD);
+        assertEquals(points[3], -20f, ERROR_THRESHOLD);
+        assertEquals(log.getOriginX(), 300f);
+        assertEquals(log.getOriginY(), 200f);
+        assertEquals(log.getScale(), 3f);
+    }
+
+    @Test
+    public void testSinglePointNotKept() {
+        StrokeLog log = new StrokeLog("o");
+        int length = log.length();
+        assertFalse(log.addStroke(0, 20, new float[] {1, 1}, 1));
+        assertEquals(log.length(), length);
+        assertEquals(log.getStrokeCount(), 0);
+    }
+
+    @Test
+    public void testAddStrokeUsesPointCount() throws IOException {
+        /* the points array may hold more than the stroke, as the arrays of StrokeTracker do */
+        StrokeLog log = new StrokeLog("442");
+        assertTrue(log.addStroke(0xffff0000, 12, new float[] {10, 20, 30, 40, 50, 60, 70, 80}, 3));
+        assertFalse(log.addStroke(0xffff0000, 12, new float[] {10, 20}, 1));
+        assertTrue(log.addStroke(0xff0000ff, 20, new float[] {1, 1, 2, 2, 3, 3, 4, 4}, 3));
+
+        Recorder recorder = new Recorder();
+        roundTrip(log).replay(recorder);
+        assertEquals(recorder.strokes.size(), 2);
+        assertEquals((int)recorder.colors.get(0), 0xffff0000);
+        assertEquals(recorder.strokes.get(0)[5], 60, ERROR_THRESHOLD);
+        assertEquals(recorder.strokes.get(1).length, 6);
+        assertEquals(recorder.strokes.get(1)[4], 3, ERROR_THRESHOLD);
+    }
+
+    @Test
+    public void testStartDrawingDiscardsStrokes() throws IOException {
+        StrokeLog log = new StrokeLog("o");
+        log.addStroke(0, 20, new float[] {1, 1, 2, 2}, 2);
+        log.startDrawing("442");
+        assertEquals(log.getStrokeCount(), 0);
+        assertEquals(roundTrip(log).getConwaySymbol(), "442");
+    }
+
+    @Test
+    public void testPartialRecordDropped() throws IOException {
+        StrokeLog log = new StrokeLog("22x");
+        for (int s = 0; s < 2; s++) {
+            float[] points = new float[2 * 10];
+            for (int i = 0; i < 10; i++) {
+                points[2*i] = 10 * i;
+                points[2*i + 1] = 3 * i * s;
+            }
+            log.addStroke(0xff00ff00, 20, points, 10);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        log.writeTo(out, 0);
+        byte[] truncated = new byte[out.size() - 3];
+        System.arraycopy(out.toByteArray(), 0, truncated, 0, truncated.length);
+
+        StrokeLog read = StrokeLog.read(new ByteArrayInputStream(truncated));
+        assertEquals(read.getStrokeCount(), 1);
+        Recorder recorder = new Recorder();
+        read.replay(recorder);
+        assertEquals(recorder.strokes.size(), 1);
+    }
+
+    private static void addStroke(StrokeLog log, int color) {
+        log.addStroke(color, 20, new float[] {color, 0, color, 10}, 2);
+    }
+
+    @Test
+    public void testUndoRedo() throws IOException {
+        StrokeLog log = new StrokeLog("333");
+        for (int i = 1; i <= 3; i++) {
+            addStroke(log, i);
+        }
+        int fullLength = log.length();
+
+        assertTrue(log.undoStroke());
+        assertTrue(log.undoStroke());
+        assertEquals(log.getStrokeCount(), 1);
+        assertTrue(log.canRedo());
+        Recorder recorder = new Recorder();
+        roundTrip(log).replay(recorder);
+        assertEquals(recorder.colors.size(), 1);
+
+        assertTrue(log.redoStroke());
+        assertTrue(log.redoStroke());
+        assertFalse(log.redoStroke());
+        assertEquals(log.length(), fullLength);
+        assertEquals(log.getStrokeCount(), 3);
+
+        /* a new stroke drops the strokes which could be redone */
+        log.undoStroke();
+        addStroke(log, 7);
+        assertFalse(log.canRedo());
+        recorder = new Recorder();
+        log.replay(recorder);
+        assertEquals(recorder.colors.toString(), "[1, 2, 7]");
+    }
+
+    @Test
+    public void testReplayRange() throws IOException {
+        StrokeLog log = new StrokeLog("o");
+        for (int i = 0; i < 100; i++) {
+            addStroke(log, i);
+        }
+        Recorder recorder = new Recorder();
+        roundTrip(log).replay(recorder, 40, 43);
+        assertEquals(recorder.colors.toString(), "[40, 41, 42]");
+
+        recorder = new Recorder();
+        log.replay(recorder, 100, 100);
+        assertTrue(recorder.colors.isEmpty());
+    }
+
+    @Test
+    public void testReadPixelLog() throws IOException {
+        /* a log of the pixel format, from before points were kept in units, replays at the scale it is read at
+           as it was drawn, and is written back in the current format */
+        StrokeLog log = new StrokeLog("*632");
+        log.setOrigin(300, 200);
+        assertTrue(log.addStroke(0xff0000ff, 20, new float[] {300, 200, 360, 140}, 2));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        log.writeTo(out, 0);
+        byte[] pixels = out.toByteArray();
+        assertEquals(new String(pixels, 0, 4, "US-ASCII"), "WPL2");
+        pixels[3] = '1';
+
+        StrokeLog read = StrokeLog.read(new ByteArrayInputStream(pixels), 2);
+        assertTrue(read.wasConverted());
+        assertEquals(read.getConwaySymbol(), "*632");
+        read.setOrigin(300, 200);
+        read.setScale(2);
+        Recorder recorder = new Recorder();
+        read.replay(recorder);
+        assertEquals(recorder.widths.get(0), 20f, ERROR_THRESHOLD);
+        float[] points = recorder.strokes.get(0);
+        assertEquals(points[2], 360f, ERROR_THRESHOLD);
+        assertEquals(points[3], 140f, ERROR_THRESHOLD);
+
+        /* at scale 1, pixels and units are the same */
+        recorder = new Recorder();
+        read.setScale(1);
+        read.replay(recorder);
+        assertEquals(recorder.widths.get(0), 10f, ERROR_THRESHOLD);
+        points = recorder.strokes.get(0);
+        assertEquals(points[2], 330f, ERROR_THRESHOLD);
+        assertEquals(points[3], 170f, ERROR_THRESHOLD);
+
+        StrokeLog again = roundTrip(read);
+        assertFalse(again.wasConverted());
+        assertEquals(again.getStrokeCount(), 1);
+        assertFalse(roundTrip(log).wasConverted());
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testNotALog() throws IOException {
+        StrokeLog.read(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6}));
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+        /* 10k strokes of 50 points of a few pixels each, as drawn with a finger */
+        StrokeLog log = new StrokeLog("*442");
+        float[] points = new float[2 * 50];
+        for (int s = 0; s < 10000; s++) {
+            for (int i = 0; i < 50; i++) {
+                points[2*i] = s % 600 + 3 * i;
+                points[2*i + 1] = (s * 7) % 400 + 2 * (i % 5);
+            }
+            log.addStroke(0xff0000ff, 20, points, 50);
+        }
+        assertTrue(log.length() < 10000 * 50 * 4, "log takes " + log.length() + " bytes");
+
+        StrokeLog read = roundTrip(log);
+        assertEquals(read.getStrokeCount(), 10000);
+        Recorder recorder = new Recorder();
+        read.replay(recorder);
+        assertEquals(recorder.strokes.size(), 10000);
+    }
+
+    @Test
+    public void testQuantizedPointsReplayExactly() {
+        /* at a scale which is not a whole number of pixels, points quantized first come back bit for bit */
+        StrokeLog log = new StrokeLog("*632");
+        log.setOrigin(301, 187);
+        log.setScale(1.3f);
+        float[] points = {310.37f, 195.61f, 299.93f, 402.05f, -17.2f, 3.333f};
+        for (int i = 0; i < points.length; i += 2) {
+            points[i] = log.quantizeX(points[i]);
+            points[i + 1] = log.quantizeY(points[i + 1]);
+        }
+        assertEquals(points[0], 310.37f, 1.3 / 16 + 0.001);
+        assertTrue(log.addStroke(0xff0000ff, 26, points, 3));
+
+        Recorder recorder = new Recorder();
+        log.replay(recorder);
+        assertEquals(recorder.strokes.get(0), points);
+    }
+}
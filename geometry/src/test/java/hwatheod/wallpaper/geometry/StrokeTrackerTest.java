@@ -0,0 +1,179 @@
+package hwatheod.wallpaper.geometry;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class StrokeTrackerTest {
+    private static class Recorder implements StrokeTracker.Listener {
+        List<Integer> colors = new ArrayList<>();
+        List<float[]> strokes = new ArrayList<>();
+
+        @Override
+        public void onStrokeEnd(int color, float width, float[] points, int pointCount) {
+            colors.add(color);
+            float[] copy = new float[2*pointCount];
+            System.arraycopy(points, 0, copy, 0, 2*pointCount);
+            strokes.add(copy);
+        }
+    }
+
+    @Test
+    public void testConcurrentStrokes() {
+        /* two fingers drawing right angles, interleaved as in a MotionEvent; the corners are kept by the filter */
+        Recorder recorder = new Recorder();
+        StrokeTracker tracker = new StrokeTracker(recorder);
+        tracker.setStyle(1, 20);
+        tracker.add(0, 0, 0);
+        tracker.setStyle(2, 20);
+        tracker.add(5, 100, 0);
+        assertEquals(tracker.getActiveCount(), 2);
+        for (int i = 1; i <= 10; i++) {
+            tracker.add(0, 2*i, 0);
+            tracker.add(5, 100, 2*i);
+        }
+        for (int i = 1; i <= 10; i++) {
+            tracker.add(0, 20, 2*i);
+            tracker.add(5, 100 + 2*i, 20);
+        }
+
+        /* the segments of both fingers are in one batch, each following its own finger */
+        PointArray segments = tracker.getSegments();
+        assertTrue(segments.size() >= 4, segments.size() + " points");
+        for (int i = 0; i < segments.size(); i += 2) {
+            boolean first = segments.getX(i) <= 20 && segments.getX(i + 1) <= 20;
+            boolean second = segments.getX(i) >= 100 && segments.getX(i + 1) >= 100;
+            assertTrue(first || second, "segment " + i/2 + " joins the fingers");
+        }
+        segments.clear();
+
+        tracker.up(5, 120, 20);
+        assertEquals(tracker.getActiveCount(), 1);
+        assertEquals(recorder.strokes.size(), 1);
+        assertEquals((int)recorder.colors.get(0), 2);
+        float[] second = recorder.strokes.get(0);
+        assertEquals(second.length, 6);
+        assertEquals(second[0], 100f);
+        assertEquals(second[3], 20f);
+        assertEquals(second[4], 120f);
+
+        tracker.up(0, 20, 20);
+        assertEquals(tracker.getActiveCount(), 0);
+        assertEquals((int)recorder.colors.get(1), 1);
+        assertEquals(recorder.strokes.get(1).length, 6);
+        assertEquals(recorder.strokes.get(1)[2], 20f);
+    }
+
+    @Test
+    public void testBatchHoldsNewSegmentsOnly() {
+        StrokeTracker tracker = new StrokeTracker(new Recorder());
+        tracker.add(0, 0, 0);
+        tracker.add(0, 0, 50);
+        tracker.add(0, 50, 50);
+        assertEquals(tracker.getSegments().size(), 2);
+        tracker.getSegments().clear();
+
+        /* the next segment starts where the stroke left off */
+        tracker.add(0, 50, 0);
+        assertEquals(tracker.getSegments().size(), 2);
+        assertEquals(tracker.getSegments().getX(0), 0f);
+        assertEquals(tracker.getSegments().getY(0), 50f);
+        assertEquals(tracker.getSegments().getX(1), 50f);
+        assertEquals(tracker.getSegments().getY(1), 50f);
+    }
+
+    @Test
+    public void testFinishAllAndClear() {
+        Recorder recorder = new Recorder();
+        StrokeTracker tracker = new StrokeTracker(recorder);
+        for (int id = 0; id < 3; id++) {
+            tracker.add(id, 10 * id, 0);
+            tracker.add(id, 10 * id, 30);
+        }
+        tracker.finishAll();
+        assertEquals(tracker.getActiveCount(), 0);
+        assertEquals(recorder.strokes.size(), 3);
+
+        tracker.add(7, 0, 0);
+        tracker.add(7, 0, 40);
+        tracker.clear();
+        assertEquals(tracker.getActiveCount(), 0);
+        assertTrue(tracker.getSegments().isEmpty());
+        tracker.up(7, 0, 50);  // no longer followed
+        assertEquals(recorder.strokes.size(), 3);
+    }
+
+    @Test
+    public void testMoreFingersThanExpected() {
+        Recorder recorder = new Recorder();
+        StrokeTracker tracker = new StrokeTracker(recorder);
+        int fingers = 2 * StrokeTracker.INITIAL_STROKES + 1;
+        for (int id = 0; id < fingers; id++) {
+            tracker.add(id, id, 0);
+        }
+        for (int id = 0; id < fingers; id++) {
+            tracker.add(id, id, 30);
+        }
+        assertEquals(tracker.getActiveCount(), fingers);
+        assertEquals(tracker.getSegments().size(), 0);  // the candidate ends are still pending in the filters
+        for (int id = fingers - 1; id >= 0; id--) {
+            tracker.up(id, id, 60);
+        }
+        assertEquals(recorder.strokes.size(), fingers);
+        for (int i = 0; i < fingers; i++) {
+            float[] stroke = recorder.strokes.get(i);
+            assertEquals(stroke[0], (float)(fingers - 1 - i));
+            assertEquals(stroke[stroke.length - 1], 60f);
+        }
+    }
+
+    @Test
+    public void testQuantization() {
+        /* the points drawn and the points ended with are those the log records */
+        StrokeLog log = new StrokeLog("442");
+        log.setOrigin(100.5f, 50);
+        log.setScale(1.7f);
+        Recorder recorder = new Recorder();
+        StrokeTracker tracker = new StrokeTracker(recorder);
+        tracker.setQuantization(log);
+        tracker.add(0, 10.01f, 10.02f);
+        tracker.add(0, 10.01f, 60.03f);
+        tracker.up(0, 61.04f, 60.05f);
+
+        float[] stroke = recorder.strokes.get(0);
+        for (int i = 0; i < stroke.length; i += 2) {
+            assertEquals(stroke[i], log.quantizeX(stroke[i]));
+            assertEquals(stroke[i + 1], log.quantizeY(stroke[i + 1]));
+        }
+        assertEquals(stroke[0], log.quantizeX(10.01f));
+        PointArray segments = tracker.getSegments();
+        assertEquals(segments.getX(0), stroke[0]);
+        assertEquals(segments.getY(segments.size() - 1), stroke[stroke.length - 1]);
+    }
+
+    @Test
+    public void testFilter() {
+        /* a zigzag within the tolerance set keeps fewer points, in strokes begun after it is set */
+        Recorder recorder = new Recorder();
+        StrokeTracker tracker = new StrokeTracker(recorder);
+        tracker.add(0, 0, 0);
+        tracker.setFilter(4, 0.5f);
+        for (int i = 1; i <= 10; i++) {
+            tracker.add(0, 10*i, (i % 2 == 0) ? 0 : 2);
+        }
+        tracker.up(0, 110, 2);
+        int unfiltered = recorder.strokes.get(0).length / 2;
+
+        tracker.add(0, 0, 0);
+        for (int i = 1; i <= 10; i++) {
+            tracker.add(0, 10*i, (i % 2 == 0) ? 0 : 2);
+        }
+        tracker.up(0, 110, 2);
+        float[] stroke = recorder.strokes.get(1);
+        assertTrue(stroke.length / 2 < unfiltered, stroke.length / 2 + " points, " + unfiltered + " before");
+        assertEquals(stroke[stroke.length - 2], 110f);
+        assertEquals(stroke[stroke.length - 1], 2f);
+    }
+}
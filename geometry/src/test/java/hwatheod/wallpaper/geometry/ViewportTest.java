@@ -0,0 +1,64 @@
+package hwatheod.wallpaper.geometry;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class ViewportTest {
+    private static final double ERROR_THRESHOLD = 0.001;
+
+    @Test
+    public void testZoomKeepsFocus() {
+        Viewport viewport = new Viewport();
+        viewport.pan(30, -20);
+        float x = viewport.toDrawingX(250), y = viewport.toDrawingY(400);
+        viewport.zoom(2.5f, 250, 400);
+        assertEquals(viewport.getZoom(), 2.5f, ERROR_THRESHOLD);
+        assertEquals(viewport.toDrawingX(250), x, ERROR_THRESHOLD);
+        assertEquals(viewport.toDrawingY(400), y, ERROR_THRESHOLD);
+
+        float[] values = new float[9];
+        viewport.getValues(values);
+        assertEquals(values[0] * x + values[2], 250, ERROR_THRESHOLD);
+        assertEquals(values[4] * y + values[5], 400, ERROR_THRESHOLD);
+    }
+
+    @Test
+    public void testZoomIsBounded() {
+        Viewport viewport = new Viewport();
+        viewport.zoom(1000, 0, 0);
+        assertEquals(viewport.getZoom(), Viewport.MAX_ZOOM);
+        viewport.zoom(0.00001f, 0, 0);
+        assertEquals(viewport.getZoom(), Viewport.MIN_ZOOM);
+    }
+
+    @Test
+    public void testVisibleTranslatesCoverScreen() {
+        /* every point of the screen lies in the copy of the cell at one of the translates */
+        WallpaperGroup group = new WallpaperGroup("*632", 600, 400);
+        Lattice lattice = group.getLattice();
+        float[] cellBounds = lattice.getCellBounds();
+        float[] tx = lattice.getTranslationX(), ty = lattice.getTranslationY();
+
+        Viewport viewport = new Viewport();
+        viewport.pan(-1234, 567);
+        viewport.zoom(0.3f, 100, 200);
+        int width = 480, height = 800;
+        float[] translates = new float[2 * viewport.getVisibleTranslates(lattice, cellBounds, width, height, new float[0])];
+        int count = viewport.getVisibleTranslates(lattice, cellBounds, width, height, translates);
+
+        for (int sy = 0; sy <= height; sy += 40) {
+            for (int sx = 0; sx <= width; sx += 40) {
+                float x = viewport.toDrawingX(sx), y = viewport.toDrawingY(sy);
+                boolean covered = false;
+                for (int i = 0; i < count && !covered; i++) {
+                    /* coordinates of the point in the translated cell, with respect to the translation vectors */
+                    float px = x - translates[2*i], py = y - translates[2*i + 1];
+                    float a = (px * ty[1] - py * tx[1]) / (tx[0] * ty[1] - tx[1] * ty[0]);
+                    float b = (py * tx[0] - px * ty[0]) / (tx[0] * ty[1] - tx[1] * ty[0]);
+                    covered = a >= 0 && a <= 1 && b >= 0 && b <= 1;
+                }
+                assertTrue(covered, sx + "," + sy);
+            }
+        }
+    }
+}
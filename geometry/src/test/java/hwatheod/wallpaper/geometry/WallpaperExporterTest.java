@@ -0,0 +1,69 @@
+package hwatheod.wallpaper.geometry;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+
+public class WallpaperExporterTest {
+    private static final int BLUE = 0xff0000ff;
+    private static final int RED = 0xffff0000;
+
+    private static StrokeLog drawing(String conwaySymbol) {
+        /* two strokes, drawn on a 600x400 screen */
+        StrokeLog log = new StrokeLog(conwaySymbol);
+        log.setOrigin(300, 200);
+        log.addStroke(BLUE, 20, new float[] {250, 150, 320, 180, 330, 260}, 3);
+        log.addStroke(RED, 10, new float[] {200, 300, 280, 290}, 2);
+        return log;
+    }
+
+    private static BufferedImage export(StrokeLog log, float scale, int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new WallpaperExporter(log, scale).writePng(width, height, out);
+        return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void testStrokesAtScreenScale() throws IOException {
+        BufferedImage image = export(drawing("o"), 1, 600, 400);
+        assertEquals(image.getRGB(320, 180), BLUE);
+        assertEquals(image.getRGB(240, 295), RED);
+        int background = 0;
+        for (int x = 0; x < 600; x++) {
+            if (image.getRGB(x, 250) == 0xffffffff)
+                background++;
+        }
+        assertTrue(background > 100, background + " background pixels");
+    }
+
+    @Test
+    public void testPeriodic() throws IOException {
+        /* for o, the translations are (200, 0) and (80, 200), whole numbers of pixels at scale 2 */
+        BufferedImage image = export(drawing("o"), 2, 1200, 900);
+        int mismatches = 0;
+        for (int y = 0; y < 400; y += 3) {
+            for (int x = 0; x < 700; x += 3) {
+                if (image.getRGB(x, y) != image.getRGB(x + 400, y) || image.getRGB(x, y) != image.getRGB(x + 160, y + 400))
+                    mismatches++;
+            }
+        }
+        assertEquals(mismatches, 0);
+    }
+
+    @Test
+    public void testLargeExportAllGroups() throws IOException {
+        /* print-size exports are the same code with more bands; this keeps the test quick */
+        for (String symbol : WallpaperGroup.CONWAY_SYMBOLS) {
+            StrokeLog log = drawing(symbol);
+            BufferedImage image = export(log, 4, 2400, 1600);
+            assertEquals(image.getWidth(), 2400);
+            assertEquals(image.getRGB(1200 + 4*20, 800 - 4*20), BLUE, symbol);
+            assertEquals(log.getOriginX(), 300f, symbol);  // left as it was
+        }
+    }
+}
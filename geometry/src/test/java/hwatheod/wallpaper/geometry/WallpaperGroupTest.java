@@ -0,0 +1,87 @@
+package hwatheod.wallpaper.geometry;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class WallpaperGroupTest {
+    private static final double ERROR_THRESHOLD = 0.001;
+
+    @DataProvider(name = "groups")
+    public static Object[][] groups() {
+        Object[][] result = new Object[WallpaperGroup.CONWAY_SYMBOLS.length][];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = new Object[] { WallpaperGroup.CONWAY_SYMBOLS[i] };
+        }
+        return result;
+    }
+
+    @Test
+    public void testSymbolCount() {
+        assertEquals(WallpaperGroup.CONWAY_SYMBOLS.length, 17);
+    }
+
+    /*
+      Same self-consistency check as SymmetryGroupTest, run on the JVM: the images of the fundamental
+      region under the coset reps (including the identity) tile the fundamental parallelogram, so their
+      total area equals its area.
+     */
+    @Test(dataProvider = "groups")
+    public void testArea(String conwaySymbol) {
+        WallpaperGroup g = new WallpaperGroup(conwaySymbol, 600, 400);
+        float copiesOfFundamentalRegionArea = g.getFundamentalRegion().polygonArea() * (1 + g.getCosetReps().length);
+        float expectedArea = g.getLattice().getCellArea();
+        assertEquals(copiesOfFundamentalRegionArea / expectedArea, 1, ERROR_THRESHOLD, "Discrepancy for group " + conwaySymbol);
+    }
+
+    @Test(dataProvider = "groups")
+    public void testCosetRepsPreserveArea(String conwaySymbol) {
+        WallpaperGroup g = new WallpaperGroup(conwaySymbol, 600, 400);
+        PointArray region = g.getFundamentalRegion();
+        float area = region.polygonArea();
+        PointArray image = new PointArray(region.size());
+        for (Affine rep : g.getCosetReps()) {
+            image.clear();
+            for (int i = 0; i < region.size(); i++) {
+                image.add(rep.mapX(region.getX(i), region.getY(i)), rep.mapY(region.getX(i), region.getY(i)));
+            }
+            assertEquals(image.polygonArea() / area, 1, ERROR_THRESHOLD, "Coset rep " + rep + " of " + conwaySymbol);
+        }
+    }
+
+    @Test(dataProvider = "groups")
+    public void testScale(String conwaySymbol) {
+        /* scaling about the center of the window scales the cell area by the square, and keeps the group consistent */
+        WallpaperGroup g = new WallpaperGroup(conwaySymbol, 600, 400);
+        WallpaperGroup scaled = new WallpaperGroup(conwaySymbol, 600, 400, 2.5f);
+        assertEquals(scaled.getLattice().getCellArea() / g.getLattice().getCellArea(), 6.25, ERROR_THRESHOLD);
+        float copiesOfFundamentalRegionArea = scaled.getFundamentalRegion().polygonArea() * (1 + scaled.getCosetReps().length);
+        assertEquals(copiesOfFundamentalRegionArea / scaled.getLattice().getCellArea(), 1, ERROR_THRESHOLD);
+
+        /* each coset rep maps the scaled image of a point to the scaled image of its image */
+        for (int i = 0; i < g.getCosetReps().length; i++) {
+            Affine m = g.getCosetReps()[i], sm = scaled.getCosetReps()[i];
+            float x = 310, y = 190;
+            float sx = 300 + 2.5f * (x - 300), sy = 200 + 2.5f * (y - 200);
+            assertEquals(sm.mapX(sx, sy), 300 + 2.5f * (m.mapX(x, y) - 300), 0.01, conwaySymbol);
+            assertEquals(sm.mapY(sx, sy), 200 + 2.5f * (m.mapY(x, y) - 200), 0.01, conwaySymbol);
+        }
+    }
+
+    @Test(dataProvider = "groups")
+    public void testInverseCosetReps(String conwaySymbol) {
+        WallpaperGroup g = new WallpaperGroup(conwaySymbol, 600, 400, 1.5f);
+        for (int i = 0; i < g.getCosetReps().length; i++) {
+            Affine m = g.getCosetReps()[i], inverse = g.getInverseCosetReps()[i];
+            float x = 123.5f, y = -45.25f;
+            float mx = m.mapX(x, y), my = m.mapY(x, y);
+            assertEquals(inverse.mapX(mx, my), x, 0.01, conwaySymbol);
+            assertEquals(inverse.mapY(mx, my), y, 0.01, conwaySymbol);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownSymbol() {
+        new WallpaperGroup("*55", 600, 400);
+    }
+}